@@ -0,0 +1,21 @@
+#!/bin/sh
+# Compile src and simd together with the incubating Vector API, and run
+# tests with the SIMD force kernel required
+# (-Dedu.uwm.cs351.PhysicsKernels.kernel=simd makes TestPhysicsKernels
+# fail if the kernel could not be used).
+#
+# usage: JUNIT=/path/to/junit-3.8.jar ./simd-tests.sh [TestClass...]
+# The tests default to TestPhysicsKernels and TestSimulation.
+set -e
+cd "$(dirname "$0")"
+: "${JUNIT:?set JUNIT to the path of the JUnit 3.8 jar}"
+CP=lib/homework4.jar:$JUNIT
+OUT=${OUT:-build/simd}
+rm -rf "$OUT"
+mkdir -p "$OUT"
+javac -nowarn --add-modules jdk.incubator.vector -d "$OUT" -cp "$CP" $(find src simd -name '*.java')
+[ $# -gt 0 ] || set -- TestPhysicsKernels TestSimulation
+for t in "$@"; do
+	java -ea --add-modules jdk.incubator.vector -Dedu.uwm.cs351.PhysicsKernels.kernel=simd \
+		-cp "$OUT:$CP" junit.textui.TestRunner "$t"
+done
@@ -0,0 +1,66 @@
+package edu.uwm.cs351;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+
+/******************************************************************************
+ * The SIMD force kernel for {@link PhysicsKernels}.  For each row i, the
+ * particles j after it are handled as many at a time as the preferred
+ * vector species holds (4 with AVX2, 8 with AVX-512), and the rest one at a time.
+ * <p>
+ * This class is in its own source folder because it uses the incubator module:
+ * compile it with <code>javac --add-modules jdk.incubator.vector</code>
+ * against the other classes, and run with
+ * <code>java --add-modules jdk.incubator.vector</code>, as
+ * <code>simd-tests.sh</code> does.
+ * If it is missing, PhysicsKernels uses its scalar kernel.
+ ******************************************************************************/
+final class SimdForceKernel implements PhysicsKernels.ForceKernel
+{
+	private static final double G = 1.0; // as used by Particle
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	@Override
+	public void accumulate(double[] x, double[] y, double[] mass, int n, int from, int to, double[] fx, double[] fy)
+	{
+		int lanes = SPECIES.length();
+		for(int i = from; i < to; ++i)
+		{
+			double xi = x[i], yi = y[i], gmi = G * mass[i];
+			DoubleVector sx = DoubleVector.zero(SPECIES), sy = DoubleVector.zero(SPECIES);
+			int j = i + 1;
+			for(; j + lanes <= n; j += lanes)
+			{
+				DoubleVector dx = DoubleVector.fromArray(SPECIES, x, j).sub(xi);
+				DoubleVector dy = DoubleVector.fromArray(SPECIES, y, j).sub(yi);
+				DoubleVector d2 = dx.mul(dx).add(dy.mul(dy));
+				VectorMask<Double> same = d2.eq(0);
+				DoubleVector f = DoubleVector.fromArray(SPECIES, mass, j).mul(gmi)
+						.div(d2.mul(d2.lanewise(VectorOperators.SQRT)))
+						.blend(0, same);
+				DoubleVector px = f.mul(dx), py = f.mul(dy);
+				sx = sx.add(px);
+				sy = sy.add(py);
+				DoubleVector.fromArray(SPECIES, fx, j).sub(px).intoArray(fx, j);
+				DoubleVector.fromArray(SPECIES, fy, j).sub(py).intoArray(fy, j);
+			}
+			double tx = sx.reduceLanes(VectorOperators.ADD), ty = sy.reduceLanes(VectorOperators.ADD);
+			for(; j < n; ++j)
+			{
+				double dx = x[j] - xi, dy = y[j] - yi;
+				double d2 = dx * dx + dy * dy;
+				if(d2 == 0) continue;
+				double f = gmi * mass[j] / (d2 * Math.sqrt(d2));
+				tx += f * dx;
+				ty += f * dy;
+				fx[j] -= f * dx;
+				fy[j] -= f * dy;
+			}
+			fx[i] += tx;
+			fy[i] += ty;
+		}
+	}
+}
@@ -0,0 +1,127 @@
+import java.awt.Color;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import edu.uwm.cs351.BarnesHut;
+import edu.uwm.cs351.Particle;
+import edu.uwm.cs351.ParticleSeq;
+import edu.uwm.cs351.Point;
+import edu.uwm.cs351.Vector;
+
+
+public class TestBarnesHut extends TestCase {
+
+	private ParticleSeq s;
+	private Random r;
+
+	@Override
+	public void setUp() {
+		s = new ParticleSeq();
+		r = new Random(351);
+	}
+
+	private Particle random() {
+		return new Particle(new Point(r.nextDouble()*1000, r.nextDouble()*1000),
+				new Vector(), 1 + r.nextDouble()*9, Color.BLACK);
+	}
+
+	/**
+	 * Return the exact force on p from all the other particles of s.
+	 */
+	private Vector exact(Particle p) {
+		Vector f = new Vector();
+		for (Particle q : s) {
+			if (q != p && q != null) f = f.add(q.gravForceOn(p));
+		}
+		return f;
+	}
+
+	private void assertClose(Vector expected, Vector actual, double tolerance) {
+		double error = new Vector(expected.dx()-actual.dx(), expected.dy()-actual.dy()).magnitude();
+		assertTrue("expected " + expected + " but was " + actual, error <= tolerance * expected.magnitude());
+	}
+
+	public void test00() {
+		BarnesHut bh = new BarnesHut(0.5);
+		bh.build(s);
+		Particle p = random();
+		assertEquals(0.0,bh.forceOn(p).magnitude());
+		bh.applyForces(s);
+		s.addAfter(p);
+		s.addAfter(null);
+		bh.build(s);
+		assertEquals(0.0,bh.forceOn(p).magnitude());
+	}
+
+	public void test01() {
+		Particle p1 = new Particle(new Point(0,0), new Vector(), 2, Color.BLACK);
+		Particle p2 = new Particle(new Point(3,4), new Vector(), 5, Color.BLACK);
+		s.addAfter(p1);
+		s.addAfter(p2);
+		BarnesHut bh = new BarnesHut(1.0);
+		bh.build(s);
+		assertClose(p2.gravForceOn(p1),bh.forceOn(p1),1e-12);
+		assertClose(p1.gravForceOn(p2),bh.forceOn(p2),1e-12);
+		bh.applyForces(s);
+		assertClose(new Vector(p2.gravForceOn(p1).dx()/2,p2.gravForceOn(p1).dy()/2),p1.getVelocity(),1e-12);
+	}
+
+	public void test02() {
+		for (int i=0; i < 500; ++i) s.addAfter(random());
+		BarnesHut bh = new BarnesHut(0);
+		bh.build(s);
+		for (Particle p : s) {
+			assertClose(exact(p),bh.forceOn(p),1e-9);
+		}
+	}
+
+	/**
+	 * Return the mean relative error of the forces computed with the given theta.
+	 */
+	private double meanError(double theta) {
+		BarnesHut bh = new BarnesHut(theta);
+		bh.build(s);
+		double total = 0;
+		for (Particle p : s) {
+			Vector e = exact(p), a = bh.forceOn(p);
+			total += new Vector(e.dx()-a.dx(), e.dy()-a.dy()).magnitude() / e.magnitude();
+		}
+		return total / s.size();
+	}
+
+	public void test03() {
+		for (int i=0; i < 500; ++i) s.addAfter(random());
+		double coarse = meanError(1.0), usual = meanError(0.5), fine = meanError(0.25);
+		assertTrue("mean relative error " + usual, usual < 0.02);
+		assertTrue(fine < usual);
+		assertTrue(usual < coarse);
+	}
+
+	public void test04() {
+		// many particles at the same place
+		Particle far = new Particle(new Point(100,0), new Vector(), 1, Color.BLACK);
+		s.addAfter(far);
+		for (int i=0; i < 100; ++i) {
+			s.addAfter(new Particle(new Point(0,0), new Vector(), 1, Color.BLACK));
+		}
+		BarnesHut bh = new BarnesHut(0.5);
+		bh.build(s);
+		assertClose(exact(far),bh.forceOn(far),1e-12);
+		s.start();
+		s.advance();
+		Vector f = bh.forceOn(s.getCurrent());
+		assertClose(new Vector(1.0/10000, 0),f,1e-12);
+	}
+
+	public void test05() {
+		try {
+			new BarnesHut(-1);
+			fail("theta must not be negative");
+		} catch (IllegalArgumentException ex) {
+			// expected
+		}
+		BarnesHut bh = new BarnesHut(0.3);
+		bh.setTheta(0.7);
+		assertEquals(0.7,bh.getTheta());
+	}
+}
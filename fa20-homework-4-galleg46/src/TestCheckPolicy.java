@@ -0,0 +1,106 @@
+import java.awt.Color;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.TestCase;
+import edu.uwm.cs351.Particle;
+import edu.uwm.cs351.ParticleSeq;
+import edu.uwm.cs351.Point;
+import edu.uwm.cs351.Vector;
+
+
+public class TestCheckPolicy extends TestCase {
+
+	private ParticleSeq s;
+	Particle b1 = new Particle(new Point(1,1), new Vector(), 1, Color.BLACK);
+
+	// counts what is sent to the monitor
+	AtomicLong checks = new AtomicLong(), failures = new AtomicLong(), nanos = new AtomicLong();
+	long maxNanos;
+
+	@Override
+	public void setUp() {
+		s = new ParticleSeq();
+		ParticleSeq.setCheckMonitor(new ParticleSeq.CheckMonitor() {
+			@Override
+			public void checked(long time, boolean ok) {
+				checks.incrementAndGet();
+				nanos.addAndGet(time);
+				maxNanos = Math.max(maxNanos, time);
+				if (!ok) failures.incrementAndGet();
+			}
+			@Override
+			public void violation(String error) {
+				fail("no violations expected: " + error);
+			}
+		});
+		ParticleSeq.setLocalChecking(true);
+	}
+
+	@Override
+	public void tearDown() {
+		ParticleSeq.setLocalChecking(false);
+		ParticleSeq.setCheckPolicy(ParticleSeq.CheckPolicy.never());
+		ParticleSeq.setCheckMonitor(new ParticleSeq.CheckMonitor() {
+			@Override
+			public void checked(long time, boolean ok) { }
+			@Override
+			public void violation(String error) {
+				System.out.println("Invariant error found: " + error);
+			}
+		});
+	}
+
+	public void test00() {
+		for (int i=0; i < 1000; ++i) s.addAfter(b1);
+		assertEquals(0,checks.get());
+		ParticleSeq.setLocalChecking(false);
+		s.size();
+		assertEquals(1,checks.get());
+	}
+
+	public void test01() {
+		ParticleSeq.setCheckPolicy(ParticleSeq.CheckPolicy.everyNth(10));
+		s.addAfter(b1);
+		checks.set(0);
+		for (int i=0; i < 1000; ++i) s.size(); // one assertion each
+		assertEquals(100,checks.get());
+		assertEquals(0,failures.get());
+	}
+
+	public void test02() {
+		ParticleSeq.setCheckPolicy(ParticleSeq.CheckPolicy.afterChanges(100));
+		for (int i=0; i < 1000; ++i) s.addAfter(b1);
+		assertEquals(10,checks.get());
+		for (int i=0; i < 1000; ++i) s.getCurrent();
+		assertEquals(10,checks.get());
+	}
+
+	public void test03() {
+		for (int i=0; i < 20000; ++i) s.addAfter(b1);
+		ParticleSeq.setCheckPolicy(ParticleSeq.CheckPolicy.budget(0.01));
+		long start = System.nanoTime();
+		for (int i=0; i < 200000; ++i) {
+			s.start();
+			s.removeCurrent();
+			s.addAfter(b1);
+		}
+		long elapsed = System.nanoTime() - start;
+		assertTrue(checks.get() > 0);
+		assertTrue("spent " + nanos.get() + "ns of " + elapsed + "ns", nanos.get() <= elapsed / 100 + maxNanos);
+	}
+
+	public void test04() {
+		try {
+			ParticleSeq.CheckPolicy.everyNth(0);
+			fail("n must be positive");
+		} catch (IllegalArgumentException ex) {
+			// expected
+		}
+		try {
+			ParticleSeq.CheckPolicy.budget(1.5);
+			fail("fraction must be at most 1");
+		} catch (IllegalArgumentException ex) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,140 @@
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import edu.uwm.cs351.ConcurrentParticleSeq;
+import edu.uwm.cs351.Particle;
+import edu.uwm.cs351.Point;
+import edu.uwm.cs351.Vector;
+import edu.uwm.cs351.test.ArraySequence;
+
+
+public class TestConcurrentParticleSeq extends TestCase {
+
+	private ConcurrentParticleSeq s;
+	Particle b1 = new Particle(new Point(1,1), new Vector(), 1, Color.BLACK);
+	Particle b2 = new Particle(new Point(2,2), new Vector(10,0), 2, Color.BLUE);
+	Particle b3 = new Particle(new Point(3,3), new Vector(), 3, Color.GREEN);
+
+	@Override
+	public void setUp() {
+		s = new ConcurrentParticleSeq();
+	}
+
+	public void test00() {
+		ConcurrentParticleSeq.Cursor c = s.cursor();
+		assertEquals(0,s.size());
+		assertTrue(c.atEnd());
+		assertFalse(c.isCurrent());
+	}
+
+	public void test01() {
+		ConcurrentParticleSeq.Cursor c = s.cursor();
+		c.addAfter(b1);
+		c.addAfter(b3);
+		c.addBefore(b2);
+		assertEquals(3,s.size());
+		c.start();
+		assertSame(b1,c.getCurrent());
+		c.advance();
+		assertSame(b2,c.getCurrent());
+		assertTrue(c.removeCurrent());
+		assertFalse(c.isCurrent());
+		assertFalse(c.atEnd());
+		c.advance();
+		assertSame(b3,c.getCurrent());
+		c.advance();
+		assertTrue(c.atEnd());
+		assertEquals(2,s.size());
+	}
+
+	public void test02() {
+		ConcurrentParticleSeq.Cursor c1 = s.cursor();
+		c1.addAfter(b1);
+		ConcurrentParticleSeq.Cursor c2 = s.cursor();
+		assertTrue(c2.removeCurrent());
+		assertFalse(c1.removeCurrent()); // already removed
+		c1.addAfter(b2); // goes where b1 was
+		c2.start();
+		assertSame(b2,c2.getCurrent());
+		assertEquals(1,s.size());
+	}
+
+	private static final int THREADS = 8;
+	private static final int OPS = 20000;
+
+	/**
+	 * Several threads each add and remove their own particles with their own cursor.
+	 * Each thread also performs the same operations on an ArraySequence;
+	 * afterwards, the particles of each thread must appear in the sequence
+	 * in the same order as in its model.
+	 */
+	public void testStress() throws InterruptedException {
+		final List<ArraySequence<Particle>> models = new ArrayList<ArraySequence<Particle>>();
+		final Map<Particle,Integer> owner = new HashMap<Particle,Integer>();
+		final List<List<Particle>> particles = new ArrayList<List<Particle>>();
+		for (int t=0; t < THREADS; ++t) {
+			models.add(new ArraySequence<Particle>());
+			List<Particle> ps = new ArrayList<Particle>();
+			for (int i=0; i < OPS; ++i) {
+				Particle p = new Particle(new Point(t,i), new Vector(), 1, Color.BLACK);
+				ps.add(p);
+				owner.put(p, t);
+			}
+			particles.add(ps);
+		}
+		final Throwable[] failure = new Throwable[1];
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t=0; t < THREADS; ++t) {
+			final int id = t;
+			threads.add(new Thread(() -> {
+				try {
+					Random r = new Random(id);
+					ConcurrentParticleSeq.Cursor c = s.cursor();
+					ArraySequence<Particle> model = models.get(id);
+					for (Particle p : particles.get(id)) {
+						if (r.nextInt(2) == 0) {
+							c.addBefore(p);
+							model.addBefore(p);
+						} else {
+							c.addAfter(p);
+							model.addAfter(p);
+						}
+						if (r.nextInt(4) == 0) {
+							assertTrue(c.removeCurrent());
+							model.removeCurrent();
+						}
+					}
+				} catch (Throwable ex) {
+					failure[0] = ex;
+				}
+			}));
+		}
+		for (Thread t : threads) t.start();
+		for (Thread t : threads) t.join();
+		assertNull(failure[0]);
+
+		List<List<Particle>> found = new ArrayList<List<Particle>>();
+		for (int t=0; t < THREADS; ++t) found.add(new ArrayList<Particle>());
+		int total = 0;
+		for (ConcurrentParticleSeq.Cursor c = s.cursor(); !c.atEnd(); c.advance()) {
+			Particle p = c.getCurrent();
+			found.get(owner.get(p)).add(p);
+			++total;
+		}
+		assertEquals(total,s.size());
+		for (int t=0; t < THREADS; ++t) {
+			ArraySequence<Particle> model = models.get(t);
+			assertEquals(model.size(),found.get(t).size());
+			model.start();
+			for (Particle p : found.get(t)) {
+				assertSame(model.getCurrent(),p);
+				model.advance();
+			}
+		}
+	}
+}
@@ -1,17 +1,45 @@
 import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 
 import junit.framework.TestCase;
+import edu.uwm.cs351.BarnesHut;
 import edu.uwm.cs351.Particle;
+import edu.uwm.cs351.ParticleCheckpoint;
+import edu.uwm.cs351.ParticleColumnSeq;
 import edu.uwm.cs351.ParticleSeq;
+import edu.uwm.cs351.ParticleSeqPanel;
+import edu.uwm.cs351.ParticleSeqReader;
+import edu.uwm.cs351.ParticleSeqWriter;
+import edu.uwm.cs351.PhysicsKernels;
 import edu.uwm.cs351.Point;
+import edu.uwm.cs351.Simulation;
+import edu.uwm.cs351.SimulationRunner;
+import edu.uwm.cs351.SpatialHashGrid;
+import edu.uwm.cs351.SweepAndPrune;
 import edu.uwm.cs351.Vector;
 
 
 public class TestEfficiency extends TestCase {
 
+	// Drawing needs no display.  The property is read once, when AWT first
+	// checks for a display, so it is set when this class is loaded rather
+	// than in a test.  (When this class runs in a suite after other classes
+	// that use AWT, pass -Djava.awt.headless=true to the JVM instead.)
+	static {
+		System.setProperty("java.awt.headless", "true");
+	}
+
 	Particle p1 = new Particle(new Point(0,0), new Vector(), 1, Color.BLACK);
 	Particle p2 = new Particle(new Point(100,0), new Vector(10,0), 2, Color.BLUE);
 	Particle p3 = new Particle(new Point(100,100), new Vector(), 3, Color.GREEN);
@@ -96,6 +124,503 @@ public class TestEfficiency extends TestCase {
 		}
 	}
 	
+	public void testClone() {
+		for (int i=0; i < MAX_LENGTH; ++i) {
+			s.addAfter(p[i%6]);
+		}
+		s.start();
+		for (int i=0; i < MAX_WIDTH; ++i) {
+			ParticleSeq snapshot = s.clone();
+			s.addBefore(p[i%6]); // only the head is copied
+			assertEquals(MAX_LENGTH+i, snapshot.size());
+		}
+	}
+	
+	public void testSeek() {
+		for (int i=0; i < MAX_LENGTH; ++i) {
+			s.addAfter(p[i%6]);
+		}
+		for (int j=0; j < MAX_WIDTH; ++j) {
+			int i = r.nextInt(MAX_LENGTH);
+			s.seek(i);
+			assertSame(p[i%6],s.getCurrent());
+			s.removeCurrent();
+			s.addBefore(p[i%6]);
+			assertEquals(i,s.indexOfCurrent());
+		}
+	}
+	
+	public void testBulkLoad() {
+		Particle[] frame = new Particle[MAX_LENGTH];
+		List<Particle> list = new ArrayList<Particle>();
+		for (int i=0; i < MAX_LENGTH; ++i) {
+			frame[i] = p[i%6];
+			list.add(p[i%6]);
+		}
+		for (int j=0; j < SAMPLE/10; ++j) {
+			s = (j%2 == 0) ? ParticleSeq.of(frame) : ParticleSeq.fromIterable(list);
+			assertEquals(MAX_LENGTH, s.size());
+			int i = r.nextInt(MAX_LENGTH);
+			s.seek(i);
+			assertSame(p[i%6],s.getCurrent());
+		}
+		s.insertAllAfterCursor(frame);
+		assertEquals(2*MAX_LENGTH, s.size());
+		assertSame(p[(MAX_LENGTH-1)%6],s.getCurrent());
+	}
+	
+	public void testRemoveIf() {
+		for (int i=0; i < MAX_LENGTH; ++i) {
+			s.addAfter(p[i%6]);
+		}
+		s.start();
+		int expected = MAX_LENGTH;
+		for (int j=0; j < 10; ++j) {
+			final int[] count = { 0 };
+			int removed = s.removeIf(x -> ++count[0] % 10 == 0);
+			assertEquals(expected/10, removed);
+			expected -= removed;
+			assertEquals(expected, s.size());
+		}
+	}
+	
+	private static final int BODIES = 3000;
+	
+	public void testBarnesHut() {
+		Particle[] a = new Particle[BODIES];
+		for (int i=0; i < BODIES; ++i) {
+			a[i] = new Particle(new Point(r.nextDouble()*1000, r.nextDouble()*1000), new Vector(), 1, Color.BLACK);
+		}
+		s = ParticleSeq.of(a);
+		
+		// exact forces, from all pairs
+		long start = System.nanoTime();
+		Vector[] exact = new Vector[BODIES];
+		for (int i=0; i < BODIES; ++i) {
+			Vector f = new Vector();
+			for (int j=0; j < BODIES; ++j) {
+				if (i != j) f = f.add(a[j].gravForceOn(a[i]));
+			}
+			exact[i] = f;
+		}
+		long exactTime = System.nanoTime() - start;
+		
+		// accuracy and speed for a range of opening angles
+		double lastError = 0;
+		for (double theta : new double[] { 0.25, 0.5, 1.0 }) {
+			start = System.nanoTime();
+			BarnesHut bh = new BarnesHut(theta);
+			bh.build(s);
+			Vector[] approx = new Vector[BODIES];
+			for (int i=0; i < BODIES; ++i) {
+				approx[i] = bh.forceOn(a[i]);
+			}
+			long time = System.nanoTime() - start;
+			double error = 0;
+			for (int i=0; i < BODIES; ++i) {
+				error += new Vector(exact[i].dx()-approx[i].dx(), exact[i].dy()-approx[i].dy()).magnitude() / exact[i].magnitude();
+			}
+			error /= BODIES;
+			assertTrue("theta " + theta + " took " + time + "ns, exact took " + exactTime + "ns", time < exactTime);
+			assertTrue("theta " + theta + " error " + error, error < theta * theta / 5);
+			assertTrue(error > lastError);
+			lastError = error;
+		}
+		
+		// many more particles than all pairs could handle
+		for (int i=0; i < MAX_LENGTH/5; ++i) {
+			s.addAfter(new Particle(new Point(r.nextDouble()*1000, r.nextDouble()*1000), new Vector(), 1, Color.BLACK));
+		}
+		new BarnesHut(0.5).applyForces(s);
+	}
+	
+	public void testSimulation() {
+		Particle[] a = new Particle[BODIES];
+		for (int i=0; i < BODIES; ++i) {
+			a[i] = new Particle(new Point(r.nextDouble()*1000, r.nextDouble()*1000), new Vector(), 1, Color.BLACK);
+		}
+		s = ParticleSeq.of(a);
+		
+		// exact forces, from all pairs
+		long start = System.nanoTime();
+		for (int i=0; i < BODIES; ++i) {
+			Vector f = new Vector();
+			for (int j=0; j < BODIES; ++j) {
+				if (i != j) f = f.add(a[j].gravForceOn(a[i]));
+			}
+		}
+		long exactTime = System.nanoTime() - start;
+		
+		Simulation sim = new Simulation();
+		for (int k=0; k < 10; ++k) { // warm up
+			sim.step(s, 1);
+		}
+		start = System.nanoTime();
+		sim.step(s, 1);
+		long time = System.nanoTime() - start;
+		assertTrue("step took " + time + "ns, forces took " + exactTime + "ns", time < exactTime);
+		
+		// many more particles
+		for (int i=0; i < MAX_LENGTH/50; ++i) {
+			s.addAfter(new Particle(new Point(r.nextDouble()*1000, r.nextDouble()*1000), new Vector(), 1, Color.BLACK));
+		}
+		sim.step(s, 0.1);
+	}
+	
+	public void testKernels() {
+		final int n = 1000;
+		double[] x = new double[n], y = new double[n], vx = new double[n], vy = new double[n];
+		double[] mass = new double[n], fx = new double[n], fy = new double[n];
+		Particle[] a = new Particle[n];
+		for (int i=0; i < n; ++i) {
+			x[i] = r.nextDouble()*1000;
+			y[i] = r.nextDouble()*1000;
+			mass[i] = 1;
+			a[i] = new Particle(new Point(x[i], y[i]), new Vector(), 1, Color.BLACK);
+		}
+		com.sun.management.ThreadMXBean threads =
+			(com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+		
+		// with Vector and Point objects
+		long before = threads.getCurrentThreadAllocatedBytes();
+		long start = System.nanoTime();
+		Vector[] f = new Vector[n];
+		for (int i=0; i < n; ++i) {
+			f[i] = new Vector();
+			for (int j=0; j < n; ++j) {
+				if (i != j) f[i] = f[i].add(a[j].gravForceOn(a[i]));
+			}
+		}
+		for (int i=0; i < n; ++i) {
+			a[i].applyForce(f[i]);
+			a[i].move();
+		}
+		long objectTime = System.nanoTime() - start;
+		long objectBytes = threads.getCurrentThreadAllocatedBytes() - before;
+		
+		// with the kernels
+		for (int k=0; k < SAMPLE; ++k) { // warm up
+			PhysicsKernels.accumulateForces(x, y, mass, n, 0, n, fx, fy);
+		}
+		before = threads.getCurrentThreadAllocatedBytes();
+		start = System.nanoTime();
+		PhysicsKernels.accumulateForces(x, y, mass, n, 0, n, fx, fy);
+		PhysicsKernels.applyForces(vx, vy, mass, fx, fy, 0, n, 1);
+		PhysicsKernels.move(x, y, vx, vy, 0, n, 1);
+		long kernelTime = System.nanoTime() - start;
+		long kernelBytes = threads.getCurrentThreadAllocatedBytes() - before;
+		
+		assertTrue("objects allocated only " + objectBytes + " bytes", objectBytes > (long)n * n * 16);
+		assertTrue("kernels allocated " + kernelBytes + " bytes", kernelBytes < 1024);
+		assertTrue(PhysicsKernels.kernel() + " kernels took " + kernelTime + "ns, objects took " + objectTime + "ns", kernelTime < objectTime);
+	}
+	
+	public void testSpatialHashGrid() {
+		final int queries = 1000;
+		for (int i=0; i < MAX_LENGTH/5; ++i) {
+			s.addAfter(new Particle(new Point(r.nextDouble()*10000, r.nextDouble()*10000), new Vector(), 1, Color.BLACK));
+		}
+		SpatialHashGrid g = new SpatialHashGrid(20, s);
+		Point[] q = new Point[queries];
+		for (int i=0; i < queries; ++i) {
+			q[i] = new Point(r.nextDouble()*10000, r.nextDouble()*10000);
+		}
+		
+		// linear scans, for a few of the points
+		long start = System.nanoTime();
+		int[] expected = new int[SAMPLE/10];
+		for (int i=0; i < expected.length; ++i) {
+			for (Particle x : s) {
+				if (new Vector(x.getPosition(), q[i]).magnitude() <= 20) ++expected[i];
+			}
+		}
+		long scanTime = (System.nanoTime() - start) / expected.length;
+		
+		start = System.nanoTime();
+		for (int i=0; i < queries; ++i) {
+			int found = g.queryRadius(q[i], 20).size();
+			if (i < expected.length) assertEquals(expected[i], found);
+			assertEquals(5, g.nearest(q[i], 5).size());
+		}
+		long gridTime = (System.nanoTime() - start) / queries;
+		assertTrue("grid query took " + gridTime + "ns, scan took " + scanTime + "ns", gridTime * 100 < scanTime);
+		
+		// after moving, only the particles that changed cells are moved in the grid
+		for (Particle x : s) {
+			x.applyForce(new Vector(1, 0));
+			x.move();
+		}
+		assertTrue(g.update() < MAX_LENGTH/5/10);
+	}
+	
+	public void testSweepAndPrune() {
+		// small boxes, moving a little each frame
+		final double side = Math.sqrt(MAX_LENGTH) * 2;
+		Particle[] a = new Particle[MAX_LENGTH];
+		for (int i=0; i < MAX_LENGTH; ++i) {
+			a[i] = new Particle(new Point(r.nextDouble()*side, r.nextDouble()*side),
+					new Vector(r.nextDouble()*0.02-0.01, r.nextDouble()*0.02-0.01), 1, Color.BLACK);
+		}
+		s = ParticleSeq.of(a);
+		SweepAndPrune sap = new SweepAndPrune(s, 0.05);
+		
+		// all pairs, for only some of the particles
+		final int few = MAX_LENGTH/100;
+		long start = System.nanoTime();
+		int brute = 0;
+		for (int i=0; i < few; ++i) {
+			Point pi = a[i].getPosition();
+			for (int j=i+1; j < few; ++j) {
+				Point pj = a[j].getPosition();
+				if (Math.abs(pi.x() - pj.x()) <= 0.1 && Math.abs(pi.y() - pj.y()) <= 0.1) ++brute;
+			}
+		}
+		long bruteTime = System.nanoTime() - start;
+		// sweep and prune finds the same pairs, also with larger boxes (which have many more)
+		ParticleSeq some = ParticleSeq.of(Arrays.copyOf(a, few));
+		assertEquals(brute, new SweepAndPrune(some, 0.05).findPairs((x,y) -> { }));
+		int bruteLarge = 0;
+		for (int i=0; i < few; ++i) {
+			Point pi = a[i].getPosition();
+			for (int j=i+1; j < few; ++j) {
+				Point pj = a[j].getPosition();
+				if (Math.abs(pi.x() - pj.x()) <= 10 && Math.abs(pi.y() - pj.y()) <= 10) ++bruteLarge;
+			}
+		}
+		assertTrue("pairs: " + bruteLarge, bruteLarge > 100);
+		assertEquals(bruteLarge, new SweepAndPrune(some, 5).findPairs((x,y) -> { }));
+		
+		long[] pairs = new long[1];
+		for (int frame=0; frame < 5; ++frame) {
+			for (Particle x : a) x.move();
+			start = System.nanoTime();
+			pairs[0] = 0;
+			long found = sap.findPairs((x,y) -> ++pairs[0]);
+			long time = System.nanoTime() - start;
+			assertEquals(found, pairs[0]);
+			assertTrue("pairs: " + found, found > 0 && found < MAX_LENGTH/100);
+			// all pairs of all the particles would take 10000 times as long
+			assertTrue("frame took " + time + "ns, all pairs of " + few + " took " + bruteTime + "ns", time < bruteTime * 10);
+		}
+	}
+	
+	public void testSimulationRunner() throws InterruptedException {
+		Particle[] a = new Particle[BODIES];
+		for (int i=0; i < BODIES; ++i) {
+			a[i] = new Particle(new Point(r.nextDouble()*1000, r.nextDouble()*1000), new Vector(), 1, Color.BLACK);
+		}
+		s = ParticleSeq.of(a);
+		
+		// a renderer that takes as long as a step
+		Simulation sim = new Simulation();
+		for (int k=0; k < 10; ++k) { // warm up
+			sim.step(s, 0.01);
+		}
+		long start = System.nanoTime();
+		sim.step(s, 0.01);
+		long stepTime = Math.max(System.nanoTime() - start, 1000000);
+		
+		SimulationRunner runner = new SimulationRunner(s, 0.01);
+		final int[] overlapped = { 0 }; // frames during which the simulation went on
+		runner.start(f -> {
+			long before = runner.getSteps();
+			try {
+				Thread.sleep(stepTime / 1000000, (int)(stepTime % 1000000));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			if (runner.getSteps() > before) ++overlapped[0];
+		});
+		Thread.sleep(1000);
+		runner.stop();
+		// run one after the other, no step would finish while a frame is drawn
+		assertTrue(overlapped[0] + " of " + runner.getFrames() + " frames overlapped " + runner.getSteps() + " steps",
+				runner.getFrames() > 1 && overlapped[0] > runner.getFrames() / 4);
+	}
+	
+	public void testParticleSeqPanel() {
+		Particle[] a = new Particle[MAX_LENGTH];
+		for (int i=0; i < MAX_LENGTH; ++i) {
+			a[i] = new Particle(new Point(r.nextDouble()*4000-1000, r.nextDouble()*2000-500), new Vector(),
+					1 + r.nextDouble()*3, new Color(r.nextInt()));
+		}
+		s = ParticleSeq.of(a);
+		
+		// drawing each particle with Graphics
+		BufferedImage image = new BufferedImage(1920, 1080, BufferedImage.TYPE_INT_RGB);
+		Graphics g = image.getGraphics();
+		long start = System.nanoTime();
+		for (Particle x : a) x.draw(g);
+		long drawTime = System.nanoTime() - start;
+		g.dispose();
+		
+		ParticleSeqPanel panel = new ParticleSeqPanel(s);
+		panel.setSize(1920, 1080);
+		long time = Long.MAX_VALUE;
+		for (int k=0; k < 10; ++k) {
+			start = System.nanoTime();
+			panel.renderParticles();
+			time = Math.min(time, System.nanoTime() - start);
+		}
+		assertTrue("frame took " + time + "ns (" + 1e9/time + " fps), drawing took " + drawTime + "ns", time * 10 < drawTime);
+	}
+	
+	public void testParticleSeqFile() throws IOException {
+		Particle[] a = new Particle[MAX_LENGTH];
+		for (int i=0; i < MAX_LENGTH; ++i) {
+			a[i] = new Particle(new Point(r.nextDouble(), r.nextDouble()), new Vector(r.nextDouble(), r.nextDouble()),
+					1 + r.nextDouble(), i % 100 == 0 ? Color.RED : Color.BLUE);
+		}
+		s = ParticleSeq.of(a);
+		Path file = Files.createTempFile("particles", ".pseq");
+		try {
+			// the same fields, one at a time through a stream
+			long start = System.nanoTime();
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+				out.writeLong(MAX_LENGTH);
+				for (Particle x : s) {
+					out.writeDouble(x.getPosition().x());
+					out.writeDouble(x.getPosition().y());
+					out.writeDouble(x.getVelocity().dx());
+					out.writeDouble(x.getVelocity().dy());
+					out.writeDouble(1);
+					out.writeInt(0);
+					out.writeInt(0);
+				}
+			}
+			long streamTime = System.nanoTime() - start;
+		
+			start = System.nanoTime();
+			ParticleSeqWriter.write(s, file);
+			long writeTime = System.nanoTime() - start;
+			assertEquals(16 + 48L*MAX_LENGTH, Files.size(file));
+			assertTrue("write took " + writeTime + "ns, stream took " + streamTime + "ns", writeTime < streamTime);
+		
+			s = null;
+			start = System.nanoTime();
+			s = ParticleSeqReader.read(file);
+			long readTime = System.nanoTime() - start;
+			assertEquals(MAX_LENGTH, s.size());
+			assertTrue("read took " + readTime + "ns", readTime < 4 * streamTime);
+		} finally {
+			Files.delete(file);
+		}
+	}
+	
+	public void testParticleCheckpoint() throws IOException {
+		Particle[] a = new Particle[MAX_LENGTH];
+		for (int i=0; i < MAX_LENGTH; ++i) {
+			a[i] = new Particle(new Point(r.nextDouble(), r.nextDouble()), new Vector(r.nextDouble(), r.nextDouble()),
+					1 + r.nextDouble(), Color.BLUE);
+		}
+		s = ParticleSeq.of(a);
+		a = null;
+		Path file = Files.createTempFile("particles", ".ckpt");
+		try {
+			assertEquals(1, ParticleCheckpoint.save(s, file));
+			s = null;
+		
+			// rebuilding the whole sequence
+			long start = System.nanoTime();
+			try (ParticleCheckpoint c = ParticleCheckpoint.open(file)) {
+				s = c.toParticleSeq();
+			}
+			long loadTime = System.nanoTime() - start;
+			assertEquals(MAX_LENGTH, s.size());
+		
+			// resuming with the first few particles
+			start = System.nanoTime();
+			try (ParticleCheckpoint c = ParticleCheckpoint.open(file)) {
+				assertEquals(MAX_LENGTH, c.size());
+				for (int i=0; i < SAMPLE; ++i) {
+					assertNotNull(c.getCurrent());
+					c.advance();
+				}
+			}
+			long resumeTime = System.nanoTime() - start;
+			assertTrue("resume took " + resumeTime + "ns, load took " + loadTime + "ns", resumeTime * 10 < loadTime);
+		} finally {
+			Files.delete(file);
+		}
+	}
+	
+	public void testColumnScan() {
+		Particle[] a = new Particle[MAX_LENGTH];
+		ParticleColumnSeq columns = new ParticleColumnSeq();
+		for (int i=0; i < MAX_LENGTH; ++i) {
+			double x = r.nextDouble(), y = r.nextDouble(), dx = r.nextDouble(), dy = r.nextDouble(), mass = 1 + r.nextDouble();
+			a[i] = new Particle(new Point(x, y), new Vector(dx, dy), mass, Color.BLUE);
+			columns.addAfter(x, y, dx, dy, mass, Color.BLUE.getRGB());
+		}
+		// nodes and particles spread through the heap, as after a long simulation
+		for (int i=MAX_LENGTH-1; i > 0; --i) {
+			int j = r.nextInt(i+1);
+			Particle t = a[i]; a[i] = a[j]; a[j] = t;
+		}
+		s = ParticleSeq.of(a);
+		a = null;
+		
+		long seqTime = Long.MAX_VALUE, columnTime = Long.MAX_VALUE;
+		double seqSum = 0, columnSum = 0;
+		for (int k=0; k < 5; ++k) {
+			long start = System.nanoTime();
+			seqSum = 0;
+			for (s.start(); s.isCurrent(); s.advance()) {
+				Particle x = s.getCurrent();
+				seqSum += x.getPosition().x() * x.getVelocity().magnitude();
+			}
+			seqTime = Math.min(seqTime, System.nanoTime() - start);
+			
+			start = System.nanoTime();
+			columnSum = 0;
+			for (columns.start(); columns.isCurrent(); columns.advance()) {
+				double dx = columns.getCurrentDX(), dy = columns.getCurrentDY();
+				columnSum += columns.getCurrentX() * Math.sqrt(dx*dx + dy*dy);
+			}
+			columnTime = Math.min(columnTime, System.nanoTime() - start);
+		}
+		assertEquals(seqSum, columnSum, seqSum * 1e-9); // added in a different order
+		assertTrue("column scan took " + columnTime + "ns, sequence scan took " + seqTime + "ns", columnTime * 5 < seqTime);
+	}
+	
+	public void testParallelStream() {
+		for (int i=0; i < MAX_LENGTH; ++i) {
+			s.addAfter(p[i%6]);
+		}
+		double expected = 0;
+		for (int i=0; i < MAX_LENGTH; ++i) {
+			if (i%6 != 0) expected += p[i%6].getVelocity().magnitude();
+		}
+		for (int j=0; j < SAMPLE; ++j) {
+			double sum = s.parallelStream().filter(x -> x != null)
+					.mapToDouble(x -> x.getVelocity().magnitude()).sum();
+			assertEquals(expected, sum, 1e-3);
+		}
+	}
+	
+	private static final int CHURN = 10000000;
+	
+	public void testChurn() {
+		s = new ParticleSeq(SAMPLE);
+		for (int i=0; i < SAMPLE; ++i) {
+			s.addAfter(p[i%6]);
+		}
+		com.sun.management.ThreadMXBean threads =
+			(com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+		long before = threads.getCurrentThreadAllocatedBytes();
+		s.start();
+		for (int i=0; i < CHURN; ++i) {
+			if (!s.isCurrent()) s.start();
+			Particle x = s.getCurrent();
+			s.removeCurrent();
+			s.addAfter(x);
+			s.advance();
+		}
+		long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+		assertEquals(SAMPLE, s.size());
+		assertTrue("churn allocated " + allocated + " bytes", allocated < CHURN);
+	}
+	
 	public void testStochastic() {
 		List<ParticleSeq> ss = new ArrayList<ParticleSeq>();
 		ss.add(s);
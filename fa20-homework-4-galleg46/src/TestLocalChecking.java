@@ -0,0 +1,73 @@
+import java.awt.Color;
+import java.util.Random;
+
+import junit.extensions.TestSetup;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import edu.uwm.cs351.Particle;
+import edu.uwm.cs351.ParticleSeq;
+import edu.uwm.cs351.Point;
+import edu.uwm.cs351.Vector;
+
+
+/**
+ * Run the main tests again with only local invariant checking,
+ * and check that large sequences can then be used with assertions on.
+ * <p>
+ * The main tests are run as TestParticleSeq itself (wrapped in a setup)
+ * rather than by a subclass, so that they share its locked test answers
+ * and no TestLocalChecking.tst file is created.
+ */
+public class TestLocalChecking extends TestCase {
+
+	Particle p1 = new Particle(new Point(1,1), new Vector(), 1, Color.BLACK);
+	Particle p2 = new Particle(new Point(2,2), new Vector(10,0), 2, Color.BLUE);
+
+	private static final int LARGE = 100000;
+
+	public static Test suite() {
+		TestSuite suite = new TestSuite(TestLocalChecking.class.getName());
+		suite.addTest(new TestSetup(new TestSuite(TestParticleSeq.class)) {
+			@Override
+			protected void setUp() {
+				ParticleSeq.setLocalChecking(true);
+			}
+
+			@Override
+			protected void tearDown() {
+				ParticleSeq.setLocalChecking(false);
+			}
+		});
+		suite.addTestSuite(TestLocalChecking.class);
+		return suite;
+	}
+
+	@Override
+	public void setUp() {
+		ParticleSeq.setLocalChecking(true);
+	}
+
+	@Override
+	public void tearDown() {
+		ParticleSeq.setLocalChecking(false);
+	}
+
+	public void testLarge() {
+		ParticleSeq t = new ParticleSeq();
+		for (int i=0; i < LARGE; ++i) {
+			t.addAfter(i%2 == 0 ? p1 : p2);
+		}
+		assertTrue(t.isWellFormed());
+		Random r = new Random(351);
+		for (int i=0; i < LARGE; ++i) {
+			t.seek(r.nextInt(t.size()));
+			if (r.nextBoolean()) t.removeCurrent();
+			else t.addBefore(p1);
+			if (t.isCurrent()) t.advance();
+		}
+		t.addAll(t);
+		t.removeIf(x -> x == p2);
+		assertTrue(t.isWellFormed());
+	}
+}
@@ -0,0 +1,194 @@
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import edu.uwm.cs351.OffHeapParticleSeq;
+import edu.uwm.cs351.Particle;
+import edu.uwm.cs351.ParticleSeq;
+import edu.uwm.cs351.Point;
+import edu.uwm.cs351.Vector;
+import edu.uwm.cs351.test.ArraySequence;
+import edu.uwm.cs351.test.CursorSequenceAdaptor;
+import edu.uwm.cs351.test.ISequence;
+import edu.uwm.cs351.test.ISequenceCommand;
+import edu.uwm.cs351.test.SequenceCommandFactory;
+import edu.uwm.cs351.test.util.Option;
+
+
+public class TestOffHeapParticleSeq extends TestCase {
+
+	private OffHeapParticleSeq s;
+	Particle b1 = new Particle(new Point(1,1), new Vector(), 1, Color.BLACK);
+	Particle b2 = new Particle(new Point(2,2), new Vector(10,0), 2, Color.BLUE);
+	Particle b3 = new Particle(new Point(3,3), new Vector(), 3, Color.GREEN);
+
+	Particle b[] = { null, b1, b2, b3 };
+
+	// The off-heap sequence returns new particles,
+	// so particles are identified by their x coordinate.
+	// 0 = null, 1 = b1, 2 = b2 etc.
+	int ix(Particle p) {
+		if (p == null) return 0;
+		return (int)p.getPosition().x();
+	}
+
+	@Override
+	public void setUp() {
+		s = new OffHeapParticleSeq(2);
+	}
+
+	@Override
+	public void tearDown() {
+		s.close();
+	}
+
+	public void test00() {
+		assertEquals(0,s.size());
+		assertFalse(s.isCurrent());
+		assertTrue(s.atEnd());
+	}
+
+	public void test01() {
+		s.addAfter(b2);
+		Particle p = s.getCurrent();
+		assertNotSame(b2,p);
+		assertEquals(2.0,p.getPosition().y());
+		assertEquals(10.0,p.getVelocity().dx());
+		assertEquals(0.0,p.getVelocity().dy());
+	}
+
+	public void test02() {
+		s.addAfter(b1);
+		s.addAfter(null);
+		s.addAfter(b3);
+		s.start();
+		s.advance();
+		s.removeCurrent();
+		s.addBefore(b2); // reuses the slot
+		s.start();
+		assertEquals(1,ix(s.getCurrent()));
+		s.advance();
+		assertEquals(2,ix(s.getCurrent()));
+		s.advance();
+		assertEquals(3,ix(s.getCurrent()));
+	}
+
+	public void test03() {
+		for (int i=0; i < 10; ++i) {
+			s.addAfter(b[i%4]);
+		}
+		s.start();
+		while (!s.atEnd()) {
+			if (s.getCurrent() == null) s.removeCurrent();
+			s.advance();
+		}
+		s.start();
+		s.advance();
+		s.compact();
+		assertEquals(7,s.size());
+		assertEquals(2,ix(s.getCurrent()));
+		s.advance();
+		assertEquals(3,ix(s.getCurrent()));
+	}
+
+	public void test04() {
+		s.addAfter(b1);
+		s.addAfter(b2);
+		OffHeapParticleSeq c = s.clone();
+		s.removeCurrent();
+		assertEquals(2,c.size());
+		assertEquals(2,ix(c.getCurrent()));
+		c.addAll(c);
+		assertEquals(4,c.size());
+		c.close();
+	}
+
+	public void test05() {
+		s.addAfter(b1);
+		s.close();
+		assertEquals(0,s.size());
+		try {
+			s.addAfter(b2);
+			fail("should not be able to add to a closed sequence");
+		} catch (IllegalStateException ex) {
+			// expected
+		}
+	}
+
+	public void test06() {
+		// a buffer cannot hold more than MAX_CAPACITY slots
+		assertEquals(Integer.MAX_VALUE / 56, OffHeapParticleSeq.MAX_CAPACITY);
+		try {
+			new OffHeapParticleSeq(OffHeapParticleSeq.MAX_CAPACITY + 1);
+			fail("capacity is too large");
+		} catch (IllegalArgumentException ex) {
+			// expected
+		}
+	}
+
+	/**
+	 * Run random operations on the off-heap sequence and on a ParticleSeq,
+	 * and compare the results.
+	 */
+	public void testRandom() {
+		Random r = new Random(351);
+		ParticleSeq model = new ParticleSeq();
+		for (int i=0; i < 20000; ++i) {
+			switch (r.nextInt(9)) {
+			case 0: s.start(); model.start(); break;
+			case 1: case 2:
+				if (!model.atEnd()) { s.advance(); model.advance(); }
+				break;
+			case 3: s.addBefore(b[r.nextInt(4)]); model.addBefore(s.getCurrent()); break;
+			case 4: s.addAfter(b[r.nextInt(4)]); model.addAfter(s.getCurrent()); break;
+			case 5:
+				if (model.isCurrent()) { s.removeCurrent(); model.removeCurrent(); }
+				break;
+			case 6:
+				if (model.size() < 50) { s.addAll(s); model.addAll(model); }
+				break;
+			case 7:
+				if (r.nextInt(100) == 0) s.compact();
+				break;
+			case 8:
+				if (r.nextInt(100) == 0) {
+					OffHeapParticleSeq c = s.clone();
+					s.close();
+					s = c;
+				}
+				break;
+			}
+			assertEquals(model.size(),s.size());
+			assertEquals(model.atEnd(),s.atEnd());
+			assertEquals(model.isCurrent(),s.isCurrent());
+			if (model.isCurrent()) assertEquals(ix(model.getCurrent()),ix(s.getCurrent()));
+		}
+	}
+
+	/**
+	 * Run random commands against the off-heap sequence, used through
+	 * its ParticleSequence interface, and an array-based model of the same
+	 * behavior, and compare the results.
+	 */
+	public void testRandomCommands() {
+		SequenceCommandFactory<Particle> factory = new SequenceCommandFactory<Particle>(new Random(351)) {
+			@Override
+			protected Particle nextElement(Random r) {
+				return b[r.nextInt(b.length)];
+			}
+		};
+		List<ISequence<Particle>> mirror = new ArrayList<ISequence<Particle>>();
+		List<ISequence<Particle>> subject = new ArrayList<ISequence<Particle>>();
+		mirror.add(new ArraySequence<Particle>());
+		subject.add(new CursorSequenceAdaptor<OffHeapParticleSeq>(new OffHeapParticleSeq(), OffHeapParticleSeq::new,
+				p -> b[ix(p)]));
+		for (int i=0; i < 100000; ++i) {
+			ISequenceCommand<Particle,?> command = factory.nextCommand(mirror.size());
+			Option<?> expected = command.run(mirror);
+			Option<?> actual = command.run(subject);
+			assertTrue("after " + i + " tests: " + command, Option.equals(expected, actual));
+		}
+	}
+}
@@ -0,0 +1,273 @@
+import java.awt.Color;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import edu.uwm.cs351.Particle;
+import edu.uwm.cs351.ParticleCheckpoint;
+import edu.uwm.cs351.ParticleSeq;
+import edu.uwm.cs351.Point;
+import edu.uwm.cs351.Vector;
+import edu.uwm.cs351.test.ParticleAssert;
+
+
+public class TestParticleCheckpoint extends TestCase {
+
+	private Path dir, file;
+	private Random r;
+
+	@Override
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory("checkpoint");
+		file = dir.resolve("world.ckpt");
+		r = new Random(351);
+	}
+
+	@Override
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(file);
+		Files.deleteIfExists(dir.resolve("world.ckpt.tmp"));
+		Files.deleteIfExists(dir);
+	}
+
+	private void assertSameSeq(ParticleSeq expected, ParticleCheckpoint actual) {
+		assertEquals(expected.size(), actual.size());
+		actual.start();
+		for (Particle p : expected) {
+			assertTrue(actual.isCurrent());
+			ParticleAssert.assertSameState(p, actual.getCurrent());
+			actual.advance();
+		}
+		assertTrue(actual.atEnd());
+	}
+
+	/**
+	 * Change one byte of the checkpoint file.
+	 */
+	private void corrupt(int index, int value) throws IOException {
+		byte[] bytes = Files.readAllBytes(file);
+		bytes[index] = (byte)value;
+		Files.write(file, bytes);
+	}
+
+	public void test00() throws IOException {
+		assertEquals(1, ParticleCheckpoint.save(new ParticleSeq(), file));
+		assertEquals(24 + 16, Files.size(file));
+		assertFalse(Files.exists(dir.resolve("world.ckpt.tmp")));
+		try (ParticleCheckpoint c = ParticleCheckpoint.open(file)) {
+			assertEquals(1, c.getGeneration());
+			assertEquals(0, c.size());
+			assertTrue(c.atEnd());
+			assertFalse(c.isCurrent());
+			c.verify();
+			ParticleSeq s = c.toParticleSeq();
+			assertEquals(0, s.size());
+			assertFalse(s.isCurrent());
+		}
+	}
+
+	public void test01() throws IOException {
+		ParticleSeq s = new ParticleSeq();
+		s.addAfter(new Particle(new Point(1,2), new Vector(3,4), 5, Color.RED));
+		s.addAfter(null);
+		s.addAfter(new Particle(new Point(-1,-2), new Vector(), 0.5, Color.BLUE));
+		assertEquals(1, ParticleCheckpoint.save(s, file));
+		assertEquals(24 + 3*48 + 16, Files.size(file));
+		try (ParticleCheckpoint c = ParticleCheckpoint.open(file)) {
+			assertTrue(c.isCurrent());
+			Particle p = c.getCurrent();
+			assertEquals(1.0, p.getPosition().x());
+			assertEquals(4.0, p.getVelocity().dy());
+			assertNotSame(p, c.getCurrent());
+			c.advance();
+			assertNull(c.getCurrent());
+			c.advance();
+			c.advance();
+			assertTrue(c.atEnd());
+			try {
+				c.getCurrent();
+				fail("no current element");
+			} catch (IllegalStateException ex) {
+				// expected
+			}
+			try {
+				c.advance();
+				fail("advancing past the end");
+			} catch (IllegalStateException ex) {
+				// expected
+			}
+			assertSameSeq(s, c);
+		}
+
+		// each save is a new generation
+		s.removeCurrent();
+		assertEquals(2, ParticleCheckpoint.save(s, file));
+		assertEquals(3, ParticleCheckpoint.save(s, file));
+		try (ParticleCheckpoint c = ParticleCheckpoint.open(file)) {
+			assertEquals(3, c.getGeneration());
+			assertSameSeq(s, c);
+		}
+	}
+
+	public void test02() throws IOException {
+		ParticleSeq s = ParticleAssert.random(r, 40000, 0, 1000, 39999);
+		ParticleCheckpoint.save(s, file);
+		try (ParticleCheckpoint c = ParticleCheckpoint.open(file)) {
+			c.verify();
+			assertSameSeq(s, c);
+			ParticleAssert.assertSameSeq(s, c.toParticleSeq());
+		}
+	}
+
+	public void test03() throws IOException {
+		// a checkpoint that was cut short, or not completed, is not opened
+		ParticleSeq s = ParticleAssert.random(r, 100);
+		ParticleCheckpoint.save(s, file);
+		byte[] bytes = Files.readAllBytes(file);
+
+		Files.write(file, Arrays.copyOf(bytes, bytes.length - 1));
+		try {
+			ParticleCheckpoint.open(file);
+			fail("cut short");
+		} catch (EOFException ex) {
+			// expected
+		}
+		Files.write(file, Arrays.copyOf(bytes, 10));
+		try {
+			ParticleCheckpoint.open(file);
+			fail("no header");
+		} catch (EOFException ex) {
+			// expected
+		}
+
+		Files.write(file, bytes);
+		corrupt(8, 7); // generation in the header
+		try {
+			ParticleCheckpoint.open(file);
+			fail("trailer has a different generation");
+		} catch (IOException ex) {
+			assertFalse(ex instanceof EOFException);
+		}
+
+		Files.write(file, bytes);
+		corrupt(bytes.length - 1, 0);
+		try {
+			ParticleCheckpoint.open(file);
+			fail("no trailer");
+		} catch (IOException ex) {
+			assertFalse(ex instanceof EOFException);
+		}
+
+		Files.write(file, bytes);
+		corrupt(0, 'X');
+		try {
+			ParticleCheckpoint.open(file);
+			fail("not a checkpoint");
+		} catch (IOException ex) {
+			assertFalse(ex instanceof EOFException);
+		}
+		// and so the next save starts again
+		assertEquals(1, ParticleCheckpoint.save(s, file));
+	}
+
+	public void test04() throws IOException {
+		// a changed record is found by the checksum
+		ParticleSeq s = ParticleAssert.random(r, 100);
+		ParticleCheckpoint.save(s, file);
+		corrupt(24 + 50*48 + 3, 0x55);
+		try (ParticleCheckpoint c = ParticleCheckpoint.open(file)) {
+			assertEquals(100, c.size());
+			try {
+				c.verify();
+				fail("checksum should not match");
+			} catch (IOException ex) {
+				// expected
+			}
+			try {
+				c.toParticleSeq();
+				fail("checksum should not match");
+			} catch (IOException ex) {
+				// expected
+			}
+		}
+	}
+
+	public void test05() throws IOException {
+		// a save that crashed leaves the last checkpoint in place
+		ParticleSeq s1 = ParticleAssert.random(r, 10), s2 = ParticleAssert.random(r, 20);
+		ParticleCheckpoint.save(s1, file);
+		Files.write(dir.resolve("world.ckpt.tmp"), new byte[] { 1, 2, 3 });
+		try (ParticleCheckpoint c = ParticleCheckpoint.open(file)) {
+			assertEquals(1, c.getGeneration());
+			assertSameSeq(s1, c);
+		}
+		assertEquals(2, ParticleCheckpoint.save(s2, file));
+		assertFalse(Files.exists(dir.resolve("world.ckpt.tmp")));
+		try (ParticleCheckpoint c = ParticleCheckpoint.open(file)) {
+			assertSameSeq(s2, c);
+		}
+	}
+
+	public void test06() throws IOException {
+		ParticleCheckpoint.save(ParticleAssert.random(r, 5), file);
+		ParticleCheckpoint c = ParticleCheckpoint.open(file);
+		c.close();
+		c.close();
+		try {
+			c.getCurrent();
+			fail("closed");
+		} catch (IllegalStateException ex) {
+			// expected
+		}
+		try {
+			c.verify();
+			fail("closed");
+		} catch (IllegalStateException ex) {
+			// expected
+		}
+		try {
+			ParticleCheckpoint.save(null, file);
+			fail("cannot save null");
+		} catch (NullPointerException ex) {
+			// expected
+		}
+	}
+
+	public void test07() throws IOException {
+		// a save that fails removes its partial file and leaves the last checkpoint
+		ParticleSeq s1 = ParticleAssert.random(r, 10);
+		ParticleCheckpoint.save(s1, file);
+		ParticleSeq s2 = new ParticleSeq() {
+			@Override
+			public Iterator<Particle> iterator() {
+				Iterator<Particle> it = super.iterator();
+				return new Iterator<Particle>() {
+					int n = 0;
+					public boolean hasNext() { return it.hasNext(); }
+					public Particle next() {
+						if (++n > 3) throw new IllegalStateException("failed while saving");
+						return it.next();
+					}
+				};
+			}
+		};
+		s2.addAll(ParticleAssert.random(r, 10));
+		try {
+			ParticleCheckpoint.save(s2, file);
+			fail("iterator failed");
+		} catch (IllegalStateException ex) {
+			// expected
+		}
+		assertFalse(Files.exists(dir.resolve("world.ckpt.tmp")));
+		try (ParticleCheckpoint c = ParticleCheckpoint.open(file)) {
+			assertEquals(1, c.getGeneration());
+			c.verify();
+			assertSameSeq(s1, c);
+		}
+	}
+}
@@ -0,0 +1,149 @@
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import edu.uwm.cs351.Particle;
+import edu.uwm.cs351.ParticleColumnSeq;
+import edu.uwm.cs351.Point;
+import edu.uwm.cs351.Vector;
+import edu.uwm.cs351.test.ArraySequence;
+import edu.uwm.cs351.test.CursorSequenceAdaptor;
+import edu.uwm.cs351.test.ISequence;
+import edu.uwm.cs351.test.ISequenceCommand;
+import edu.uwm.cs351.test.ParticleAssert;
+import edu.uwm.cs351.test.SequenceCommandFactory;
+import edu.uwm.cs351.test.util.Option;
+
+
+public class TestParticleColumnSeq extends TestCase {
+
+	private ParticleColumnSeq s;
+	Particle b1 = new Particle(new Point(1,1), new Vector(), 1, Color.BLACK);
+	Particle b2 = new Particle(new Point(2,2), new Vector(10,0), 2, Color.BLUE);
+	Particle b3 = new Particle(new Point(3,3), new Vector(), 3, Color.GREEN);
+
+	@Override
+	public void setUp() {
+		s = new ParticleColumnSeq();
+	}
+
+	public void test00() {
+		assertEquals(0,s.size());
+		assertFalse(s.isCurrent());
+		assertTrue(s.atEnd());
+	}
+
+	public void test01() {
+		s.addAfter(b1);
+		s.addAfter(null);
+		s.addBefore(b2);
+		s.start();
+		// the sequence keeps the state, not the particle
+		assertNotSame(b1,s.getCurrent());
+		ParticleAssert.assertSameState(b1,s.getCurrent());
+		s.advance();
+		ParticleAssert.assertSameState(b2,s.getCurrent());
+		s.advance();
+		assertNull(s.getCurrent());
+		s.advance();
+		assertTrue(s.atEnd());
+	}
+
+	public void test02() {
+		s.addAfter(3, 4, 1, -1, 5, Color.RED.getRGB());
+		Particle p = s.getCurrent();
+		assertEquals(3.0,p.getPosition().x());
+		assertEquals(4.0,p.getPosition().y());
+		assertEquals(1.0,p.getVelocity().dx());
+		assertEquals(-1.0,p.getVelocity().dy());
+		assertNotSame(p,s.getCurrent());
+		// changing the particle returned does not change the sequence
+		p.move();
+		assertEquals(3.0,s.getCurrentX());
+		assertEquals(3.0,s.getCurrent().getPosition().x());
+	}
+
+	public void test03() {
+		s.addAfter(b2);
+		ParticleColumnSeq c = s.clone();
+		s.addAfter(b3);
+		assertEquals(2,s.size());
+		assertEquals(1,c.size());
+		ParticleAssert.assertSameState(b2,c.getCurrent());
+	}
+
+	public void test04() {
+		s.addAfter(b1);
+		s.addAll(s);
+		s.addAll(s);
+		assertEquals(4,s.size());
+		ParticleAssert.assertSameState(b1,s.getCurrent());
+		s.removeCurrent();
+		s.advance();
+		ParticleAssert.assertSameState(b1,s.getCurrent());
+	}
+
+	public void test05() {
+		s.addAfter(3, 4, 1, -1, 5, Color.RED.getRGB());
+		s.addAfter(b2);
+		s.addAfter(null);
+		s.start();
+		assertEquals(3.0,s.getCurrentX());
+		assertEquals(4.0,s.getCurrentY());
+		assertEquals(1.0,s.getCurrentDX());
+		assertEquals(-1.0,s.getCurrentDY());
+		assertEquals(5.0,s.getCurrentMass());
+		assertEquals(Color.RED.getRGB(),s.getCurrentColor());
+		s.advance();
+		assertEquals(2.0,s.getCurrentX());
+		assertEquals(10.0,s.getCurrentDX());
+		assertEquals(2.0,s.getCurrentMass());
+		assertEquals(Color.BLUE.getRGB(),s.getCurrentColor());
+		// changing a particle after it is added does not change the sequence
+		b2.move();
+		assertEquals(2.0,s.getCurrentX());
+		assertEquals(2.0,s.getCurrent().getPosition().x());
+		s.advance();
+		assertEquals(0.0,s.getCurrentX());
+		assertEquals(0,s.getCurrentColor());
+		s.advance();
+		try {
+			s.getCurrentX();
+			fail("no current element");
+		} catch (IllegalStateException ex) {
+			// expected
+		}
+	}
+
+	/**
+	 * Run random commands against the column sequence and an
+	 * array-based model of the same behavior, and compare the results.
+	 */
+	public void testRandom() {
+		final List<Particle> particles = new ArrayList<Particle>();
+		particles.add(null);
+		for (int i=1; i < 10; ++i) {
+			particles.add(new Particle(new Point(i,i), new Vector(i,i), i, Color.BLACK));
+		}
+		SequenceCommandFactory<Particle> factory = new SequenceCommandFactory<Particle>(new Random(351)) {
+			@Override
+			protected Particle nextElement(Random r) {
+				return particles.get(r.nextInt(particles.size()));
+			}
+		};
+		List<ISequence<Particle>> mirror = new ArrayList<ISequence<Particle>>();
+		List<ISequence<Particle>> subject = new ArrayList<ISequence<Particle>>();
+		mirror.add(new ArraySequence<Particle>());
+		// the sequence returns new particles, identified by their x coordinate
+		subject.add(new CursorSequenceAdaptor<ParticleColumnSeq>(new ParticleColumnSeq(), ParticleColumnSeq::new,
+				p -> p == null ? null : particles.get((int)p.getPosition().x())));
+		for (int i=0; i < 100000; ++i) {
+			ISequenceCommand<Particle,?> command = factory.nextCommand(mirror.size());
+			Option<?> expected = command.run(mirror);
+			Option<?> actual = command.run(subject);
+			assertTrue("after " + i + " tests: " + command, Option.equals(expected, actual));
+		}
+	}
+}
@@ -0,0 +1,131 @@
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import edu.uwm.cs351.Particle;
+import edu.uwm.cs351.ParticleSeq;
+import edu.uwm.cs351.Point;
+import edu.uwm.cs351.Vector;
+
+
+public class TestParticleSeqBulk extends TestCase {
+
+	private ParticleSeq s;
+	Particle b1 = new Particle(new Point(1,1), new Vector(), 1, Color.BLACK);
+	Particle b2 = new Particle(new Point(2,2), new Vector(10,0), 2, Color.BLUE);
+	Particle b3 = new Particle(new Point(3,3), new Vector(), 3, Color.GREEN);
+
+	Particle b[] = { null, b1, b2, b3 };
+
+	private void assertContents(ParticleSeq t, Particle... expected) {
+		assertEquals(expected.length,t.size());
+		int i = 0;
+		for (Particle p : t) {
+			assertSame(expected[i++],p);
+		}
+	}
+
+	public void test00() {
+		s = ParticleSeq.of();
+		assertEquals(0,s.size());
+		assertTrue(s.atEnd());
+		s = ParticleSeq.fromIterable(new ArrayList<Particle>());
+		assertTrue(s.atEnd());
+		s.insertAllAfterCursor(new Particle[0]);
+		s.insertAllAfterCursor(s);
+		assertEquals(0,s.size());
+		assertTrue(s.atEnd());
+	}
+
+	public void test01() {
+		s = ParticleSeq.of(b1,null,b2);
+		assertContents(s,b1,null,b2);
+		assertSame(b1,s.getCurrent());
+		s = ParticleSeq.fromIterable(Arrays.asList(b3,b2));
+		assertContents(s,b3,b2);
+		assertSame(b3,s.getCurrent());
+		s.addAfter(b1);
+		assertContents(s,b3,b1,b2);
+	}
+
+	public void test02() {
+		s = ParticleSeq.of(b1,b2);
+		s.insertAllAfterCursor(new Particle[] { b3, null });
+		assertContents(s,b1,b3,null,b2);
+		assertNull(s.getCurrent());
+		s.advance();
+		assertSame(b2,s.getCurrent());
+		s.removeCurrent();
+		s.insertAllAfterCursor(s);
+		assertContents(s,b1,b3,null,b1,b3,null);
+		assertNull(s.getCurrent());
+		assertEquals(5,s.indexOfCurrent());
+		s.advance();
+		assertTrue(s.atEnd());
+	}
+
+	public void test03() {
+		s = ParticleSeq.of(b1,b2);
+		ParticleSeq c = s.clone();
+		s.insertAllAfterCursor(new Particle[] { b3 });
+		assertContents(s,b1,b3,b2);
+		assertContents(c,b1,b2);
+		assertSame(b1,c.getCurrent());
+	}
+
+	/**
+	 * Compare bulk insertion with adding the elements one at a time.
+	 */
+	public void testRandom() {
+		Random r = new Random(351);
+		s = new ParticleSeq();
+		ParticleSeq model = new ParticleSeq();
+		for (int i=0; i < 2000; ++i) {
+			int n = r.nextInt(5);
+			Particle[] a = new Particle[n];
+			for (int j=0; j < n; ++j) a[j] = b[r.nextInt(4)];
+			switch (r.nextInt(6)) {
+			case 0:
+				int k = r.nextInt(s.size()+1);
+				s.seek(k);
+				model.seek(k);
+				break;
+			case 1:
+				if (s.isCurrent()) { s.removeCurrent(); model.removeCurrent(); }
+				break;
+			case 2:
+				if (!s.atEnd()) { s.advance(); model.advance(); }
+				break;
+			case 3:
+				s.insertAllAfterCursor(a);
+				for (Particle p : a) model.addAfter(p);
+				break;
+			case 4:
+				ParticleSeq t = ParticleSeq.of(a);
+				s.insertAllAfterCursor(t);
+				for (Particle p : a) model.addAfter(p);
+				break;
+			case 5:
+				if (s.size() > 100) break;
+				List<Particle> copy = new ArrayList<Particle>();
+				for (Particle p : model) copy.add(p);
+				s.insertAllAfterCursor(s);
+				for (Particle p : copy) model.addAfter(p);
+				break;
+			}
+			assertEquals(model.size(),s.size());
+			assertEquals(model.atEnd(),s.atEnd());
+			assertEquals(model.isCurrent(),s.isCurrent());
+			if (s.isCurrent()) {
+				assertSame(model.getCurrent(),s.getCurrent());
+				assertEquals(model.indexOfCurrent(),s.indexOfCurrent());
+			}
+		}
+		List<Particle> expected = new ArrayList<Particle>();
+		for (Particle p : model) expected.add(p);
+		assertContents(s,expected.toArray(new Particle[0]));
+	}
+}
@@ -0,0 +1,228 @@
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import edu.uwm.cs351.Particle;
+import edu.uwm.cs351.ParticleSeq;
+import edu.uwm.cs351.Point;
+import edu.uwm.cs351.Vector;
+
+
+public class TestParticleSeqCursor extends TestCase {
+
+	private ParticleSeq s;
+	Particle b1 = new Particle(new Point(1,1), new Vector(), 1, Color.BLACK);
+	Particle b2 = new Particle(new Point(2,2), new Vector(10,0), 2, Color.BLUE);
+	Particle b3 = new Particle(new Point(3,3), new Vector(), 3, Color.GREEN);
+
+	Particle b[] = { null, b1, b2, b3 };
+
+	@Override
+	public void setUp() {
+		s = new ParticleSeq();
+	}
+
+	public void test00() {
+		ParticleSeq.Cursor c = s.cursor();
+		assertTrue(c.atEnd());
+		assertFalse(c.isCurrent());
+		c.addAfter(b1);
+		assertEquals(1,s.size());
+		assertSame(b1,c.getCurrent());
+		assertTrue(s.atEnd());
+		s.start();
+		assertSame(b1,s.getCurrent());
+	}
+
+	public void test01() {
+		s.addAfter(b1);
+		s.addAfter(b2);
+		s.addAfter(b3);
+		ParticleSeq.Cursor c1 = s.cursor();
+		ParticleSeq.Cursor c2 = s.cursor();
+		c1.advance();
+		c2.advance();
+		c2.advance();
+		assertSame(b2,c1.getCurrent());
+		assertSame(b3,c2.getCurrent());
+		assertSame(b3,s.getCurrent());
+		c1.removeCurrent();
+		assertEquals(2,s.size());
+		assertSame(b3,s.getCurrent());
+		try {
+			c2.getCurrent();
+			fail("cursor should be stale");
+		} catch (ConcurrentModificationException ex) {
+			// expected
+		}
+		c2.start();
+		assertSame(b1,c2.getCurrent());
+		c1.advance();
+		assertSame(b3,c1.getCurrent());
+	}
+
+	public void test02() {
+		s.addAfter(b1);
+		ParticleSeq.Cursor c = s.cursor();
+		s.addAfter(b2);
+		try {
+			c.advance();
+			fail("cursor should be stale");
+		} catch (ConcurrentModificationException ex) {
+			// expected
+		}
+		c.start();
+		c.advance();
+		assertSame(b2,c.getCurrent());
+	}
+
+	public void test03() {
+		s.addAfter(b1);
+		s.addAfter(b2);
+		ParticleSeq.Cursor c = s.cursor();
+		c.advance();
+		c.removeCurrent();
+		assertFalse(s.isCurrent());
+		assertFalse(s.atEnd());
+		s.advance();
+		assertTrue(s.atEnd());
+		s.start();
+		c.start();
+		c.removeCurrent();
+		assertFalse(s.isCurrent());
+		assertEquals(0,s.size());
+		s.advance();
+		assertTrue(s.atEnd());
+	}
+
+	public void test04() {
+		s.addAfter(b1);
+		ParticleSeq copy = s.clone();
+		ParticleSeq.Snapshot snap = s.snapshot();
+		ParticleSeq.Cursor c = s.cursor();
+		c.addAfter(b2);
+		c.start();
+		c.removeCurrent();
+		assertEquals(1,s.size());
+		assertEquals(1,copy.size());
+		assertSame(b1,copy.getCurrent());
+		assertSame(b1,snap.cursor().getCurrent());
+		assertFalse(s.isCurrent());
+		s.advance();
+		assertSame(b2,s.getCurrent());
+	}
+
+	/**
+	 * A model of a cursor: the index of the current element,
+	 * or of the element after the removed one.
+	 */
+	private static class Model {
+		int pos;
+		boolean current, atEnd, stale;
+		void start(int size) {
+			pos = 0;
+			current = size > 0;
+			atEnd = size == 0;
+			stale = false;
+		}
+		void added(int k) {
+			if (pos > k || (pos == k && (current || atEnd))) ++pos;
+		}
+		void removed(int k) {
+			if (current && pos == k) current = false;
+			else if (pos > k) --pos;
+		}
+	}
+
+	/**
+	 * Run random operations through the built-in cursor and two detached
+	 * cursors, and compare the results with a list.
+	 */
+	public void testRandom() {
+		Random r = new Random(351);
+		List<Particle> list = new ArrayList<Particle>();
+		ParticleSeq.Cursor[] cursors = { s.cursor(), s.cursor() };
+		Model[] models = { new Model(), new Model(), new Model() };
+		for (Model m : models) m.start(0);
+		for (int i=0; i < 20000; ++i) {
+			int which = r.nextInt(3);
+			ParticleSeq.Cursor c = which < 2 ? cursors[which] : null;
+			Model m = models[which];
+			int op = r.nextInt(6);
+			if (m.stale && op != 0) {
+				try {
+					c.isCurrent();
+					fail("cursor should be stale after " + i + " operations");
+				} catch (ConcurrentModificationException ex) {
+					// expected
+				}
+				op = 0;
+			}
+			int changed = -1;
+			boolean added = false;
+			Particle p = b[r.nextInt(4)];
+			switch (op) {
+			case 0:
+				if (c == null) s.start(); else c.start();
+				m.start(list.size());
+				break;
+			case 1: case 2:
+				if (m.atEnd) break;
+				if (c == null) s.advance(); else c.advance();
+				if (m.current) ++m.pos;
+				m.current = m.pos < list.size();
+				m.atEnd = !m.current;
+				break;
+			case 3:
+				if (c == null) s.addBefore(p); else c.addBefore(p);
+				changed = m.pos;
+				added = true;
+				break;
+			case 4:
+				if (c == null) s.addAfter(p); else c.addAfter(p);
+				if (m.current) ++m.pos;
+				changed = m.pos;
+				added = true;
+				break;
+			case 5:
+				if (!m.current) break;
+				if (c == null) s.removeCurrent(); else c.removeCurrent();
+				list.remove(m.pos);
+				changed = m.pos;
+				m.current = false;
+				break;
+			}
+			if (changed >= 0) {
+				if (added) {
+					list.add(changed, p);
+					m.current = true;
+					m.atEnd = false;
+				}
+				for (int j=0; j < 3; ++j) {
+					if (j == which) continue;
+					if (j == 2) {
+						if (added) models[j].added(changed);
+						else models[j].removed(changed);
+					} else {
+						models[j].stale = true;
+					}
+				}
+			}
+			assertEquals(list.size(),s.size());
+			Model bm = models[2];
+			assertEquals(bm.atEnd,s.atEnd());
+			assertEquals(bm.current,s.isCurrent());
+			if (bm.current) assertSame(list.get(bm.pos),s.getCurrent());
+			if (c != null && !m.stale) {
+				assertEquals(m.atEnd,c.atEnd());
+				assertEquals(m.current,c.isCurrent());
+				if (m.current) assertSame(list.get(m.pos),c.getCurrent());
+			}
+			if (r.nextInt(100) == 0) s.clone();
+			if (r.nextInt(100) == 0) s.snapshot();
+		}
+	}
+}
@@ -0,0 +1,198 @@
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+
+import junit.framework.TestCase;
+import edu.uwm.cs351.Particle;
+import edu.uwm.cs351.ParticleSeq;
+import edu.uwm.cs351.ParticleSeqPanel;
+import edu.uwm.cs351.Point;
+import edu.uwm.cs351.SimulationRunner;
+import edu.uwm.cs351.Vector;
+
+
+public class TestParticleSeqPanel extends TestCase {
+
+	private static final int BACKGROUND = 0xFF000000;
+
+	// AWT reads this only once, so it must be set before any test runs
+	// (or passed as -Djava.awt.headless=true when run in a larger suite).
+	static {
+		System.setProperty("java.awt.headless", "true");
+	}
+
+	private ParticleSeq s;
+	private ParticleSeqPanel panel;
+
+	@Override
+	public void setUp() {
+		s = new ParticleSeq();
+		panel = new ParticleSeqPanel(s);
+		panel.setSize(40, 30);
+		panel.setBackground(new Color(BACKGROUND));
+	}
+
+	private void add(double x, double y, double mass, Color c) {
+		s.addAfter(new Particle(new Point(x,y), new Vector(), mass, c));
+		s.advance();
+	}
+
+	/**
+	 * Paint the panel into an image the size of the panel, as Swing would.
+	 */
+	private BufferedImage paint() {
+		BufferedImage image = new BufferedImage(panel.getWidth(), panel.getHeight(), BufferedImage.TYPE_INT_RGB);
+		Graphics g = image.getGraphics();
+		panel.paint(g);
+		g.dispose();
+		return image;
+	}
+
+	private void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			fail("interrupted");
+		}
+	}
+
+	public void test00() {
+		BufferedImage image = paint(); // nothing drawn yet
+		assertEquals(40, image.getWidth());
+		panel.renderParticles();
+		assertEquals(1, panel.getFrames());
+		image = paint();
+		for (int x=0; x < 40; ++x) {
+			for (int y=0; y < 30; ++y) {
+				assertEquals(BACKGROUND, image.getRGB(x, y));
+			}
+		}
+	}
+
+	public void test01() {
+		add(10, 10, 9, Color.RED); // radius 3
+		add(30, 20, 1, Color.GREEN); // radius 1
+		s.addAfter(null);
+		add(1000, 1000, 100, Color.BLUE); // far out of view
+		panel.renderParticles();
+		BufferedImage image = paint();
+		assertEquals(Color.RED.getRGB(), image.getRGB(10, 10));
+		assertEquals(Color.RED.getRGB(), image.getRGB(8, 10));
+		assertEquals(Color.RED.getRGB(), image.getRGB(10, 12));
+		assertEquals(BACKGROUND, image.getRGB(7, 7)); // outside the disk, in its box
+		assertEquals(BACKGROUND, image.getRGB(14, 10));
+		assertEquals(Color.GREEN.getRGB(), image.getRGB(30, 20));
+		assertEquals(Color.GREEN.getRGB(), image.getRGB(29, 19));
+		assertEquals(BACKGROUND, image.getRGB(32, 20));
+	}
+
+	public void test02() {
+		// later particles are drawn over earlier ones
+		add(10, 10, 16, Color.RED);
+		add(12, 10, 1, Color.GREEN);
+		add(20, 15, 1, Color.YELLOW);
+		add(20, 15, 16, Color.BLUE);
+		panel.renderParticles();
+		BufferedImage image = paint();
+		assertEquals(Color.GREEN.getRGB(), image.getRGB(12, 10));
+		assertEquals(Color.RED.getRGB(), image.getRGB(9, 10));
+		assertEquals(Color.BLUE.getRGB(), image.getRGB(20, 15));
+	}
+
+	public void test03() {
+		// disks across the edges of the panel are clipped; tiny ones are one pixel
+		add(0, 0, 25, Color.RED);
+		add(39.5, 29.5, 25, Color.GREEN);
+		add(-5.5, 10, 25, Color.YELLOW); // just out of view
+		add(20.5, 10.5, 0.01, Color.BLUE);
+		panel.renderParticles();
+		BufferedImage image = paint();
+		assertEquals(Color.RED.getRGB(), image.getRGB(0, 0));
+		assertEquals(Color.GREEN.getRGB(), image.getRGB(39, 29));
+		assertEquals(Color.BLUE.getRGB(), image.getRGB(20, 10));
+		assertEquals(BACKGROUND, image.getRGB(21, 10));
+		assertEquals(BACKGROUND, image.getRGB(0, 20));
+	}
+
+	public void test04() {
+		// the view moves and scales the particles
+		add(100, 100, 1, Color.RED);
+		add(0, 0, 1, Color.GREEN);
+		panel.setView(95, 98, 2);
+		panel.renderParticles();
+		BufferedImage image = paint();
+		assertEquals(Color.RED.getRGB(), image.getRGB(10, 4));
+		assertEquals(Color.RED.getRGB(), image.getRGB(11, 4)); // radius 2
+		assertEquals(Color.RED.getRGB(), image.getRGB(10, 5));
+		assertEquals(Color.RED.getRGB(), image.getRGB(8, 4));
+		assertEquals(BACKGROUND, image.getRGB(10, 10));
+		for (int x=0; x < 40; ++x) {
+			for (int y=0; y < 30; ++y) {
+				assertTrue(image.getRGB(x, y) != Color.GREEN.getRGB());
+			}
+		}
+		try {
+			panel.setView(0, 0, 0);
+			fail("scale must be positive");
+		} catch (IllegalArgumentException ex) {
+			// expected
+		}
+		try {
+			panel.setView(Double.NaN, 0, 1);
+			fail("view must be finite");
+		} catch (IllegalArgumentException ex) {
+			// expected
+		}
+	}
+
+	public void test05() {
+		// a larger panel, with many bands of rows
+		panel.setSize(300, 400);
+		for (int i=0; i < 400; i += 3) add(150, i, 100, new Color(i)); // 20 pixels wide
+		panel.renderParticles();
+		BufferedImage image = paint();
+		assertEquals(400, image.getHeight());
+		for (int y=0; y < 400; ++y) {
+			// the last particle covering this row
+			int last = Math.min((y + 10) / 3 * 3, 399);
+			assertEquals("row " + y, new Color(last).getRGB(), image.getRGB(150, y));
+		}
+		assertEquals(BACKGROUND, image.getRGB(0, 0));
+	}
+
+	public void test06() {
+		// drawing the frames of a simulation
+		add(20, 15, 4, Color.RED);
+		SimulationRunner runner = new SimulationRunner(s, 0);
+		runner.start(panel);
+		sleep(50);
+		runner.stop();
+		assertTrue(panel.getFrames() > 0);
+		assertEquals(Color.RED.getRGB(), paint().getRGB(20, 15));
+	}
+
+	public void test07() {
+		// drawing on the background thread, once each time it is painted
+		add(5, 5, 4, Color.RED);
+		panel.start();
+		try {
+			panel.start();
+			fail("already running");
+		} catch (IllegalStateException ex) {
+			// expected
+		}
+		sleep(50);
+		assertEquals(1, panel.getFrames());
+		assertEquals(Color.RED.getRGB(), paint().getRGB(5, 5));
+		sleep(50);
+		assertEquals(2, panel.getFrames());
+		panel.stop();
+		panel.stop();
+		try {
+			new ParticleSeqPanel(null);
+			fail("particles cannot be null");
+		} catch (NullPointerException ex) {
+			// expected
+		}
+	}
+}
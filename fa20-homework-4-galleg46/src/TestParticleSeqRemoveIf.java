@@ -0,0 +1,177 @@
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import edu.uwm.cs351.Particle;
+import edu.uwm.cs351.ParticleSeq;
+import edu.uwm.cs351.Point;
+import edu.uwm.cs351.Vector;
+
+
+public class TestParticleSeqRemoveIf extends TestCase {
+
+	private ParticleSeq s;
+	Particle b1 = new Particle(new Point(1,1), new Vector(), 1, Color.BLACK);
+	Particle b2 = new Particle(new Point(2,2), new Vector(10,0), 2, Color.BLUE);
+	Particle b3 = new Particle(new Point(3,3), new Vector(), 3, Color.GREEN);
+
+	Particle b[] = { null, b1, b2, b3 };
+
+	private void assertContents(ParticleSeq t, Particle... expected) {
+		assertEquals(expected.length,t.size());
+		int i = 0;
+		for (Particle p : t) {
+			assertSame(expected[i++],p);
+		}
+	}
+
+	public void test00() {
+		s = new ParticleSeq();
+		assertEquals(0,s.removeIf(p -> true));
+		assertTrue(s.atEnd());
+	}
+
+	public void test01() {
+		s = ParticleSeq.of(b1,null,b2,null,b3);
+		s.advance();
+		s.advance();
+		assertEquals(2,s.removeIf(p -> p == null));
+		assertContents(s,b1,b2,b3);
+		assertSame(b2,s.getCurrent());
+		assertEquals(1,s.indexOfCurrent());
+		assertEquals(2,s.retainIf(p -> p == b1));
+		assertContents(s,b1);
+		assertFalse(s.isCurrent());
+		assertFalse(s.atEnd());
+		s.advance();
+		assertTrue(s.atEnd());
+	}
+
+	public void test02() {
+		s = ParticleSeq.of(b1,b2,b3);
+		s.advance();
+		s.advance();
+		s.advance();
+		assertEquals(1,s.removeIf(p -> p == b3));
+		assertTrue(s.atEnd());
+		s.addAfter(b3);
+		assertContents(s,b1,b2,b3);
+	}
+
+	public void test03() {
+		s = ParticleSeq.of(b1,b2,b3,b1);
+		ParticleSeq c = s.clone();
+		ParticleSeq.Snapshot snap = s.snapshot();
+		assertEquals(2,s.removeIf(p -> p == b1));
+		assertContents(s,b2,b3);
+		assertContents(c,b1,b2,b3,b1);
+		assertEquals(4,snap.size());
+		assertFalse(s.isCurrent());
+		s.advance();
+		assertSame(b2,s.getCurrent());
+		assertEquals(1,c.removeIf(p -> p == b2));
+		assertContents(c,b1,b3,b1);
+		assertContents(s,b2,b3);
+	}
+
+	public void test04() {
+		// a filter that fails leaves the sequence unchanged
+		s = ParticleSeq.of(b1,b2,null,b3,b1);
+		s.advance();
+		s.advance();
+		s.advance();
+		int[] tested = { 0 };
+		try {
+			s.removeIf(p -> {
+				if (++tested[0] == 4) throw new IllegalArgumentException("filter failed");
+				return p == b2;
+			});
+			fail("filter failed");
+		} catch (IllegalArgumentException ex) {
+			// expected
+		}
+		assertContents(s,b1,b2,null,b3,b1);
+		assertSame(b3,s.getCurrent());
+		assertEquals(3,s.indexOfCurrent());
+		tested[0] = 0;
+		try {
+			s.retainIf(p -> {
+				if (++tested[0] == 5) throw new IllegalArgumentException("filter failed");
+				return p != b2;
+			});
+			fail("filter failed");
+		} catch (IllegalArgumentException ex) {
+			// expected
+		}
+		assertContents(s,b1,b2,null,b3,b1);
+		assertEquals(1,s.removeIf(p -> p == b2));
+		assertContents(s,b1,null,b3,b1);
+		assertSame(b3,s.getCurrent());
+	}
+
+	/**
+	 * Compare removeIf with a list after random operations.
+	 */
+	public void testRandom() {
+		Random r = new Random(351);
+		s = new ParticleSeq();
+		List<Particle> list = new ArrayList<Particle>();
+		int pos = 0;
+		boolean current = false, atEnd = true;
+		for (int i=0; i < 5000; ++i) {
+			switch (r.nextInt(5)) {
+			case 0:
+				pos = r.nextInt(list.size()+1);
+				s.seek(pos);
+				current = pos < list.size();
+				atEnd = !current;
+				break;
+			case 1:
+				if (current) {
+					s.removeCurrent();
+					list.remove(pos);
+					current = false;
+				}
+				break;
+			case 2:
+				for (int j=r.nextInt(10); j > 0; --j) {
+					Particle p = b[r.nextInt(4)];
+					s.addAfter(p);
+					if (current) ++pos;
+					list.add(pos,p);
+					current = true;
+					atEnd = false;
+				}
+				break;
+			case 3:
+				if (r.nextBoolean()) s.clone();
+				else s.snapshot();
+				break;
+			case 4:
+				final Particle x = b[r.nextInt(4)];
+				int expected = 0;
+				for (int j=0; j < list.size(); ) {
+					if (list.get(j) == x) {
+						list.remove(j);
+						++expected;
+						if (j < pos) --pos;
+						else if (j == pos && current) current = false;
+					}
+					else ++j;
+				}
+				if (atEnd) pos = list.size();
+				assertEquals(expected,s.removeIf(p -> p == x));
+				break;
+			}
+			assertEquals(list.size(),s.size());
+			assertEquals(current,s.isCurrent());
+			assertEquals(atEnd,s.atEnd());
+			if (current) {
+				assertEquals(pos,s.indexOfCurrent());
+				assertSame(list.get(pos),s.getCurrent());
+			}
+		}
+	}
+}
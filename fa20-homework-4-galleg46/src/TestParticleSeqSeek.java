@@ -0,0 +1,153 @@
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import edu.uwm.cs351.Particle;
+import edu.uwm.cs351.ParticleSeq;
+import edu.uwm.cs351.Point;
+import edu.uwm.cs351.Vector;
+
+
+public class TestParticleSeqSeek extends TestCase {
+
+	private ParticleSeq s;
+	Particle b1 = new Particle(new Point(1,1), new Vector(), 1, Color.BLACK);
+	Particle b2 = new Particle(new Point(2,2), new Vector(10,0), 2, Color.BLUE);
+	Particle b3 = new Particle(new Point(3,3), new Vector(), 3, Color.GREEN);
+
+	Particle b[] = { null, b1, b2, b3 };
+
+	@Override
+	public void setUp() {
+		s = new ParticleSeq();
+	}
+
+	public void test00() {
+		s.seek(0);
+		assertTrue(s.atEnd());
+		try {
+			s.seek(1);
+			fail("should not be able to seek past the end");
+		} catch (IllegalArgumentException ex) {
+			// expected
+		}
+		try {
+			s.indexOfCurrent();
+			fail("there is no current element");
+		} catch (IllegalStateException ex) {
+			// expected
+		}
+	}
+
+	public void test01() {
+		s.addAfter(b1);
+		s.addAfter(b2);
+		s.addAfter(b3);
+		assertEquals(2,s.indexOfCurrent());
+		s.seek(1);
+		assertSame(b2,s.getCurrent());
+		assertEquals(1,s.indexOfCurrent());
+		s.seek(3);
+		assertTrue(s.atEnd());
+		s.seek(0);
+		assertSame(b1,s.getCurrent());
+		s.removeCurrent();
+		s.advance();
+		assertEquals(0,s.indexOfCurrent());
+		assertSame(b2,s.getCurrent());
+	}
+
+	public void test02() {
+		for (int i=0; i < 1000; ++i) {
+			s.addAfter(b[i%4]);
+		}
+		s.seek(500);
+		ParticleSeq c = s.clone();
+		s.removeCurrent();
+		c.seek(999);
+		assertSame(b3,c.getCurrent());
+		c.seek(500);
+		assertSame(b[0],c.getCurrent());
+		s.seek(500);
+		assertSame(b1,s.getCurrent());
+	}
+
+	/**
+	 * Run random operations, including seeks, and compare
+	 * the result with a list.
+	 */
+	public void testRandom() {
+		Random r = new Random(351);
+		List<Particle> list = new ArrayList<Particle>();
+		int pos = 0; // index of current, or of the element after the removed one
+		boolean current = false, atEnd = true;
+		for (int i=0; i < 20000; ++i) {
+			Particle p = b[r.nextInt(4)];
+			switch (r.nextInt(8)) {
+			case 0:
+				pos = r.nextInt(list.size()+1);
+				s.seek(pos);
+				current = pos < list.size();
+				atEnd = !current;
+				break;
+			case 1:
+				if (atEnd) break;
+				s.advance();
+				if (current) ++pos;
+				current = pos < list.size();
+				atEnd = !current;
+				break;
+			case 2:
+				s.addBefore(p);
+				list.add(pos,p);
+				current = true;
+				atEnd = false;
+				break;
+			case 3:
+				s.addAfter(p);
+				if (current) ++pos;
+				list.add(pos,p);
+				current = true;
+				atEnd = false;
+				break;
+			case 4: case 5:
+				if (!current) break;
+				s.removeCurrent();
+				list.remove(pos);
+				current = false;
+				break;
+			case 6:
+				if (list.size() > 100) break;
+				s.addAll(s);
+				list.addAll(new ArrayList<Particle>(list));
+				if (atEnd) pos = list.size();
+				break;
+			case 7:
+				ParticleSeq.Cursor c = s.cursor();
+				int k = r.nextInt(list.size()+1);
+				for (int j=0; j < k; ++j) c.advance();
+				if (r.nextBoolean() || k == list.size()) {
+					c.addBefore(p);
+					list.add(k,p);
+					if (pos > k || (pos == k && (current || atEnd))) ++pos;
+				} else {
+					c.removeCurrent();
+					list.remove(k);
+					if (current && pos == k) current = false;
+					else if (pos > k) --pos;
+				}
+				if (r.nextInt(10) == 0) s = s.clone();
+				break;
+			}
+			assertEquals(list.size(),s.size());
+			assertEquals(current,s.isCurrent());
+			assertEquals(atEnd,s.atEnd());
+			if (current) {
+				assertEquals(pos,s.indexOfCurrent());
+				assertSame(list.get(pos),s.getCurrent());
+			}
+		}
+	}
+}
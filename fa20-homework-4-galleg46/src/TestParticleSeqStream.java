@@ -0,0 +1,110 @@
+import java.awt.Color;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Spliterator;
+
+import junit.framework.TestCase;
+import edu.uwm.cs351.Particle;
+import edu.uwm.cs351.ParticleSeq;
+import edu.uwm.cs351.Point;
+import edu.uwm.cs351.Vector;
+
+
+public class TestParticleSeqStream extends TestCase {
+
+	private ParticleSeq s;
+	Particle b1 = new Particle(new Point(1,1), new Vector(), 1, Color.BLACK);
+	Particle b2 = new Particle(new Point(2,2), new Vector(10,0), 2, Color.BLUE);
+	Particle b3 = new Particle(new Point(3,3), new Vector(), 3, Color.GREEN);
+
+	@Override
+	public void setUp() {
+		s = new ParticleSeq();
+	}
+
+	private void fill(int n) {
+		for (int i=0; i < n; ++i) {
+			s.addAfter(new Particle(new Point(i,0), new Vector(i,0), 1, Color.BLACK));
+		}
+	}
+
+	public void test00() {
+		assertFalse(s.iterator().hasNext());
+		assertEquals(0,s.stream().count());
+		assertEquals(0,s.spliterator().estimateSize());
+	}
+
+	public void test01() {
+		s.addAfter(b1);
+		s.addAfter(null);
+		s.addAfter(b2);
+		s.start();
+		s.advance();
+		Iterator<Particle> it = s.iterator();
+		assertSame(b1,it.next());
+		assertNull(it.next());
+		assertSame(b2,it.next());
+		assertFalse(it.hasNext());
+		assertNull(s.getCurrent()); // cursor unchanged
+	}
+
+	public void test02() {
+		fill(10000);
+		Spliterator<Particle> all = s.spliterator();
+		assertTrue(all.hasCharacteristics(Spliterator.SIZED));
+		assertTrue(all.hasCharacteristics(Spliterator.ORDERED));
+		Spliterator<Particle> first = all.trySplit();
+		assertNotNull(first);
+		assertEquals(10000,first.estimateSize()+all.estimateSize());
+		final int[] next = { 0 };
+		first.forEachRemaining(p -> assertEquals((double)next[0]++,p.getPosition().x()));
+		all.forEachRemaining(p -> assertEquals((double)next[0]++,p.getPosition().x()));
+		assertEquals(10000,next[0]);
+	}
+
+	public void test03() {
+		fill(5000);
+		double expected = 0;
+		for (Particle p : s) expected += p.getVelocity().magnitude();
+		double actual = s.parallelStream().mapToDouble(p -> p.getVelocity().magnitude()).sum();
+		assertEquals(expected,actual,1e-6);
+		assertEquals(5000,s.parallelStream().count());
+		assertEquals(4999.0,s.parallelStream().reduce((a,b) -> b).get().getPosition().x());
+	}
+
+	public void test04() {
+		s.addAfter(b1);
+		s.addAfter(b3);
+		Iterator<Particle> it = s.iterator();
+		it.next();
+		s.addBefore(b2);
+		try {
+			it.next();
+			fail("iterator should fail after a change");
+		} catch (ConcurrentModificationException ex) {
+			// expected
+		}
+	}
+
+	public void test05() {
+		// removing during forEachRemaining stops the traversal at once
+		fill(10);
+		s.start();
+		Spliterator<Particle> all = s.spliterator();
+		final int[] seen = {0};
+		try {
+			all.forEachRemaining(p -> {
+				assertNotNull(p);
+				if (++seen[0] == 3) {
+					s.removeCurrent();
+					s.advance();
+					s.removeCurrent();
+				}
+			});
+			fail("spliterator should fail after a change");
+		} catch (ConcurrentModificationException ex) {
+			// expected
+		}
+		assertEquals(3,seen[0]);
+	}
+}
@@ -0,0 +1,149 @@
+import java.awt.Color;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import edu.uwm.cs351.Particle;
+import edu.uwm.cs351.ParticleSeq;
+import edu.uwm.cs351.ParticleSeqReader;
+import edu.uwm.cs351.ParticleSeqWriter;
+import edu.uwm.cs351.Point;
+import edu.uwm.cs351.Vector;
+import edu.uwm.cs351.test.ParticleAssert;
+
+
+public class TestParticleSeqWriter extends TestCase {
+
+	private Path file;
+	private Random r;
+
+	@Override
+	public void setUp() throws IOException {
+		file = Files.createTempFile("particles", ".pseq");
+		r = new Random(351);
+	}
+
+	@Override
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	public void test00() throws IOException {
+		ParticleSeqWriter.write(new ParticleSeq(), file);
+		assertEquals(16, Files.size(file));
+		ParticleSeq s = ParticleSeqReader.read(file);
+		assertEquals(0, s.size());
+		assertFalse(s.isCurrent());
+	}
+
+	public void test01() throws IOException {
+		ParticleSeq s = new ParticleSeq();
+		s.addAfter(new Particle(new Point(1,2), new Vector(3,4), 5, new Color(0x12345678, true)));
+		s.addAfter(null);
+		s.addAfter(new Particle(new Point(-1,-2), new Vector(), 0.5, Color.RED));
+		ParticleSeqWriter.write(s, file);
+
+		// the format itself
+		ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+		assertEquals(16 + 3*48, b.remaining());
+		assertEquals('P', b.get(0));
+		assertEquals('Q', b.get(3));
+		assertEquals(1, b.getInt(4));
+		assertEquals(3L, b.getLong(8));
+		assertEquals(1.0, b.getDouble(16));
+		assertEquals(2.0, b.getDouble(24));
+		assertEquals(3.0, b.getDouble(32));
+		assertEquals(4.0, b.getDouble(40));
+		assertEquals(5.0, b.getDouble(48));
+		assertEquals(0x12345678, b.getInt(56));
+		assertEquals(0, b.getInt(60));
+		assertEquals(1, b.getInt(64 + 44)); // null
+		assertEquals(0.5, b.getDouble(112 + 32));
+		assertEquals(Color.RED.getRGB(), b.getInt(112 + 40));
+
+		ParticleAssert.assertSameSeq(s, ParticleSeqReader.read(file));
+	}
+
+	public void test02() throws IOException {
+		// more than one buffer
+		ParticleSeq s = ParticleAssert.random(r, 40000, 0, 1000, 39999);
+		ParticleSeqWriter.write(s, file);
+		assertEquals(16 + 40000L*48, Files.size(file));
+		ParticleAssert.assertSameSeq(s, ParticleSeqReader.read(file));
+	}
+
+	public void test03() throws IOException {
+		// several sequences in one file, after some other data
+		ParticleSeq s1 = ParticleAssert.random(r, 10), s2 = ParticleAssert.random(r, 20000), s3 = new ParticleSeq();
+		try (FileChannel c = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			c.write(ByteBuffer.wrap(new byte[] { 1, 2, 3 }));
+			try (ParticleSeqWriter w = new ParticleSeqWriter(c)) {
+				w.write(s1);
+				w.write(s2);
+				w.write(s3);
+				w.write(s1);
+			}
+			assertFalse(c.isOpen());
+		}
+		try (FileChannel c = FileChannel.open(file, StandardOpenOption.READ)) {
+			c.position(3);
+			try (ParticleSeqReader rd = new ParticleSeqReader(c)) {
+				ParticleAssert.assertSameSeq(s1, rd.read());
+				ParticleAssert.assertSameSeq(s2, rd.read());
+				ParticleAssert.assertSameSeq(s3, rd.read());
+				ParticleAssert.assertSameSeq(s1, rd.read());
+				try {
+					rd.read();
+					fail("no more sequences");
+				} catch (EOFException ex) {
+					// expected
+				}
+			}
+		}
+	}
+
+	public void test04() throws IOException {
+		ParticleSeqWriter.write(ParticleAssert.random(r, 100), file);
+		byte[] bytes = Files.readAllBytes(file);
+
+		Files.write(file, java.util.Arrays.copyOf(bytes, bytes.length - 1));
+		try {
+			ParticleSeqReader.read(file);
+			fail("file is cut short");
+		} catch (EOFException ex) {
+			// expected
+		}
+
+		bytes[4] = 2;
+		Files.write(file, bytes);
+		try {
+			ParticleSeqReader.read(file);
+			fail("unknown version");
+		} catch (IOException ex) {
+			assertFalse(ex instanceof EOFException);
+		}
+
+		bytes[0] = 'X';
+		Files.write(file, bytes);
+		try {
+			ParticleSeqReader.read(file);
+			fail("not a sequence");
+		} catch (IOException ex) {
+			assertFalse(ex instanceof EOFException);
+		}
+
+		try {
+			ParticleSeqWriter.write(null, file);
+			fail("cannot write null");
+		} catch (NullPointerException ex) {
+			// expected
+		}
+	}
+}
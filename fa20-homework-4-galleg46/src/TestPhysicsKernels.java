@@ -0,0 +1,152 @@
+import java.awt.Color;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import edu.uwm.cs351.Particle;
+import edu.uwm.cs351.PhysicsKernels;
+import edu.uwm.cs351.Point;
+import edu.uwm.cs351.Vector;
+
+
+public class TestPhysicsKernels extends TestCase {
+
+	private static final int N = 300;
+
+	private Particle[] a;
+	private double[] x, y, vx, vy, mass, fx, fy;
+
+	@Override
+	public void setUp() {
+		Random r = new Random(351);
+		a = new Particle[N];
+		x = new double[N];
+		y = new double[N];
+		vx = new double[N];
+		vy = new double[N];
+		mass = new double[N];
+		fx = new double[N];
+		fy = new double[N];
+		for (int i=0; i < N; ++i) {
+			x[i] = r.nextDouble()*1000;
+			y[i] = r.nextDouble()*1000;
+			vx[i] = r.nextDouble()-0.5;
+			vy[i] = r.nextDouble()-0.5;
+			mass[i] = 1 + r.nextDouble()*9;
+			a[i] = new Particle(new Point(x[i],y[i]), new Vector(vx[i],vy[i]), mass[i], Color.BLACK);
+		}
+	}
+
+	private void assertClose(double expected, double actual) {
+		assertEquals(expected, actual, 1e-12 * Math.max(1, Math.abs(expected)));
+	}
+
+	public void test00() {
+		PhysicsKernels.accumulateForces(x, y, mass, N, 0, N, fx, fy);
+		for (int i=0; i < N; ++i) {
+			Vector f = new Vector();
+			for (int j=0; j < N; ++j) {
+				if (i != j) f = f.add(a[j].gravForceOn(a[i]));
+			}
+			assertClose(f.dx(), fx[i]);
+			assertClose(f.dy(), fy[i]);
+		}
+	}
+
+	public void test01() {
+		// rows can be computed in pieces
+		double[] gx = new double[N], gy = new double[N];
+		PhysicsKernels.accumulateForces(x, y, mass, N, 0, N, fx, fy);
+		PhysicsKernels.accumulateForces(x, y, mass, N, 0, 100, gx, gy);
+		PhysicsKernels.accumulateForces(x, y, mass, N, 100, 101, gx, gy);
+		PhysicsKernels.accumulateForces(x, y, mass, N, 101, N, gx, gy);
+		for (int i=0; i < N; ++i) {
+			assertClose(fx[i], gx[i]);
+			assertClose(fy[i], gy[i]);
+		}
+	}
+
+	public void test02() {
+		PhysicsKernels.accumulateForces(x, y, mass, N, 0, N, fx, fy);
+		PhysicsKernels.applyForces(vx, vy, mass, fx, fy, 0, N, 1);
+		PhysicsKernels.move(x, y, vx, vy, 0, N, 1);
+		for (int i=0; i < N; ++i) {
+			a[i].applyForce(new Vector(fx[i], fy[i]));
+			a[i].move();
+			assertClose(a[i].getVelocity().dx(), vx[i]);
+			assertClose(a[i].getVelocity().dy(), vy[i]);
+			assertClose(a[i].getPosition().x(), x[i]);
+			assertClose(a[i].getPosition().y(), y[i]);
+		}
+	}
+
+	public void test03() {
+		// time step
+		PhysicsKernels.applyForces(vx, vy, mass, new double[] { 4 }, new double[] { -2 }, 0, 1, 0.5);
+		assertClose(a[0].getVelocity().dx() + 2/mass[0], vx[0]);
+		assertClose(a[0].getVelocity().dy() - 1/mass[0], vy[0]);
+		PhysicsKernels.move(x, y, vx, vy, 0, 1, 0.25);
+		assertClose(a[0].getPosition().x() + vx[0]/4, x[0]);
+		assertEquals(a[1].getPosition().x(), x[1]);
+	}
+
+	public void test04() {
+		// particles at the same place
+		double[] z = { 1, 1, 4 };
+		double[] m = { 1, 1, 1 };
+		double[] gx = new double[3], gy = new double[3];
+		PhysicsKernels.accumulateForces(z, z, m, 3, 0, 3, gx, gy);
+		assertClose(gx[0], gx[1]);
+		assertClose(1/18.0/Math.sqrt(2), gx[0]);
+		assertClose(-2/18.0/Math.sqrt(2), gx[2]);
+	}
+
+	public void test05() {
+		try {
+			PhysicsKernels.accumulateForces(x, y, mass, N, 0, N+1, fx, fy);
+			fail("range past n");
+		} catch (IllegalArgumentException ex) {
+			// expected
+		}
+		try {
+			PhysicsKernels.accumulateForces(x, y, mass, N, 0, N, fx, new double[N-1]);
+			fail("short array");
+		} catch (IllegalArgumentException ex) {
+			// expected
+		}
+		try {
+			PhysicsKernels.move(x, y, vx, vy, 2, 1, 1);
+			fail("backwards range");
+		} catch (IllegalArgumentException ex) {
+			// expected
+		}
+	}
+
+	public void test06() {
+		// a kernel that is asked for by the flag must be in use
+		String flag = System.getProperty("edu.uwm.cs351.PhysicsKernels.kernel");
+		if (flag != null) assertEquals(flag.equals("simd") ? "simd" : "scalar", PhysicsKernels.kernel());
+	}
+
+	public void test07() {
+		// the SIMD kernel agrees with the scalar kernel (run simd-tests.sh to check it)
+		if (!PhysicsKernels.kernel().equals("simd")) return;
+		x[7] = x[3]; y[7] = y[3]; // particles at the same place exert no force
+		for (int n : new int[] { 0, 1, 2, 3, 5, 8, 9, 17, N }) {
+			double[] gx = new double[N], gy = new double[N];
+			fx = new double[N];
+			fy = new double[N];
+			PhysicsKernels.accumulateForces(x, y, mass, n, 0, n, fx, fy);
+			PhysicsKernels.accumulateScalarForces(x, y, mass, n, 0, n, gx, gy);
+			for (int i=0; i < n; ++i) {
+				// rounding depends on the size of the terms, not of their sum
+				double scale = 0;
+				for (int j=0; j < n; ++j) {
+					double dx = x[j]-x[i], dy = y[j]-y[i], d2 = dx*dx + dy*dy;
+					if (d2 != 0) scale += mass[i]*mass[j] / d2;
+				}
+				assertEquals("fx[" + i + "] of " + n, gx[i], fx[i], 1e-12 * scale);
+				assertEquals("fy[" + i + "] of " + n, gy[i], fy[i], 1e-12 * scale);
+			}
+		}
+	}
+}
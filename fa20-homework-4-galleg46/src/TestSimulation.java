@@ -0,0 +1,145 @@
+import java.awt.Color;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import edu.uwm.cs351.Particle;
+import edu.uwm.cs351.ParticleSeq;
+import edu.uwm.cs351.Point;
+import edu.uwm.cs351.Simulation;
+import edu.uwm.cs351.Vector;
+
+
+public class TestSimulation extends TestCase {
+
+	/**
+	 * Return n random particles; the same seed gives equal particles.
+	 */
+	private Particle[] random(int n, long seed) {
+		Random r = new Random(seed);
+		Particle[] a = new Particle[n];
+		for (int i=0; i < n; ++i) {
+			a[i] = new Particle(new Point(r.nextDouble()*1000, r.nextDouble()*1000),
+					new Vector(r.nextDouble()-0.5, r.nextDouble()-0.5), 1 + r.nextDouble()*9, Color.BLACK);
+		}
+		return a;
+	}
+
+	/**
+	 * Step the particles one at a time with gravForceOn, applyForce and move.
+	 */
+	private void sequential(Particle[] a) {
+		Vector[] f = new Vector[a.length];
+		for (int i=0; i < a.length; ++i) {
+			f[i] = new Vector();
+			for (int j=0; j < a.length; ++j) {
+				if (i != j) f[i] = f[i].add(a[j].gravForceOn(a[i]));
+			}
+		}
+		for (int i=0; i < a.length; ++i) {
+			a[i].applyForce(f[i]);
+			a[i].move();
+		}
+	}
+
+	private void assertClose(Point expected, Point actual) {
+		double error = new Vector(expected, actual).magnitude();
+		assertTrue("expected " + expected + " but was " + actual, error < 1e-9);
+	}
+
+	public void test00() {
+		Simulation sim = new Simulation();
+		ParticleSeq s = new ParticleSeq();
+		sim.step(s, 1);
+		Particle p = new Particle(new Point(1,2), new Vector(3,4), 5, Color.BLACK);
+		s.addAfter(p);
+		s.addAfter(null);
+		sim.step(s, 1);
+		assertEquals(4.0, p.getPosition().x());
+		assertEquals(6.0, p.getPosition().y());
+		assertEquals(2, s.size());
+	}
+
+	public void test01() {
+		Particle p1 = new Particle(new Point(0,0), new Vector(), 2, Color.BLACK);
+		Particle p2 = new Particle(new Point(3,4), new Vector(), 5, Color.BLACK);
+		Vector f = p2.gravForceOn(p1);
+		new Simulation().step(ParticleSeq.of(p1, p2), 1);
+		assertEquals(f.dx()/2, p1.getVelocity().dx(), 1e-15);
+		assertEquals(f.dy()/2, p1.getVelocity().dy(), 1e-15);
+		assertEquals(-f.dx()/5, p2.getVelocity().dx(), 1e-15);
+		assertClose(new Point(f.dx()/2, f.dy()/2), p1.getPosition());
+	}
+
+	public void test02() {
+		// time step scales the impulse and the movement
+		Particle p1 = new Particle(new Point(0,0), new Vector(1,0), 2, Color.BLACK);
+		Particle p2 = new Particle(new Point(3,4), new Vector(), 5, Color.BLACK);
+		Vector f = p2.gravForceOn(p1);
+		new Simulation().step(ParticleSeq.of(p1, p2), 0.5);
+		double vx = 1 + f.dx()/2*0.5, vy = f.dy()/2*0.5;
+		assertEquals(vx, p1.getVelocity().dx(), 1e-15);
+		assertEquals(vy, p1.getVelocity().dy(), 1e-15);
+		assertClose(new Point(vx*0.5, vy*0.5), p1.getPosition());
+	}
+
+	public void test03() {
+		// particles at the same place do not pull each other
+		Particle p1 = new Particle(new Point(5,5), new Vector(), 1, Color.BLACK);
+		Particle p2 = new Particle(new Point(5,5), new Vector(), 1, Color.BLACK);
+		new Simulation().step(ParticleSeq.of(p1, p2), 1);
+		assertEquals(0.0, p1.getVelocity().magnitude());
+		assertEquals(5.0, p2.getPosition().x());
+		assertEquals(5.0, p2.getPosition().y());
+	}
+
+	public void test04() {
+		// agrees with the sequential computation over several steps
+		Particle[] a = random(1000, 351);
+		Particle[] b = random(1000, 351);
+		Simulation sim = new Simulation();
+		ParticleSeq s = ParticleSeq.of(a);
+		for (int k=0; k < 3; ++k) {
+			sim.step(s, 1);
+			sequential(b);
+		}
+		for (int i=0; i < a.length; ++i) {
+			assertClose(b[i].getPosition(), a[i].getPosition());
+		}
+	}
+
+	public void test05() {
+		// the same input always gives exactly the same result
+		Particle[] b = random(2000, 351);
+		Particle[] c = random(2000, 351);
+		new Simulation().step(ParticleSeq.of(b), 1);
+		Simulation sim = new Simulation();
+		sim.step(ParticleSeq.of(random(10, 1)), 1); // reused buffers
+		sim.step(ParticleSeq.of(c), 1);
+		for (int i=0; i < b.length; ++i) {
+			assertEquals(b[i].getPosition().x(), c[i].getPosition().x());
+			assertEquals(b[i].getPosition().y(), c[i].getPosition().y());
+			assertEquals(b[i].getVelocity().dx(), c[i].getVelocity().dx());
+			assertEquals(b[i].getVelocity().dy(), c[i].getVelocity().dy());
+		}
+	}
+
+	public void test06() {
+		// a particle that is in the sequence many times is stepped once
+		Particle[] a = random(6, 351);
+		Particle[] b = random(6, 351);
+		ParticleSeq s = new ParticleSeq();
+		for (int i=0; i < 6000; ++i) {
+			s.addAfter(a[i%6]);
+		}
+		Simulation sim = new Simulation();
+		for (int k=0; k < 3; ++k) {
+			sim.step(s, 1);
+			sequential(b);
+		}
+		for (int i=0; i < a.length; ++i) {
+			assertClose(b[i].getPosition(), a[i].getPosition());
+			assertClose(b[i].getVelocity().move(new Point(0,0)), a[i].getVelocity().move(new Point(0,0)));
+		}
+		assertEquals(6000, s.size());
+	}
+}
@@ -0,0 +1,167 @@
+import java.awt.Color;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import edu.uwm.cs351.Particle;
+import edu.uwm.cs351.ParticleSeq;
+import edu.uwm.cs351.Point;
+import edu.uwm.cs351.Simulation;
+import edu.uwm.cs351.SimulationRunner;
+import edu.uwm.cs351.SimulationRunner.Frame;
+import edu.uwm.cs351.Vector;
+
+
+public class TestSimulationRunner extends TestCase {
+
+	/**
+	 * Return a sequence of n random particles; the same seed gives equal particles.
+	 */
+	private ParticleSeq random(int n, long seed) {
+		Random r = new Random(seed);
+		ParticleSeq s = new ParticleSeq();
+		for (int i=0; i < n; ++i) {
+			s.addAfter(new Particle(new Point(r.nextDouble()*1000, r.nextDouble()*1000),
+					new Vector(r.nextDouble()-0.5, r.nextDouble()-0.5), 1 + r.nextDouble()*9, new Color(r.nextInt())));
+		}
+		return s;
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			fail("interrupted");
+		}
+	}
+
+	public void test00() {
+		SimulationRunner runner = new SimulationRunner(new ParticleSeq(), 1);
+		assertEquals(0, runner.getSteps());
+		assertEquals(0.0, runner.stepsPerSecond());
+		assertFalse(runner.isRunning());
+		runner.stop(); // never started
+		runner.start(f -> assertEquals(0, f.size()));
+		assertTrue(runner.isRunning());
+		sleep(20);
+		runner.stop();
+		assertFalse(runner.isRunning());
+		assertTrue(runner.getSteps() > 0);
+	}
+
+	public void test01() {
+		ParticleSeq s = random(100, 351);
+		ParticleSeq copy = random(100, 351);
+		s.start();
+		s.addBefore(null);
+		SimulationRunner runner = new SimulationRunner(s, 0.25);
+		runner.start(f -> { });
+		sleep(50);
+		runner.stop();
+		long steps = runner.getSteps();
+		assertTrue(steps > 0);
+
+		Simulation sim = new Simulation();
+		for (long i=0; i < steps; ++i) sim.step(copy, 0.25);
+		s.start();
+		assertNull(s.getCurrent());
+		s.advance();
+		copy.start();
+		for (; s.isCurrent(); s.advance(), copy.advance()) {
+			Particle p = s.getCurrent(), q = copy.getCurrent();
+			assertEquals(q.getPosition().x(), p.getPosition().x(), 1e-6);
+			assertEquals(q.getPosition().y(), p.getPosition().y(), 1e-6);
+			assertEquals(q.getVelocity().dx(), p.getVelocity().dx(), 1e-6);
+			assertEquals(q.getVelocity().dy(), p.getVelocity().dy(), 1e-6);
+		}
+	}
+
+	public void test02() {
+		ParticleSeq s = random(500, 42);
+		s.start();
+		s.addBefore(new Particle(new Point(500,500), new Vector(), 1, new Color(0x12345678, true)));
+		SimulationRunner runner = new SimulationRunner(s, 1);
+		long[] last = { -1 };
+		runner.start(f -> {
+			assertTrue(f.step() > last[0]);
+			last[0] = f.step();
+			assertEquals(501, f.size());
+			assertEquals(0x12345678, f.argb(0));
+			for (int j=0; j < f.size(); ++j) {
+				assertFalse(Double.isNaN(f.x(j)));
+			}
+			sleep(2); // a slow renderer skips frames
+		});
+		sleep(200);
+		runner.stop();
+		assertTrue(runner.getFrames() > 0);
+		assertTrue(runner.getFrames() <= runner.getSteps());
+		assertTrue(last[0] <= runner.getSteps());
+		assertTrue(runner.stepsPerSecond() > 0);
+		assertTrue(runner.framesPerSecond() > 0);
+	}
+
+	public void test03() {
+		Particle p = new Particle(new Point(1,2), new Vector(3,4), 5, Color.RED);
+		ParticleSeq s = new ParticleSeq();
+		s.addAfter(p);
+		SimulationRunner runner = new SimulationRunner(s, 1);
+		Frame[] first = { null };
+		runner.start(f -> {
+			if (first[0] == null) {
+				first[0] = f;
+				assertEquals(1.0 + 3*f.step(), f.x(0));
+				assertEquals(2.0 + 4*f.step(), f.y(0));
+				assertEquals(5.0, f.mass(0));
+			}
+		});
+		sleep(20);
+		runner.stop();
+		long steps = runner.getSteps();
+		assertEquals(1.0 + 3*steps, p.getPosition().x());
+		assertEquals(2.0 + 4*steps, p.getPosition().y());
+		assertEquals(3.0, p.getVelocity().dx());
+		assertEquals(4.0, p.getVelocity().dy());
+		double rate = runner.stepsPerSecond();
+		sleep(10);
+		assertEquals(rate, runner.stepsPerSecond()); // stopped
+	}
+
+	public void test04() {
+		SimulationRunner runner = new SimulationRunner(random(10, 1), 1);
+		try {
+			runner.start(null);
+			fail("renderer cannot be null");
+		} catch (NullPointerException ex) {
+			// expected
+		}
+		runner.start(f -> { });
+		try {
+			runner.start(f -> { });
+			fail("cannot start twice");
+		} catch (IllegalStateException ex) {
+			// expected
+		}
+		runner.stop();
+		try {
+			runner.start(f -> { });
+			fail("cannot start after stopping");
+		} catch (IllegalStateException ex) {
+			// expected
+		}
+	}
+
+	public void test05() {
+		ParticleSeq s = random(10, 2);
+		SimulationRunner runner = new SimulationRunner(s, 1);
+		runner.start(f -> { throw new UnsupportedOperationException("bad renderer"); });
+		sleep(50);
+		assertFalse(runner.isRunning());
+		try {
+			runner.stop();
+			fail("renderer failed");
+		} catch (IllegalStateException ex) {
+			assertTrue(ex.getCause() instanceof UnsupportedOperationException);
+		}
+		runner.stop(); // already stopped
+	}
+}
@@ -0,0 +1,97 @@
+import java.awt.Color;
+
+import junit.framework.TestCase;
+import edu.uwm.cs351.Particle;
+import edu.uwm.cs351.ParticleSeq;
+import edu.uwm.cs351.Point;
+import edu.uwm.cs351.Vector;
+
+
+public class TestSnapshot extends TestCase {
+
+	private ParticleSeq s;
+	Particle b1 = new Particle(new Point(1,1), new Vector(), 1, Color.BLACK);
+	Particle b2 = new Particle(new Point(2,2), new Vector(10,0), 2, Color.BLUE);
+	Particle b3 = new Particle(new Point(3,3), new Vector(), 3, Color.GREEN);
+
+	@Override
+	public void setUp() {
+		s = new ParticleSeq();
+	}
+
+	public void test00() {
+		ParticleSeq.Snapshot snap = s.snapshot();
+		assertEquals(0,snap.size());
+		ParticleSeq.Snapshot.Cursor c = snap.cursor();
+		assertTrue(c.atEnd());
+		assertFalse(c.isCurrent());
+		try {
+			c.getCurrent();
+			fail("should not have a current element");
+		} catch (IllegalStateException ex) {
+			// expected
+		}
+	}
+
+	public void test01() {
+		s.addAfter(b1);
+		s.addAfter(b2);
+		ParticleSeq.Snapshot snap = s.snapshot();
+		s.removeCurrent();
+		s.addBefore(b3);
+		s.start();
+		s.addBefore(null);
+		assertEquals(2,snap.size());
+		ParticleSeq.Snapshot.Cursor c = snap.cursor();
+		assertSame(b1,c.getCurrent());
+		c.advance();
+		assertSame(b2,c.getCurrent());
+		c.advance();
+		assertTrue(c.atEnd());
+		c.start();
+		assertSame(b1,c.getCurrent());
+	}
+
+	public void test02() {
+		s.addAfter(b1);
+		ParticleSeq.Snapshot snap = s.snapshot();
+		s.addAll(s);
+		assertEquals(2,s.size());
+		assertEquals(1,snap.size());
+		ParticleSeq.Snapshot.Cursor c = snap.cursor();
+		c.advance();
+		assertTrue(c.atEnd());
+	}
+
+	/**
+	 * A reader thread scans a snapshot while the sequence is changed.
+	 */
+	public void test03() throws InterruptedException {
+		final int n = 2000;
+		for (int i=0; i < n; ++i) {
+			s.addAfter(i%2 == 0 ? b1 : b2);
+		}
+		final ParticleSeq.Snapshot snap = s.snapshot();
+		final int[] counted = new int[2];
+		Thread reader = new Thread(() -> {
+			for (int k=0; k < 10; ++k) {
+				ParticleSeq.Snapshot.Cursor c = snap.cursor();
+				for (int i=0; c.isCurrent(); c.advance(), ++i) {
+					if (c.getCurrent() != (i%2 == 0 ? b1 : b2)) return;
+					++counted[0];
+				}
+			}
+			counted[1] = 1;
+		});
+		reader.start();
+		s.start();
+		while (!s.atEnd()) {
+			s.removeCurrent();
+			s.addAfter(b3);
+			s.advance();
+		}
+		reader.join();
+		assertEquals(1,counted[1]);
+		assertEquals(10*n,counted[0]);
+	}
+}
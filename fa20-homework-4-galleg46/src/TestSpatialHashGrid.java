@@ -0,0 +1,164 @@
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import edu.uwm.cs351.Particle;
+import edu.uwm.cs351.ParticleSeq;
+import edu.uwm.cs351.Point;
+import edu.uwm.cs351.SpatialHashGrid;
+import edu.uwm.cs351.Vector;
+
+
+public class TestSpatialHashGrid extends TestCase {
+
+	private ParticleSeq s;
+	private Random r;
+
+	@Override
+	public void setUp() {
+		s = new ParticleSeq();
+		r = new Random(351);
+	}
+
+	private Particle random(double range) {
+		return new Particle(new Point(r.nextDouble()*range - range/2, r.nextDouble()*range - range/2),
+				new Vector(r.nextDouble()*10-5, r.nextDouble()*10-5), 1, Color.BLACK);
+	}
+
+	private static double dist(Particle p, Point q) {
+		return new Vector(p.getPosition(), q).magnitude();
+	}
+
+	/**
+	 * Return the particles of s within r of q, found by looking at all of them.
+	 */
+	private List<Particle> scan(Point q, double radius) {
+		List<Particle> result = new ArrayList<Particle>();
+		for (Particle p : s) {
+			if (p != null && dist(p, q) <= radius) result.add(p);
+		}
+		return result;
+	}
+
+	private void assertSameElements(List<Particle> expected, List<Particle> actual) {
+		assertEquals(expected.size(), actual.size());
+		IdentityHashMap<Particle,Integer> count = new IdentityHashMap<Particle,Integer>();
+		for (Particle p : expected) count.merge(p, 1, Integer::sum);
+		for (Particle p : actual) {
+			Integer c = count.get(p);
+			assertNotNull("unexpected particle", c);
+			if (c == 1) count.remove(p); else count.put(p, c-1);
+		}
+	}
+
+	public void test00() {
+		SpatialHashGrid g = new SpatialHashGrid(1.0);
+		assertEquals(0, g.size());
+		assertTrue(g.queryRadius(new Point(0,0), 10).isEmpty());
+		assertTrue(g.nearest(new Point(0,0), 3).isEmpty());
+		assertEquals(0, g.update());
+	}
+
+	public void test01() {
+		Particle p1 = new Particle(new Point(0.5,0.5), new Vector(), 1, Color.BLACK);
+		Particle p2 = new Particle(new Point(3,4), new Vector(), 1, Color.BLACK);
+		Particle p3 = new Particle(new Point(-1,-1), new Vector(), 1, Color.BLACK);
+		s.addAfter(p1);
+		s.addAfter(null);
+		s.addAfter(p2);
+		s.addAfter(p3);
+		SpatialHashGrid g = new SpatialHashGrid(2.0, s);
+		assertEquals(3, g.size());
+		assertTrue(g.queryRadius(new Point(0,0), 5).contains(p2));
+		assertEquals(2, g.queryRadius(new Point(0,0), 4.99).size());
+		assertEquals(3, g.queryRadius(new Point(0,0), 5).size()); // exactly on the circle
+		assertEquals(0, g.queryRadius(new Point(100,100), 5).size());
+		List<Particle> near = g.nearest(new Point(3,3), 3);
+		assertSame(p2, near.get(0));
+		assertSame(p1, near.get(1));
+		assertSame(p3, near.get(2));
+		assertEquals(3, g.nearest(new Point(0,0), 10).size());
+	}
+
+	public void test02() {
+		for (int i=0; i < 2000; ++i) s.addAfter(random(1000));
+		SpatialHashGrid g = new SpatialHashGrid(10, s);
+		for (int i=0; i < 50; ++i) {
+			Point q = new Point(r.nextDouble()*1200-600, r.nextDouble()*1200-600);
+			double radius = r.nextDouble()*r.nextDouble()*300;
+			assertSameElements(scan(q, radius), g.queryRadius(q, radius));
+		}
+		// a radius much larger than the cells
+		assertEquals(2000, g.queryRadius(new Point(0,0), 1e6).size());
+	}
+
+	public void test03() {
+		for (int i=0; i < 2000; ++i) s.addAfter(random(1000));
+		SpatialHashGrid g = new SpatialHashGrid(10, s);
+		for (int i=0; i < 50; ++i) {
+			// sometimes far outside all the particles
+			Point q = new Point(r.nextDouble()*3000-1500, r.nextDouble()*3000-1500);
+			int k = 1 + r.nextInt(30);
+			List<Particle> near = g.nearest(q, k);
+			assertEquals(k, near.size());
+			List<Particle> all = scan(q, Double.POSITIVE_INFINITY);
+			all.sort((a,b) -> Double.compare(dist(a,q), dist(b,q)));
+			for (int j=0; j < k; ++j) {
+				assertEquals(dist(all.get(j), q), dist(near.get(j), q), 1e-9);
+			}
+		}
+	}
+
+	public void test04() {
+		for (int i=0; i < 1000; ++i) s.addAfter(random(200));
+		SpatialHashGrid g = new SpatialHashGrid(5, s);
+		for (int step=0; step < 5; ++step) {
+			for (Particle p : s) p.move();
+			assertTrue(g.update() > 0);
+			Point q = new Point(r.nextDouble()*200-100, r.nextDouble()*200-100);
+			assertSameElements(scan(q, 20), g.queryRadius(q, 20));
+		}
+		assertEquals(0, g.update()); // nothing moved
+	}
+
+	public void test05() {
+		SpatialHashGrid g = new SpatialHashGrid(1.0);
+		Particle p = new Particle(new Point(1e12,-1e12), new Vector(), 1, Color.BLACK);
+		for (int i=0; i < 100; ++i) g.add(random(10));
+		g.add(p);
+		assertEquals(101, g.size());
+		assertSame(p, g.nearest(new Point(1e12,-1e12), 1).get(0));
+		assertEquals(1, g.queryRadius(new Point(1e12,-1e12), 1).size());
+		try {
+			g.add(null);
+			fail("cannot add null");
+		} catch (NullPointerException ex) {
+			// expected
+		}
+	}
+
+	public void test06() {
+		try {
+			new SpatialHashGrid(0);
+			fail("cell size must be positive");
+		} catch (IllegalArgumentException ex) {
+			// expected
+		}
+		SpatialHashGrid g = new SpatialHashGrid(1.0);
+		try {
+			g.queryRadius(new Point(0,0), -1);
+			fail("radius must not be negative");
+		} catch (IllegalArgumentException ex) {
+			// expected
+		}
+		try {
+			g.nearest(new Point(0,0), -1);
+			fail("k must not be negative");
+		} catch (IllegalArgumentException ex) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,165 @@
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+import edu.uwm.cs351.Particle;
+import edu.uwm.cs351.ParticleSeq;
+import edu.uwm.cs351.Point;
+import edu.uwm.cs351.SweepAndPrune;
+import edu.uwm.cs351.Vector;
+
+
+public class TestSweepAndPrune extends TestCase {
+
+	private ParticleSeq s;
+	private Random r;
+
+	@Override
+	public void setUp() {
+		s = new ParticleSeq();
+		r = new Random(351);
+	}
+
+	private Particle random(double range) {
+		return new Particle(new Point(r.nextDouble()*range, r.nextDouble()*range),
+				new Vector(r.nextDouble()*4-2, r.nextDouble()*4-2), 1 + r.nextInt(3), Color.BLACK);
+	}
+
+	/**
+	 * Return the pairs found, each as a string of the two identity hash codes, smaller first.
+	 */
+	private Set<String> pairs(SweepAndPrune sap) {
+		Set<String> result = new HashSet<String>();
+		sap.findPairs((a,b) -> assertTrue("pair reported twice", result.add(key(a,b))));
+		return result;
+	}
+
+	private static String key(Particle a, Particle b) {
+		int h1 = System.identityHashCode(a), h2 = System.identityHashCode(b);
+		return Math.min(h1,h2) + "," + Math.max(h1,h2);
+	}
+
+	private double radius(Particle p) {
+		return p.getVelocity().magnitude();
+	}
+
+	/**
+	 * Return the pairs whose boxes overlap, by comparing all pairs.
+	 */
+	private Set<String> brute(List<Particle> all, boolean variable, double radius) {
+		Set<String> result = new HashSet<String>();
+		for (int i=0; i < all.size(); ++i) {
+			for (int j=i+1; j < all.size(); ++j) {
+				Particle a = all.get(i), b = all.get(j);
+				double ra = variable ? radius(a) : radius, rb = variable ? radius(b) : radius;
+				if (Math.abs(a.getPosition().x() - b.getPosition().x()) <= ra + rb &&
+						Math.abs(a.getPosition().y() - b.getPosition().y()) <= ra + rb) result.add(key(a,b));
+			}
+		}
+		return result;
+	}
+
+	private List<Particle> fill(int n, double range) {
+		List<Particle> all = new ArrayList<Particle>();
+		for (int i=0; i < n; ++i) {
+			Particle p = random(range);
+			all.add(p);
+			s.addAfter(p);
+			if (i % 50 == 0) s.addAfter(null);
+		}
+		return all;
+	}
+
+	public void test00() {
+		SweepAndPrune sap = new SweepAndPrune(s, 1.0);
+		assertEquals(0, sap.size());
+		assertEquals(0, sap.sort());
+		assertEquals(0, sap.findPairs((a,b) -> fail("no pairs")));
+	}
+
+	public void test01() {
+		Particle p1 = new Particle(new Point(0,0), new Vector(), 1, Color.BLACK);
+		Particle p2 = new Particle(new Point(1.5,1.9), new Vector(), 1, Color.BLACK);
+		Particle p3 = new Particle(new Point(3,0), new Vector(), 1, Color.BLACK);
+		s.addAfter(p3);
+		s.addAfter(p1);
+		s.addAfter(null);
+		s.addAfter(p2);
+		SweepAndPrune sap = new SweepAndPrune(s, 1.0);
+		assertEquals(3, sap.size());
+		List<Particle> found = new ArrayList<Particle>();
+		assertEquals(2, sap.findPairs((a,b) -> { found.add(a); found.add(b); }));
+		assertSame(p1, found.get(0));
+		assertSame(p2, found.get(1));
+		assertSame(p2, found.get(2));
+		assertSame(p3, found.get(3));
+	}
+
+	public void test02() {
+		List<Particle> all = fill(300, 100);
+		SweepAndPrune sap = new SweepAndPrune(s, 2.0);
+		assertEquals(300, sap.size());
+		assertEquals(0, sap.sort());
+		assertEquals(brute(all, false, 2.0), pairs(sap));
+	}
+
+	public void test03() {
+		// frames: particles move, and the order is repaired
+		List<Particle> all = fill(300, 100);
+		SweepAndPrune sap = new SweepAndPrune(s, 2.0);
+		for (int frame=0; frame < 5; ++frame) {
+			for (Particle p : all) p.move();
+			assertTrue(sap.sort() > 0);
+			assertEquals(brute(all, false, 2.0), pairs(sap));
+		}
+	}
+
+	public void test04() {
+		// different radii
+		List<Particle> all = fill(300, 100);
+		SweepAndPrune sap = new SweepAndPrune(s, this::radius);
+		assertEquals(brute(all, true, 0), pairs(sap));
+		for (Particle p : all) p.move();
+		assertEquals(brute(all, true, 0), pairs(sap));
+	}
+
+	public void test05() {
+		List<Particle> all = fill(100, 50);
+		SweepAndPrune sap = new SweepAndPrune(s, 3.0);
+		for (int i=0; i < 50; ++i) {
+			Particle p = random(60);
+			all.add(p);
+			sap.add(p);
+		}
+		assertEquals(150, sap.size());
+		assertTrue(sap.sort() > 0);
+		assertEquals(0, sap.sort());
+		assertEquals(brute(all, false, 3.0), pairs(sap));
+	}
+
+	public void test06() {
+		try {
+			new SweepAndPrune(s, -1);
+			fail("radius must not be negative");
+		} catch (IllegalArgumentException ex) {
+			// expected
+		}
+		SweepAndPrune sap = new SweepAndPrune(s, 1);
+		try {
+			sap.add(null);
+			fail("cannot add null");
+		} catch (NullPointerException ex) {
+			// expected
+		}
+		try {
+			sap.findPairs(null);
+			fail("callback must not be null");
+		} catch (NullPointerException ex) {
+			// expected
+		}
+	}
+}
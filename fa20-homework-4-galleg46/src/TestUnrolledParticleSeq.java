@@ -0,0 +1,118 @@
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import edu.uwm.cs351.Particle;
+import edu.uwm.cs351.Point;
+import edu.uwm.cs351.UnrolledParticleSeq;
+import edu.uwm.cs351.Vector;
+import edu.uwm.cs351.test.ArraySequence;
+import edu.uwm.cs351.test.CursorSequenceAdaptor;
+import edu.uwm.cs351.test.ISequence;
+import edu.uwm.cs351.test.ISequenceCommand;
+import edu.uwm.cs351.test.SequenceCommandFactory;
+import edu.uwm.cs351.test.util.Option;
+
+
+public class TestUnrolledParticleSeq extends TestCase {
+
+	private UnrolledParticleSeq s;
+	Particle p[] = new Particle[100];
+
+	@Override
+	public void setUp() {
+		s = new UnrolledParticleSeq();
+		for (int i=1; i < p.length; ++i) {
+			p[i] = new Particle(new Point(i,i), new Vector(), i, Color.BLACK);
+		}
+	}
+
+	public void test00() {
+		assertEquals(0,s.size());
+		assertFalse(s.isCurrent());
+		assertTrue(s.atEnd());
+	}
+
+	public void test01() {
+		// fill several nodes, then insert in the middle of a full one
+		for (int i=1; i < p.length; i += 2) {
+			s.addAfter(p[i]);
+		}
+		s.start();
+		for (int i=2; i < p.length; i += 2) {
+			s.advance();
+			s.addBefore(p[i]);
+			s.advance();
+		}
+		assertEquals(p.length-1,s.size());
+		s.start();
+		for (int i=1; i < p.length; ++i) {
+			assertSame(p[i],s.getCurrent());
+			s.advance();
+		}
+		assertTrue(s.atEnd());
+	}
+
+	public void test02() {
+		for (int i=1; i < p.length; ++i) {
+			s.addAfter(p[i]);
+		}
+		// remove all the odd elements, which merges nodes
+		s.start();
+		for (int i=1; i < p.length; ++i) {
+			if (i%2 == 1) s.removeCurrent();
+			s.advance();
+		}
+		assertTrue(s.atEnd());
+		s.start();
+		for (int i=2; i < p.length; i += 2) {
+			assertSame(p[i],s.getCurrent());
+			s.advance();
+		}
+		assertTrue(s.atEnd());
+	}
+
+	public void test03() {
+		for (int i=1; i < p.length; ++i) {
+			s.addAfter(p[i]);
+		}
+		s.advance();
+		UnrolledParticleSeq c = s.clone();
+		s.addAll(s);
+		assertTrue(s.atEnd());
+		assertEquals(2*(p.length-1),s.size());
+		assertEquals(p.length-1,c.size());
+		c.start();
+		assertSame(p[1],c.getCurrent());
+	}
+
+	/**
+	 * Run random commands against the unrolled sequence and an
+	 * array-based model of the same behavior, and compare the results.
+	 */
+	public void testRandom() {
+		final List<Particle> particles = new ArrayList<Particle>();
+		particles.add(null);
+		for (int i=1; i < 10; ++i) {
+			particles.add(p[i]);
+		}
+		SequenceCommandFactory<Particle> factory = new SequenceCommandFactory<Particle>(new Random(351)) {
+			@Override
+			protected Particle nextElement(Random r) {
+				return particles.get(r.nextInt(particles.size()));
+			}
+		};
+		List<ISequence<Particle>> mirror = new ArrayList<ISequence<Particle>>();
+		List<ISequence<Particle>> subject = new ArrayList<ISequence<Particle>>();
+		mirror.add(new ArraySequence<Particle>());
+		subject.add(new CursorSequenceAdaptor<UnrolledParticleSeq>(new UnrolledParticleSeq(), UnrolledParticleSeq::new));
+		for (int i=0; i < 100000; ++i) {
+			ISequenceCommand<Particle,?> command = factory.nextCommand(mirror.size());
+			Option<?> expected = command.run(mirror);
+			Option<?> actual = command.run(subject);
+			assertTrue("after " + i + " tests: " + command, Option.equals(expected, actual));
+		}
+	}
+}
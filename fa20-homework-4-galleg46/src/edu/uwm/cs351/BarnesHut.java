@@ -0,0 +1,393 @@
+package edu.uwm.cs351;
+
+
+/******************************************************************************
+ * A BarnesHut computes approximate gravitational forces between the particles
+ * of a {@link ParticleSeq} in O(n log n) time, instead of the O(n^2) time
+ * taken by calling {@link Particle#gravForceOn(Particle)} for every pair.
+ * <p>
+ * The particles are placed in a quadtree, and each cell of the tree records
+ * the total mass and center of mass of the particles in it.  When the force
+ * on a particle is computed, a cell whose width is less than theta times its
+ * distance from the particle is treated as one particle at its center of mass.
+ * A theta of zero gives the exact result; larger values are faster and less
+ * accurate (0.5 is usual).
+ * <p>
+ * Particles at the same place exert no force on each other
+ * (rather than the infinite force that gravForceOn would give).
+ ******************************************************************************/
+public class BarnesHut
+{
+	private static final double G = 1.0; // as used by Particle
+	private static final int MAX_DEPTH = 64; // cells are not split deeper than this
+
+	// A square cell of the quadtree.
+	private static class Quad
+	{
+		double x0, y0, size; // the cell covers [x0,x0+size] x [y0,y0+size]
+		double mass, cx, cy; // total mass, and center of mass
+		Quad[] children; // null for a leaf
+		int body = -1; // for a leaf, the first particle in it (others linked by _next)
+
+		Quad(double x, double y, double s)
+		{
+			x0 = x;
+			y0 = y;
+			size = s;
+		}
+	}
+
+	// The data structure:
+	private double _theta;
+	private int _manyBodies;
+	private Particle[] _bodies;
+	private double[] _x, _y, _mass;
+	private int[] _next; // next particle in the same leaf, or -1
+	private Quad _root; // null if no particles
+
+
+	private static boolean _doReport = true; // used only by invariant checker
+
+	/**
+	 * Used to report an error found when checking the invariant.
+	 * By providing a string, this will help debugging the class if the invariant should fail.
+	 * @param error string to print to report the exact error found
+	 * @return false always
+	 */
+	private boolean _report(String error) {
+		if (_doReport) System.out.println("Invariant error found: " + error);
+		return false;
+	}
+
+	/**
+	 * Check the invariant.
+	 * Return false if any problem is found.
+	 * @return whether invariant is currently true
+	 */
+	private boolean _wellFormed() {
+		// Invariant:
+		// 1. theta is not negative
+		if(!(_theta >= 0)) return _report("theta is " + _theta);
+
+		// 2. the arrays hold at least manyBodies particles
+		if(_manyBodies < 0 || _manyBodies > _bodies.length) return _report("manyBodies is out of range: " + _manyBodies);
+
+		// 3. there is a tree exactly if there are particles,
+		//    and each particle is in exactly one leaf
+		if((_root == null) != (_manyBodies == 0)) return _report("root does not agree with manyBodies");
+		if(_root != null)
+		{
+			int[] seen = new int[1];
+			if(!checkQuad(_root, 0, seen)) return false;
+			if(seen[0] != _manyBodies) return _report("tree has " + seen[0] + " particles, not " + _manyBodies);
+		}
+
+		// If no problems found, then return true:
+		return true;
+	}
+
+	/**
+	 * Check a cell: its particles are inside it, the children divide it
+	 * into four, and the mass is the total of the mass inside it.
+	 */
+	private boolean checkQuad(Quad q, int depth, int[] seen)
+	{
+		if(depth > MAX_DEPTH) return _report("tree is too deep");
+		double mass = 0;
+		if(q.children == null)
+		{
+			for(int i = q.body; i >= 0; i = _next[i])
+			{
+				if(++seen[0] > _manyBodies) return _report("a particle is in the tree twice");
+				if(!inside(q, i)) return _report("particle " + i + " is outside its cell");
+				mass += _mass[i];
+			}
+		}
+		else
+		{
+			if(q.body != -1) return _report("a cell with children has a particle");
+			double half = q.size / 2;
+			for(int k=0; k < 4; ++k)
+			{
+				Quad c = q.children[k];
+				if(c == null) continue;
+				if(c.size != half || c.x0 != q.x0 + (k & 1) * half || c.y0 != q.y0 + (k >> 1) * half)
+					return _report("child " + k + " is not a quarter of its parent");
+				if(!checkQuad(c, depth + 1, seen)) return false;
+				mass += c.mass;
+			}
+		}
+		if(Math.abs(mass - q.mass) > 1e-9 * Math.abs(mass)) return _report("cell mass is " + q.mass + ", not " + mass);
+		return true;
+	}
+
+	private boolean inside(Quad q, int i)
+	{
+		return _x[i] >= q.x0 && _x[i] <= q.x0 + q.size && _y[i] >= q.y0 && _y[i] <= q.y0 + q.size;
+	}
+
+	/**
+	 * Create a solver with the given opening angle.
+	 * @param theta
+	 *   the opening angle: a cell is treated as one particle if its width
+	 *   is less than theta times its distance.  Zero gives exact results.
+	 * @exception IllegalArgumentException
+	 *   Indicates that theta is negative (or not a number).
+	 */
+	public BarnesHut(double theta)
+	{
+		if(!(theta >= 0)) throw new IllegalArgumentException("theta must not be negative: " + theta);
+		_theta = theta;
+		_bodies = new Particle[0];
+		_x = _y = _mass = new double[0];
+		_next = new int[0];
+		assert _wellFormed() : "invariant failed at end of constructor";
+	}
+
+	/**
+	 * Return the opening angle.
+	 * @return the opening angle
+	 */
+	public double getTheta()
+	{
+		assert _wellFormed() : "invariant failed at start of getTheta";
+		return _theta;
+	}
+
+	/**
+	 * Change the opening angle.  This affects forces computed from now on.
+	 * @param theta the new opening angle
+	 * @exception IllegalArgumentException
+	 *   Indicates that theta is negative (or not a number).
+	 */
+	public void setTheta(double theta)
+	{
+		assert _wellFormed() : "invariant failed at start of setTheta";
+		if(!(theta >= 0)) throw new IllegalArgumentException("theta must not be negative: " + theta);
+		_theta = theta;
+		assert _wellFormed() : "invariant failed at end of setTheta";
+	}
+
+	/**
+	 * Build the tree for the current positions of the particles in a sequence.
+	 * Null elements are ignored.  The built-in cursor of the sequence is not used.
+	 * @param particles
+	 *   the sequence of particles, must not be null
+	 * @postcondition
+	 *   forces computed by {@link #forceOn(Particle)} are those exerted by
+	 *   the particles of the sequence at their current positions.
+	 * @exception NullPointerException
+	 *   Indicates that particles is null.
+	 */
+	public void build(ParticleSeq particles)
+	{
+		assert _wellFormed() : "invariant failed at start of build";
+
+		int n = particles.size();
+		if(_bodies.length < n)
+		{
+			_bodies = new Particle[n];
+			_x = new double[n];
+			_y = new double[n];
+			_mass = new double[n];
+			_next = new int[n];
+		}
+
+		n = 0;
+		double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+		for(Particle p : particles)
+		{
+			if(p == null) continue;
+			Point pos = p.getPosition();
+			_bodies[n] = p;
+			_x[n] = pos.x();
+			_y[n] = pos.y();
+			_mass[n] = Particles.mass(p);
+			minX = Math.min(minX, _x[n]);
+			minY = Math.min(minY, _y[n]);
+			maxX = Math.max(maxX, _x[n]);
+			maxY = Math.max(maxY, _y[n]);
+			++n;
+		}
+		for(int i=n; i < _manyBodies; ++i) _bodies[i] = null; // do not keep old particles
+		_manyBodies = n;
+
+		_root = null;
+		if(n > 0)
+		{
+			double size = Math.max(maxX - minX, maxY - minY);
+			if(size == 0) size = 1;
+			_root = new Quad(minX, minY, size);
+			for(int i=0; i < n; ++i) insert(i);
+			summarize(_root);
+		}
+
+		assert _wellFormed() : "invariant failed at end of build";
+	}
+
+	/**
+	 * Put a particle in the leaf for its position, splitting leaves as needed.
+	 */
+	private void insert(int i)
+	{
+		Quad q = _root;
+		for(int depth = 0; ; ++depth)
+		{
+			if(q.children == null)
+			{
+				if(q.body == -1 || depth == MAX_DEPTH)
+				{
+					_next[i] = q.body;
+					q.body = i;
+					return;
+				}
+				// split the leaf, and move its particle down
+				int j = q.body;
+				q.body = -1;
+				q.children = new Quad[4];
+				Quad c = child(q, j);
+				c.body = j;
+				_next[j] = -1;
+			}
+			q = child(q, i);
+		}
+	}
+
+	/**
+	 * Return the child of a cell that should hold the given particle, creating it if needed.
+	 */
+	private Quad child(Quad q, int i)
+	{
+		double half = q.size / 2;
+		int k = (_x[i] < q.x0 + half ? 0 : 1) + (_y[i] < q.y0 + half ? 0 : 2);
+		Quad c = q.children[k];
+		if(c == null) c = q.children[k] = new Quad(q.x0 + (k & 1) * half, q.y0 + (k >> 1) * half, half);
+		return c;
+	}
+
+	/**
+	 * Compute the mass and center of mass of each cell.
+	 */
+	private void summarize(Quad q)
+	{
+		double mass = 0, mx = 0, my = 0;
+		if(q.children == null)
+		{
+			for(int i = q.body; i >= 0; i = _next[i])
+			{
+				mass += _mass[i];
+				mx += _mass[i] * _x[i];
+				my += _mass[i] * _y[i];
+			}
+		}
+		else
+		{
+			for(Quad c : q.children)
+			{
+				if(c == null) continue;
+				summarize(c);
+				mass += c.mass;
+				mx += c.mass * c.cx;
+				my += c.mass * c.cy;
+			}
+		}
+		q.mass = mass;
+		if(mass != 0)
+		{
+			q.cx = mx / mass;
+			q.cy = my / mass;
+		}
+		else
+		{
+			q.cx = q.x0 + q.size / 2;
+			q.cy = q.y0 + q.size / 2;
+		}
+	}
+
+	/**
+	 * Compute the approximate gravitational force on a particle from the
+	 * particles the tree was built from.
+	 * @param p
+	 *   the particle, must not be null
+	 * @return
+	 *   the total force on p (not counting any particle at the same place as p)
+	 * @exception NullPointerException
+	 *   Indicates that p is null.
+	 */
+	public Vector forceOn(Particle p)
+	{
+		assert _wellFormed() : "invariant failed at start of forceOn";
+
+		Point pos = p.getPosition();
+		double[] f = new double[2];
+		if(_root != null) accumulate(_root, pos.x(), pos.y(), f);
+		double m = Particles.mass(p);
+		return new Vector(f[0] * m, f[1] * m);
+	}
+
+	/**
+	 * Compute approximate gravitational forces on all the particles of
+	 * a sequence from each other, and apply them with {@link Particle#applyForce(Vector)}.
+	 * The positions are not changed, so all the forces are computed from the
+	 * same positions.
+	 * @param particles
+	 *   the sequence of particles, must not be null
+	 * @postcondition
+	 *   The tree has been built from the particles, and the force
+	 *   on each particle has been applied to it.
+	 * @exception NullPointerException
+	 *   Indicates that particles is null.
+	 */
+	public void applyForces(ParticleSeq particles)
+	{
+		build(particles);
+		double[] f = new double[2];
+		for(int i=0; i < _manyBodies; ++i)
+		{
+			f[0] = f[1] = 0;
+			accumulate(_root, _x[i], _y[i], f);
+			_bodies[i].applyForce(new Vector(f[0] * _mass[i], f[1] * _mass[i]));
+		}
+	}
+
+	/**
+	 * Add the acceleration at a point due to the particles in a cell
+	 * (the force on a unit mass) to the accumulator.
+	 */
+	private void accumulate(Quad q, double x, double y, double[] f)
+	{
+		if(q.children == null)
+		{
+			for(int i = q.body; i >= 0; i = _next[i])
+			{
+				pull(_x[i] - x, _y[i] - y, _mass[i], f);
+			}
+			return;
+		}
+		
+		double dx = q.cx - x, dy = q.cy - y;
+		boolean outside = x < q.x0 || x > q.x0 + q.size || y < q.y0 || y > q.y0 + q.size;
+		if(outside && q.size * q.size < _theta * _theta * (dx * dx + dy * dy))
+		{
+			pull(dx, dy, q.mass, f);
+			return;
+		}
+		for(Quad c : q.children)
+		{
+			if(c != null) accumulate(c, x, y, f);
+		}
+	}
+
+	/**
+	 * Add the acceleration due to a mass at the given displacement.
+	 */
+	private static void pull(double dx, double dy, double mass, double[] f)
+	{
+		double d2 = dx * dx + dy * dy;
+		if(d2 == 0) return;
+		double a = G * mass / (d2 * Math.sqrt(d2));
+		f[0] += a * dx;
+		f[1] += a * dy;
+	}
+}
@@ -0,0 +1,276 @@
+package edu.uwm.cs351;
+
+import java.util.concurrent.atomic.AtomicMarkableReference;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/******************************************************************************
+ * A ConcurrentParticleSeq is a sequence of Particles that can be changed
+ * by several threads at once without locks.  It is a lock-free linked list
+ * in the style of Harris (2001): a node is removed by first marking its
+ * next link (after which the link never changes), and then unlinking it.
+ * <p>
+ * Instead of a single current element, each thread uses its own
+ * {@link Cursor}, which behaves like the cursor of {@link ParticleSeq}.
+ * Traversal is weakly consistent: a cursor sees every element that was
+ * in the sequence for the whole traversal, and may or may not see elements
+ * added or removed by other threads in the meantime.
+ ******************************************************************************/
+public class ConcurrentParticleSeq
+{
+	// Declare the private static Node class.
+	// A node is removed from the sequence once its next link is marked.
+	private static class Node
+	{
+		final Particle data;
+		final AtomicMarkableReference<Node> next;
+
+		Node(Particle p, Node n)
+		{
+			data = p;
+			next = new AtomicMarkableReference<Node>(n, false);
+		}
+	}
+
+	// The data structure:
+	private final Node _head = new Node(null, null); // dummy node, never removed
+	private final LongAdder _manyNodes = new LongAdder();
+
+	/**
+	 * Create an empty sequence of particles.
+	 * @param - none
+	 * @postcondition
+	 *   This sequence of particles is empty
+	 **/
+	public ConcurrentParticleSeq( ) { }
+
+	/**
+	 * Determine the number of elements in this sequence.
+	 * If other threads are changing the sequence, the result is only an estimate.
+	 * @param - none
+	 * @return
+	 *   the number of elements in this sequence
+	 **/
+	public int size( )
+	{
+		return _manyNodes.intValue();
+	}
+
+	/**
+	 * Create a new cursor for this sequence.
+	 * A cursor should only be used by one thread at a time.
+	 * @return a cursor whose current element is the first element of
+	 *   the sequence (it is at the end if the sequence is empty)
+	 */
+	public Cursor cursor( )
+	{
+		Cursor c = new Cursor();
+		c.start();
+		return c;
+	}
+
+	private static boolean isRemoved(Node n)
+	{
+		return n.next.isMarked();
+	}
+
+	/**
+	 * Return the first node after the given one (which may have been removed)
+	 * that has not been removed, or null if there is none.
+	 */
+	private static Node nextLive(Node n)
+	{
+		Node p = n.next.getReference();
+		while(p != null && isRemoved(p)) p = p.next.getReference();
+		return p;
+	}
+
+	/**
+	 * Find the node in the list immediately before the given node (or the
+	 * last node in the list if target is null), unlinking removed nodes along the way.
+	 * @param target node to look for, or null for the end
+	 * @return the live node (or the dummy head) whose next link is target,
+	 *   or null if target is no longer in the list
+	 */
+	private Node findBefore(Node target)
+	{
+		boolean[] marked = new boolean[1];
+		retry:
+		while(true)
+		{
+			Node pred = _head;
+			Node curr = pred.next.getReference();
+			while(true)
+			{
+				if(curr == null) return target == null ? pred : null;
+				Node succ = curr.next.get(marked);
+				if(marked[0])
+				{
+					// help finish the removal of curr
+					if(!pred.next.compareAndSet(curr, succ, false, false)) continue retry;
+					curr = succ;
+					continue;
+				}
+				if(curr == target) return pred;
+				pred = curr;
+				curr = succ;
+			}
+		}
+	}
+
+	/**
+	 * Insert a new node after the given one.  If the given node has been
+	 * removed by another thread, the new node is put where the removed node was.
+	 * @return the new node
+	 */
+	private Node insertAfter(Node anchor, Particle element)
+	{
+		boolean[] marked = new boolean[1];
+		while(true)
+		{
+			Node succ = anchor.next.get(marked);
+			if(marked[0])
+			{
+				// The anchor is gone: find the live node now before its place.
+				Node pred = findBefore(nextLive(anchor));
+				if(pred != null) anchor = pred;
+				continue;
+			}
+			Node n = new Node(element, succ);
+			if(anchor.next.compareAndSet(succ, n, false, false))
+			{
+				_manyNodes.increment();
+				return n;
+			}
+		}
+	}
+
+	/**
+	 * A cursor over a concurrent sequence, with the same operations
+	 * as the cursor of {@link ParticleSeq}.
+	 */
+	public class Cursor
+	{
+		private Node precursor; // the node before the cursor, never null
+		private Node cursor; // the current node, null if there is none
+		private boolean atEnd;
+
+		private Cursor() { }
+
+		/**
+		 * Set the current element at the front of the sequence.
+		 * @postcondition
+		 *   The front element is now the current element, but
+		 *   if the sequence has no elements at all, then we are at the end.
+		 */
+		public void start()
+		{
+			precursor = _head;
+			cursor = nextLive(_head);
+			atEnd = cursor == null;
+		}
+
+		/**
+		 * Return true if we are at the end of the sequence.
+		 * @return true if at the end of the sequence
+		 */
+		public boolean atEnd()
+		{
+			return atEnd;
+		}
+
+		/**
+		 * Determine whether there is a current element.
+		 * (The current element may since have been removed by another thread.)
+		 * @return true if there is a current element
+		 */
+		public boolean isCurrent()
+		{
+			return cursor != null;
+		}
+
+		/**
+		 * Get the current element.
+		 * @return the current element (which may be null)
+		 * @exception IllegalStateException
+		 *   Indicates that there is no current element
+		 */
+		public Particle getCurrent()
+		{
+			if(cursor == null) throw new IllegalStateException("no current element");
+			return cursor.data;
+		}
+
+		/**
+		 * Move forward to the next element that is still in the sequence.
+		 * @postcondition
+		 *   The next element (if any) is current, otherwise we are at the end.
+		 * @exception IllegalStateException
+		 *   Indicates that we are at the end, so advance may not be called
+		 */
+		public void advance()
+		{
+			if(atEnd) throw new IllegalStateException("advancing past the end");
+
+			if(cursor != null) precursor = cursor;
+			cursor = nextLive(precursor);
+			atEnd = cursor == null;
+		}
+
+		/**
+		 * Add a new element before the current element (if any),
+		 * otherwise where the removed element was, or at the end.
+		 * The new element becomes current.
+		 * @param element the new element, may be null
+		 */
+		public void addBefore(Particle element)
+		{
+			cursor = insertAfter(precursor, element);
+			atEnd = false;
+		}
+
+		/**
+		 * Add a new element after the current element (if any),
+		 * otherwise where the removed element was, or at the end.
+		 * The new element becomes current.
+		 * @param element the new element, may be null
+		 */
+		public void addAfter(Particle element)
+		{
+			if(cursor != null) precursor = cursor;
+			cursor = insertAfter(precursor, element);
+			atEnd = false;
+		}
+
+		/**
+		 * Remove the current element from the sequence.
+		 * @postcondition
+		 *   The current element is no longer in the sequence, and there is
+		 *   no current element.  We are not at the end.
+		 * @return true if this call removed the element, false if another
+		 *   thread had already removed it
+		 * @exception IllegalStateException
+		 *   Indicates that there is no current element
+		 */
+		public boolean removeCurrent()
+		{
+			if(cursor == null) throw new IllegalStateException("no current to remove");
+
+			Node removed = cursor;
+			cursor = null;
+			boolean[] marked = new boolean[1];
+			while(true)
+			{
+				Node succ = removed.next.get(marked);
+				if(marked[0]) return false;
+				if(removed.next.compareAndSet(succ, succ, false, true))
+				{
+					_manyNodes.decrement();
+					// unlink it, or if the precursor has changed, search for it
+					if(!precursor.next.compareAndSet(removed, succ, false, false)) findBefore(removed);
+					return true;
+				}
+			}
+		}
+	}
+}
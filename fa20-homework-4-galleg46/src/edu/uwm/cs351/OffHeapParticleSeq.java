@@ -0,0 +1,650 @@
+package edu.uwm.cs351;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+
+/******************************************************************************
+ * An OffHeapParticleSeq is a sequence of Particles with the same cursor
+ * behavior as {@link ParticleSeq}, but whose nodes are kept outside of
+ * the Java heap, in a direct buffer.  Each node is a fixed size "slot"
+ * holding the state of the particle (position, velocity, mass and color)
+ * and the index of the next slot, so the number of objects on the heap
+ * does not depend on the number of elements.
+ * <p>
+ * Since only the state of the particles is stored, {@link #getCurrent()}
+ * returns a new particle each time it is called.  Changes to that particle
+ * are not reflected in the sequence.
+ * <p>
+ * Slots of removed elements are reused by later additions.
+ * {@link #compact()} moves all the elements to the front of the buffer
+ * in sequence order and releases the unused space.
+ * Once the sequence is no longer needed, it should be closed.
+ * (The memory itself is released when the buffer is garbage collected.)
+ * <p>
+ * A buffer holds at most 2^31-1 bytes, so a sequence can have at most
+ * {@link #MAX_CAPACITY} (38,347,922) elements; adding more throws
+ * an IllegalStateException.
+ ******************************************************************************/
+public class OffHeapParticleSeq implements ParticleSequence<OffHeapParticleSeq>, AutoCloseable
+{
+	// Layout of a slot:
+	private static final int X = 0;
+	private static final int Y = 8;
+	private static final int DX = 16;
+	private static final int DY = 24;
+	private static final int MASS = 32;
+	private static final int COLOR = 40;
+	private static final int NEXT = 44;
+	private static final int FLAGS = 48;
+	private static final int SLOT_SIZE = 56;
+
+	private static final int NULL_FLAG = 1; // element is null
+
+	private static final int NONE = -1; // the "null" slot index
+	private static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 * The largest number of elements a sequence can hold:
+	 * as many slots as fit in the largest buffer.
+	 */
+	public static final int MAX_CAPACITY = Integer.MAX_VALUE / SLOT_SIZE;
+
+	// The data structure:
+	private ByteBuffer _slots;
+	private int _capacity; // number of slots that fit in the buffer
+	private int _used; // number of slots that have ever been used
+	private int _free; // first slot of the free list, NONE if empty
+	private int _manyNodes;
+	private int _head, _tail;
+	private int _precursor, _cursor;
+	private boolean _atEnd;
+
+
+	private static boolean _doReport = true; // used only by invariant checker
+
+	/**
+	 * Used to report an error found when checking the invariant.
+	 * By providing a string, this will help debugging the class if the invariant should fail.
+	 * @param error string to print to report the exact error found
+	 * @return false always
+	 */
+	private boolean _report(String error) {
+		if (_doReport) System.out.println("Invariant error found: " + error);
+		return false;
+	}
+
+	/**
+	 * Check the invariant.
+	 * Return false if any problem is found.
+	 * @return whether invariant is currently true
+	 */
+	private boolean _wellFormed() {
+		// Invariant:
+		// 0. a closed sequence has no elements
+		if(_slots == null)
+		{
+			if(_manyNodes != 0 || _head != NONE) return _report("closed sequence still has elements");
+			return true;
+		}
+		if(_used < 0 || _used > _capacity || _capacity*SLOT_SIZE > _slots.capacity())
+			return _report("slot counts are inconsistent");
+
+		// 1. list must not include a cycle, and all links are to used slots.
+		if(_head != NONE)
+		{
+			int fast = next(_head);
+			for(int p = _head; fast != NONE && next(fast) != NONE; p = next(p))
+			{
+				if(p == fast) return _report("list is cyclic!");
+				fast = next(next(fast));
+			}
+		}
+
+		// 2. manyNodes is number of nodes in list, and tail is the last node.
+		int count = 0;
+		boolean foundPrecursor = false;
+		int last = NONE;
+		for(int c = _head; c != NONE; c = next(c))
+		{
+			if(c < 0 || c >= _used) return _report("link to an unused slot: " + c);
+			if(c == _precursor) foundPrecursor = true;
+			last = c;
+			if(++count > _used) return _report("list is cyclic!");
+		}
+		if(count != _manyNodes) return _report("manynodes is: " +_manyNodes +" does not equal the number of nodes: " +count);
+		if(_tail != last) return _report("tail is not the last node in the list");
+
+		// 3. precursor is either NONE or a node in the list.
+		if(_precursor != NONE && !foundPrecursor) return _report("precursor is not in the list");
+
+		// 4. if cursor != precursor, then
+		//    if precursor is NONE, cursor is head, otherwise cursor is after precursor;
+		if(_cursor != _precursor)
+		{
+			if(_precursor == NONE && _cursor != _head) return _report("cursor is not the head");
+			if(_precursor != NONE && _cursor != next(_precursor)) return _report("cursor is not after precursor");
+		}
+
+		// 5. if _atEnd is true then
+		//        cursor must be NONE
+		//        if precursor is NONE, then so must head
+		if(_atEnd)
+		{
+			if(_cursor != NONE) return _report("we are at the end, cursor should be none");
+			if(_precursor == NONE && _head != NONE) return _report("precursor is none. Head should also be none and it is not");
+		}
+
+		// 6. every used slot is either in the list or in the free list
+		int freeCount = 0;
+		for(int f = _free; f != NONE; f = next(f))
+		{
+			if(f < 0 || f >= _used) return _report("free list links to an unused slot: " + f);
+			if(++freeCount > _used) return _report("free list is cyclic!");
+		}
+		if(freeCount + _manyNodes != _used) return _report("slots are lost: " + (_used - freeCount - _manyNodes));
+
+		// If no problems found, then return true:
+		return true;
+	}
+
+	/**
+	 * Create an empty sequence of particles.
+	 * @param - none
+	 * @postcondition
+	 *   This sequence of particles is empty
+	 **/
+	public OffHeapParticleSeq( )
+	{
+		this(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Create an empty sequence of particles with room for the given
+	 * number of elements before the buffer must grow.
+	 * @param initialCapacity
+	 *   number of elements to make room for, must not be negative
+	 *   or more than {@link #MAX_CAPACITY}
+	 * @postcondition
+	 *   This sequence of particles is empty
+	 * @exception IllegalArgumentException
+	 *   Indicates that initialCapacity is negative or too large.
+	 **/
+	public OffHeapParticleSeq(int initialCapacity)
+	{
+		if(initialCapacity < 0) throw new IllegalArgumentException("negative capacity: " + initialCapacity);
+		if(initialCapacity > MAX_CAPACITY) throw new IllegalArgumentException("capacity is too large: " + initialCapacity);
+
+		_slots = allocate(Math.max(1, initialCapacity));
+		_capacity = _slots.capacity() / SLOT_SIZE;
+		_used = 0;
+		_free = NONE;
+		_manyNodes = 0;
+		_head = _tail = _cursor = _precursor = NONE;
+		_atEnd = true;
+
+		assert _wellFormed() : "invariant failed at end of constructor";
+	}
+
+	private static ByteBuffer allocate(int capacity)
+	{
+		return ByteBuffer.allocateDirect(Math.multiplyExact(capacity, SLOT_SIZE)).order(ByteOrder.nativeOrder());
+	}
+
+	private int next(int slot)
+	{
+		return _slots.getInt(slot*SLOT_SIZE + NEXT);
+	}
+
+	private void setNext(int slot, int next)
+	{
+		_slots.putInt(slot*SLOT_SIZE + NEXT, next);
+	}
+
+	private void ensureOpen()
+	{
+		if(_slots == null) throw new IllegalStateException("sequence is closed");
+	}
+
+	/**
+	 * Obtain a slot, reusing a freed slot if there is one,
+	 * and store the element and the next link in it.
+	 * @return index of the new slot
+	 */
+	private int newSlot(Particle element, int next)
+	{
+		int slot;
+		if(_free != NONE)
+		{
+			slot = _free;
+			_free = next(slot);
+		}
+		else
+		{
+			if(_used == _capacity)
+			{
+				if(_capacity == MAX_CAPACITY) throw new IllegalStateException("sequence is full: " + MAX_CAPACITY + " elements");
+				int capacity = (int)Math.min(Math.max(_capacity+1, _capacity*2L), MAX_CAPACITY);
+				ByteBuffer bigger = allocate(capacity);
+				_slots.clear();
+				bigger.put(_slots);
+				_slots = bigger;
+				_capacity = capacity;
+			}
+			slot = _used++;
+		}
+
+		int base = slot*SLOT_SIZE;
+		if(element == null)
+		{
+			_slots.putDouble(base + X, 0);
+			_slots.putDouble(base + Y, 0);
+			_slots.putDouble(base + DX, 0);
+			_slots.putDouble(base + DY, 0);
+			_slots.putDouble(base + MASS, 0);
+			_slots.putInt(base + COLOR, 0);
+			_slots.putInt(base + FLAGS, NULL_FLAG);
+		}
+		else
+		{
+			Point pos = element.getPosition();
+			Vector vel = element.getVelocity();
+			_slots.putDouble(base + X, pos.x());
+			_slots.putDouble(base + Y, pos.y());
+			_slots.putDouble(base + DX, vel.dx());
+			_slots.putDouble(base + DY, vel.dy());
+			_slots.putDouble(base + MASS, Particles.mass(element));
+			_slots.putInt(base + COLOR, Particles.argb(element));
+			_slots.putInt(base + FLAGS, 0);
+		}
+		setNext(slot, next);
+		return slot;
+	}
+
+	/**
+	 * Put a slot that is no longer in the list on the free list.
+	 */
+	private void freeSlot(int slot)
+	{
+		setNext(slot, _free);
+		_free = slot;
+	}
+
+	/**
+	 * Determine the number of elements in this sequence.
+	 * @param - none
+	 * @return
+	 *   the number of elements in this sequence
+	 **/
+	public int size( )
+	{
+		assert _wellFormed() : "invariant wrong at start of size()";
+		return _manyNodes;
+	}
+
+	/**
+	 * Return true if we are at the end of the sequence.
+	 * @precondition true
+	 * @return true if at the end of the sequence
+	 * @see ParticleSeq#atEnd()
+	 */
+	public boolean atEnd() {
+		assert _wellFormed() : "Invariant failed at start of atEnd";
+
+		return _atEnd;
+	}
+
+	/**
+	 * Set the current element at the front of this sequence.
+	 * @param - none
+	 * @postcondition
+	 *   The front element of this sequence is now the current element, but
+	 *   if this sequence has no elements at all, then there is no current
+	 *   element and we are at the end.
+	 **/
+	public void start( )
+	{
+		assert _wellFormed() : "invariant wrong at start of start()";
+
+		_cursor = _head;
+		_precursor = NONE;
+		_atEnd = _head == NONE;
+
+		assert _wellFormed() : "invariant wrong at end of start()";
+	}
+
+	/**
+	 * Accessor method to determine whether this sequence has a specified
+	 * current element that can be retrieved with the
+	 * getCurrent method.
+	 * @param - none
+	 * @return
+	 *   true (there is a current element) or false (there is no current element at the moment)
+	 **/
+	public boolean isCurrent( )
+	{
+		assert _wellFormed() : "invariant wrong at start of isCurrent()";
+
+		return _precursor != _cursor && _cursor != NONE;
+	}
+
+	/**
+	 * Accessor method to get the current element of this sequence.
+	 * @param - none
+	 * @precondition
+	 *   isCurrent() returns true.
+	 * @return
+	 *   a new particle with the state of the current element of this sequence
+	 *   (or null if the current element is null)
+	 * @exception IllegalStateException
+	 *   Indicates that there is no current element, so
+	 *   getCurrent may not be called.
+	 **/
+	public Particle getCurrent( )
+	{
+		assert _wellFormed() : "invariant wrong at start of getCurrent()";
+
+		if(!isCurrent()) throw new IllegalStateException("no current element");
+
+		int base = _cursor*SLOT_SIZE;
+		if((_slots.getInt(base + FLAGS) & NULL_FLAG) != 0) return null;
+		return Particles.create(_slots.getDouble(base + X), _slots.getDouble(base + Y),
+				_slots.getDouble(base + DX), _slots.getDouble(base + DY),
+				_slots.getDouble(base + MASS), _slots.getInt(base + COLOR));
+	}
+
+	/**
+	 * Move forward, so that the current element is now the next element in
+	 * this sequence.
+	 * @param - none
+	 * @precondition
+	 *   atEnd() returns false.
+	 * @postcondition
+	 *   If the current element (even if it was removed)
+	 *   was already the last element of this sequence,
+	 *   then there is no longer any current element.
+	 *   Otherwise, the new current element is the element immediately after the
+	 *   previous current element (whether or not it has been removed).
+	 * @exception IllegalStateException
+	 *   Indicates that we are at the end so
+	 *   advance may not be called.
+	 **/
+	public void advance( )
+	{
+		assert _wellFormed() : "invariant wrong at start of advance()";
+
+		if(_atEnd) throw new IllegalStateException("advancing past the end");
+
+		_precursor = _cursor;
+		_cursor = _cursor == NONE ? _head : next(_cursor);
+
+		if(_cursor == NONE) _atEnd = true;
+
+		assert _wellFormed() : "invariant wrong at end of advance()";
+	}
+
+	/**
+	 * Add a new element to this sequence, before the current element (if any).
+	 * @param element
+	 *   the new element that is being added, it is allowed to be null
+	 * @postcondition
+	 *   The element has been added to this sequence. If there was
+	 *   a current element, then the new element is placed before the current
+	 *   element. If there was no current element, then the new element is placed
+	 *   where the removed element was, or at the end. In all cases, the new element becomes the
+	 *   new current element of this sequence.
+	 * @exception IllegalStateException
+	 *   Indicates that this sequence has been closed, or is full.
+	 **/
+	public void addBefore(Particle element)
+	{
+		assert _wellFormed() : "invariant wrong at start of addBefore";
+		ensureOpen();
+
+		if(_precursor == NONE)
+		{
+			_cursor = _head = newSlot(element, _head);
+		}
+		else
+		{
+			_cursor = newSlot(element, next(_precursor));
+			setNext(_precursor, _cursor);
+		}
+		if(next(_cursor) == NONE) _tail = _cursor;
+
+		++_manyNodes;
+		_atEnd = false;
+
+		assert _wellFormed() : "invariant wrong at end of addBefore";
+	}
+
+	/**
+	 * Add a new element to this sequence, after the current element if any.
+	 * @param element
+	 *   the new element that is being added, may be null
+	 * @postcondition
+	 *   The element has been added to this sequence. If there was
+	 *   a current element, then the new element is placed after the current
+	 *   element. If there was no current element, then the new element is placed
+	 *   where the element was, or at the end of the sequence.
+	 *   In all cases, the new element becomes the
+	 *   new current element of this sequence.
+	 * @exception IllegalStateException
+	 *   Indicates that this sequence has been closed, or is full.
+	 **/
+	public void addAfter(Particle element) {
+		assert _wellFormed() : "invariant wrong at start of addAfter";
+		ensureOpen();
+
+		if(isCurrent())
+		{
+			_precursor = _cursor;
+			_cursor = newSlot(element, next(_precursor));
+			setNext(_precursor, _cursor);
+			if(next(_cursor) == NONE) _tail = _cursor;
+			++_manyNodes;
+			_atEnd = false;
+		}
+		else
+		{
+			addBefore(element);
+		}
+
+		assert _wellFormed() : "invariant wrong at end of addAfter";
+	}
+
+	/**
+	 * Remove the current element from this sequence.
+	 * Its slot will be reused by a later addition.
+	 * @param - none
+	 * @precondition
+	 *   isCurrent() returns true.
+	 * @postcondition
+	 *   The current element has been removed from this sequence. and now
+	 *   there is no current element.  The sequence will <em>not</em> be
+	 *   at the end, even if the current element had been at the end.
+	 * @exception IllegalStateException
+	 *   Indicates that there is no current element, so
+	 *   removeCurrent may not be called.
+	 **/
+	public void removeCurrent( )
+	{
+		assert _wellFormed() : "invariant wrong at start of removeCurrent()";
+
+		if(!isCurrent()) throw new IllegalStateException("no current to remove");
+
+		if(_precursor == NONE)
+		{
+			_head = next(_head);
+		}
+		else
+		{
+			setNext(_precursor, next(_cursor));
+		}
+		if(_cursor == _tail) _tail = _precursor;
+		freeSlot(_cursor);
+
+		_cursor = _precursor;
+		--_manyNodes;
+
+		assert _wellFormed() : "invariant wrong at end of removeCurrent()";
+	}
+
+	/**
+	 * Place the contents of another sequence at the end of this sequence.
+	 * @param addend
+	 *   a sequence whose contents will be placed at the end of this sequence
+	 * @precondition
+	 *   The parameter, addend, is not null.
+	 * @postcondition
+	 *   The elements from addend have been placed at the end of
+	 *   this sequence. The current element of this sequence if any,
+	 *   remains unchanged.   The addend is unchanged.
+	 *   Whether we are at the end is unchanged.
+	 * @exception NullPointerException
+	 *   Indicates that addend is null.
+	 * @exception IllegalStateException
+	 *   Indicates that this sequence or addend has been closed, or that
+	 *   there is not room for the elements of addend; this sequence is
+	 *   then unchanged.
+	 **/
+	public void addAll(OffHeapParticleSeq addend)
+	{
+		assert _wellFormed() : "invariant wrong at start of addAll";
+		assert addend._wellFormed() : "invariant of parameter wrong at start of addAll";
+		ensureOpen();
+		addend.ensureOpen();
+
+		int n = addend._manyNodes;
+		if(n == 0) return;
+		if(n > MAX_CAPACITY - _manyNodes) throw new IllegalStateException("sequence would be too large: " + ((long)_manyNodes + n) + " elements");
+
+		int last = _tail;
+		int first = NONE;
+		int p = addend._head;
+		for(int i=0; i < n; ++i)
+		{
+			// copy the slot bytes directly, then fix the link
+			int slot = newSlot(null, NONE);
+			_slots.put(slot*SLOT_SIZE, addend._slots, p*SLOT_SIZE, SLOT_SIZE);
+			p = addend.next(p);
+			setNext(slot, NONE);
+			if(first == NONE) first = slot;
+			if(_tail == NONE) _head = slot;
+			else setNext(_tail, slot);
+			_tail = slot;
+		}
+		_manyNodes += n;
+
+		if(_atEnd)
+		{
+			_precursor = _tail;
+		}
+		else if(_precursor == last && _precursor != _cursor)
+		{
+			_cursor = first;
+		}
+
+		assert _wellFormed() : "invariant wrong at end of addAll";
+		assert addend._wellFormed() : "invariant of parameter wrong at end of addAll";
+	}
+
+	/**
+	 * Move all elements to the front of the buffer, in sequence order,
+	 * and shrink the buffer to fit them.
+	 * The space of removed elements is reclaimed.
+	 * @postcondition
+	 *   The sequence and its cursor are unchanged.
+	 * @exception IllegalStateException
+	 *   Indicates that this sequence has been closed.
+	 */
+	public void compact()
+	{
+		assert _wellFormed() : "invariant wrong at start of compact()";
+		ensureOpen();
+
+		ByteBuffer compacted = allocate(Math.max(1, _manyNodes));
+		int head = NONE, tail = NONE, precursor = NONE, cursor = NONE;
+		int i = 0;
+		for(int p = _head; p != NONE; p = next(p), ++i)
+		{
+			compacted.put(i*SLOT_SIZE, _slots, p*SLOT_SIZE, SLOT_SIZE);
+			compacted.putInt(i*SLOT_SIZE + NEXT, i+1 < _manyNodes ? i+1 : NONE);
+			if(p == _precursor) precursor = i;
+			if(p == _cursor) cursor = i;
+		}
+		if(_manyNodes > 0)
+		{
+			head = 0;
+			tail = _manyNodes-1;
+		}
+
+		_slots = compacted;
+		_capacity = compacted.capacity() / SLOT_SIZE;
+		_used = _manyNodes;
+		_free = NONE;
+		_head = head;
+		_tail = tail;
+		_precursor = precursor;
+		_cursor = cursor;
+
+		assert _wellFormed() : "invariant wrong at end of compact()";
+	}
+
+	/**
+	 * Release the buffer of this sequence.
+	 * Afterwards, the sequence is empty, and adding to it is not allowed.
+	 * Closing a sequence that is already closed has no effect.
+	 */
+	@Override
+	public void close()
+	{
+		_slots = null;
+		_capacity = _used = _manyNodes = 0;
+		_free = _head = _tail = _precursor = _cursor = NONE;
+		_atEnd = true;
+
+		assert _wellFormed() : "invariant wrong at end of close()";
+	}
+
+	/**
+	 * Generate a copy of this sequence.
+	 * @param - none
+	 * @return
+	 *   The return value is a copy of this sequence (with its own buffer).
+	 *   Subsequent changes to the copy will not affect the original, nor vice versa.
+	 *   Whatever was current in the original object is now current in the clone.
+	 * @exception IllegalStateException
+	 *   Indicates that this sequence has been closed.
+	 * @exception OutOfMemoryError
+	 *   Indicates insufficient memory for creating the clone.
+	 **/
+	public OffHeapParticleSeq clone( )
+	{
+		assert _wellFormed() : "invariant wrong at start of clone()";
+		ensureOpen();
+
+		OffHeapParticleSeq result;
+
+		try
+		{
+			result = (OffHeapParticleSeq) super.clone( );
+		}
+		catch (CloneNotSupportedException e)
+		{
+			// This exception should not occur. But if it does, it would probably
+			// indicate a programming error that made super.clone unavailable.
+			throw new RuntimeException
+			("This class does not implement Cloneable");
+		}
+
+		// The slot indices stay the same, so the slots can be copied in bulk.
+		result._slots = allocate(Math.max(1, _used));
+		result._capacity = result._slots.capacity() / SLOT_SIZE;
+		result._slots.put(0, _slots, 0, _used*SLOT_SIZE);
+
+		assert _wellFormed() : "invariant wrong at end of clone()";
+		assert result._wellFormed() : "invariant wrong for result of clone()";
+		return result;
+	}
+}
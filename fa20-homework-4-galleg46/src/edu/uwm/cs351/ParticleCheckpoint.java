@@ -0,0 +1,500 @@
+package edu.uwm.cs351;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.zip.CRC32C;
+
+
+/******************************************************************************
+ * A ParticleCheckpoint is a sequence of particles saved in a memory-mapped
+ * file, so that a simulation can be restarted without reading the whole file.
+ * {@link #open(Path)} only checks the header and trailer and maps the file;
+ * the records are read (and their pages brought into memory) as the cursor
+ * reaches them.  Like {@link OffHeapParticleSeq}, {@link #getCurrent()}
+ * returns a new particle each time it is called.
+ * <p>
+ * The file is little-endian:
+ * <pre>
+ *   header (24 bytes):  int magic (the bytes "PCKP"), int version (1), long generation, long count
+ *   records:            as written by {@link ParticleSeqWriter} (48 bytes each)
+ *   trailer (16 bytes): long generation, int CRC-32C of header and records, int magic (the bytes "PEND")
+ * </pre>
+ * Each save has a generation one more than the checkpoint it replaces.
+ * The file is written beside the checkpoint, forced to the disk, and then
+ * moved over it, so a crash while saving leaves the previous checkpoint.
+ * The directory is forced after the move (where the platform allows),
+ * so that the move itself is not lost in a crash.  The new file is written
+ * through a buffer rather than mapped, so it is not mapped when it is moved.
+ * <p>
+ * Java cannot unmap a file: the mapping of an opened checkpoint is released
+ * only when it is garbage collected, even after {@link #close()}.
+ * On Windows a file that is mapped cannot be replaced, so saving over
+ * a checkpoint that has been opened may fail there with an IOException
+ * (leaving the previous checkpoint in place) until the mapping is collected.
+ * A file whose trailer does not match its header (one that was cut short,
+ * for instance) is not opened.  The checksum is compared by {@link #verify()}
+ * and {@link #toParticleSeq()}, which read every record anyway.
+ ******************************************************************************/
+public class ParticleCheckpoint implements AutoCloseable
+{
+	static final int MAGIC = 0x504B4350; // the bytes "PCKP", little-endian
+	static final int TRAILER_MAGIC = 0x444E4550; // the bytes "PEND", little-endian
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 24;
+	static final int TRAILER_SIZE = 16;
+	static final int CHUNK_RECORDS = 1 << 22; // records per mapping (192M bytes)
+
+	private static final int RECORD_SIZE = ParticleRecords.SIZE;
+
+	// The data structure:
+	private final long _generation;
+	private final int _manyNodes;
+	private final int _checksum;
+	private ByteBuffer _header; // null once closed
+	private ByteBuffer[] _chunks; // the records, CHUNK_RECORDS to a chunk; null once closed
+	private int _cursor; // index of the current record, _manyNodes if at the end
+
+
+	private static boolean _doReport = true; // used only by invariant checker
+
+	/**
+	 * Used to report an error found when checking the invariant.
+	 * By providing a string, this will help debugging the class if the invariant should fail.
+	 * @param error string to print to report the exact error found
+	 * @return false always
+	 */
+	private boolean _report(String error) {
+		if (_doReport) System.out.println("Invariant error found: " + error);
+		return false;
+	}
+
+	/**
+	 * Check the invariant.
+	 * Return false if any problem is found.
+	 * @return whether invariant is currently true
+	 */
+	private boolean _wellFormed() {
+		// Invariant:
+		// 0. a closed checkpoint has neither header nor records
+		if(_chunks == null)
+		{
+			if(_header != null) return _report("closed checkpoint still has its header");
+			return true;
+		}
+
+		// 1. the header is mapped
+		if(_header == null || _header.capacity() != HEADER_SIZE) return _report("header is not mapped");
+
+		// 2. the chunks hold all the records, little-endian
+		if(_chunks.length != (_manyNodes + CHUNK_RECORDS - 1) / CHUNK_RECORDS) return _report("wrong number of chunks");
+		for(int k=0; k < _chunks.length; ++k)
+		{
+			int records = Math.min(_manyNodes - k*CHUNK_RECORDS, CHUNK_RECORDS);
+			if(_chunks[k].order() != ByteOrder.LITTLE_ENDIAN) return _report("chunk " + k + " is not little-endian");
+			if(_chunks[k].capacity() != records*RECORD_SIZE) return _report("chunk " + k + " has the wrong size");
+		}
+
+		// 3. the cursor is a record, or at the end
+		if(_cursor < 0 || _cursor > _manyNodes) return _report("cursor is out of range: " + _cursor);
+
+		// If no problems found, then return true:
+		return true;
+	}
+
+	private ParticleCheckpoint(long generation, int count, int checksum, ByteBuffer header, ByteBuffer[] chunks)
+	{
+		_generation = generation;
+		_manyNodes = count;
+		_checksum = checksum;
+		_header = header;
+		_chunks = chunks;
+		_cursor = 0;
+		assert _wellFormed() : "invariant failed at end of constructor";
+	}
+
+	/**
+	 * Save a sequence as a checkpoint, replacing the checkpoint (if any)
+	 * in the file.  The particles are not changed, and the cursor of
+	 * the sequence is not used.  The structure of the sequence must not
+	 * change while it is being saved.
+	 * @param particles
+	 *   the sequence to save, must not be null
+	 * @param file
+	 *   the checkpoint file; "file.tmp" is used while saving, and
+	 *   removed if the save fails
+	 * @return
+	 *   the generation of the new checkpoint: one more than that of the
+	 *   checkpoint it replaced, or 1 if there was none
+	 * @exception NullPointerException
+	 *   Indicates that particles or file is null.
+	 * @exception IOException
+	 *   Indicates that the checkpoint could not be written.
+	 */
+	public static long save(ParticleSeq particles, Path file) throws IOException
+	{
+		if(particles == null) throw new NullPointerException("particles is null");
+		long generation = generationOf(file) + 1;
+		int count = particles.size();
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		CRC32C crc = new CRC32C();
+
+		try
+		{
+			try (FileChannel c = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+					StandardOpenOption.WRITE))
+			{
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+				header.putInt(MAGIC).putInt(VERSION).putLong(generation).putLong(count).flip();
+				crc.update(header.duplicate());
+				writeFully(c, header, 0);
+
+				Iterator<Particle> it = particles.iterator();
+				int batch = Math.max(1, Math.min(count, ParticleSeqWriter.BUFFER_RECORDS));
+				ByteBuffer records = ByteBuffer.allocateDirect(batch*RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+				for(int first = 0; first < count; first += batch)
+				{
+					int n = Math.min(count - first, batch);
+					for(int i=0; i < n; ++i)
+					{
+						ParticleRecords.put(records, i*RECORD_SIZE, it.next());
+					}
+					records.limit(n*RECORD_SIZE);
+					crc.update(records.duplicate());
+					writeFully(c, records, offset(first));
+					records.clear();
+				}
+
+				ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+				trailer.putLong(generation).putInt((int)crc.getValue()).putInt(TRAILER_MAGIC).flip();
+				writeFully(c, trailer, offset(count));
+				c.force(true);
+			}
+
+			try
+			{
+				Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			}
+			catch (AtomicMoveNotSupportedException e)
+			{
+				Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		catch (IOException | RuntimeException e)
+		{
+			// don't leave a partial file beside the checkpoint
+			try
+			{
+				Files.deleteIfExists(temp);
+			}
+			catch (IOException ex)
+			{
+				e.addSuppressed(ex);
+			}
+			throw e;
+		}
+		forceDirectory(file);
+		return generation;
+	}
+
+	/**
+	 * Open a checkpoint.  Only the header and trailer are read.
+	 * @param file
+	 *   the checkpoint file
+	 * @return
+	 *   the checkpoint, with the first particle current
+	 * @exception IOException
+	 *   Indicates that the file could not be read, or does not hold
+	 *   a complete checkpoint of a known version.
+	 */
+	public static ParticleCheckpoint open(Path file) throws IOException
+	{
+		try (FileChannel c = FileChannel.open(file, StandardOpenOption.READ))
+		{
+			long size = c.size();
+			if(size < HEADER_SIZE + TRAILER_SIZE) throw new EOFException("checkpoint is cut short");
+
+			ByteBuffer header = c.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			int magic = header.getInt(0), version = header.getInt(4);
+			long generation = header.getLong(8), count = header.getLong(16);
+			if(magic != MAGIC) throw new IOException("not a particle checkpoint");
+			if(version != VERSION) throw new IOException("unknown version " + version);
+			if(count < 0 || count > Integer.MAX_VALUE) throw new IOException("bad count " + count);
+			if(size < offset((int)count) + TRAILER_SIZE) throw new EOFException("checkpoint is cut short");
+			if(size > offset((int)count) + TRAILER_SIZE) throw new IOException("checkpoint has extra bytes");
+
+			ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			while(trailer.hasRemaining())
+			{
+				if(c.read(trailer, size - trailer.remaining()) < 0) throw new EOFException("checkpoint is cut short");
+			}
+			if(trailer.getInt(12) != TRAILER_MAGIC || trailer.getLong(0) != generation)
+				throw new IOException("checkpoint was not completed");
+
+			// Mapping does not read the file: pages are read when first used.
+			ByteBuffer[] chunks = new ByteBuffer[(int)((count + CHUNK_RECORDS - 1) / CHUNK_RECORDS)];
+			for(int k=0; k < chunks.length; ++k)
+			{
+				int first = k*CHUNK_RECORDS;
+				int records = Math.min((int)count - first, CHUNK_RECORDS);
+				chunks[k] = c.map(FileChannel.MapMode.READ_ONLY, offset(first), (long)records*RECORD_SIZE)
+						.order(ByteOrder.LITTLE_ENDIAN);
+			}
+			return new ParticleCheckpoint(generation, (int)count, trailer.getInt(8), header, chunks);
+		}
+	}
+
+	/**
+	 * Return the generation of the checkpoint in a file,
+	 * or 0 if there is no file or it does not hold a checkpoint.
+	 */
+	private static long generationOf(Path file) throws IOException
+	{
+		if(!Files.exists(file)) return 0;
+		try (FileChannel c = FileChannel.open(file, StandardOpenOption.READ))
+		{
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			while(header.hasRemaining())
+			{
+				if(c.read(header) < 0) return 0;
+			}
+			if(header.getInt(0) != MAGIC || header.getInt(4) != VERSION) return 0;
+			return Math.max(0, header.getLong(8));
+		}
+	}
+
+	/**
+	 * Return the position in the file of a record.
+	 */
+	private static long offset(int index)
+	{
+		return HEADER_SIZE + (long)index*RECORD_SIZE;
+	}
+
+	/**
+	 * Force the directory holding a file to the disk, so that a file
+	 * just moved there stays there after a crash.  Some platforms
+	 * (Windows, for one) cannot open a directory; there the file system
+	 * is left to record the move itself.
+	 */
+	private static void forceDirectory(Path file) throws IOException
+	{
+		Path dir = file.toAbsolutePath().getParent();
+		if(dir == null) return;
+		FileChannel c;
+		try
+		{
+			c = FileChannel.open(dir, StandardOpenOption.READ);
+		}
+		catch (IOException | UnsupportedOperationException e)
+		{
+			return;
+		}
+		try
+		{
+			c.force(true);
+		}
+		finally
+		{
+			c.close();
+		}
+	}
+
+	private static void writeFully(FileChannel c, ByteBuffer b, long position) throws IOException
+	{
+		while(b.hasRemaining())
+		{
+			position += c.write(b, position);
+		}
+	}
+
+	private void ensureOpen()
+	{
+		if(_chunks == null) throw new IllegalStateException("checkpoint is closed");
+	}
+
+	/**
+	 * Return the generation of this checkpoint.
+	 * @return the generation of this checkpoint
+	 */
+	public long getGeneration()
+	{
+		assert _wellFormed() : "invariant wrong at start of getGeneration()";
+		return _generation;
+	}
+
+	/**
+	 * Determine the number of elements in this checkpoint.
+	 * @param - none
+	 * @return
+	 *   the number of elements in this checkpoint
+	 **/
+	public int size( )
+	{
+		assert _wellFormed() : "invariant wrong at start of size()";
+		return _manyNodes;
+	}
+
+	/**
+	 * Return true if we are at the end of the checkpoint.
+	 * @return true if there is no current element
+	 */
+	public boolean atEnd()
+	{
+		assert _wellFormed() : "invariant wrong at start of atEnd()";
+		return _cursor == _manyNodes;
+	}
+
+	/**
+	 * Set the current element at the front of this checkpoint.
+	 * @param - none
+	 * @postcondition
+	 *   The front element of this checkpoint is now the current element, but
+	 *   if it has no elements at all, then we are at the end.
+	 **/
+	public void start( )
+	{
+		assert _wellFormed() : "invariant wrong at start of start()";
+		_cursor = 0;
+		assert _wellFormed() : "invariant wrong at end of start()";
+	}
+
+	/**
+	 * Determine whether there is a current element.
+	 * @param - none
+	 * @return
+	 *   true (there is a current element) or false (there is no current element at the moment)
+	 **/
+	public boolean isCurrent( )
+	{
+		assert _wellFormed() : "invariant wrong at start of isCurrent()";
+		return _cursor < _manyNodes;
+	}
+
+	/**
+	 * Accessor method to get the current element of this checkpoint.
+	 * @param - none
+	 * @precondition
+	 *   isCurrent() returns true.
+	 * @return
+	 *   a new particle with the state of the current element
+	 *   (or null if the current element is null)
+	 * @exception IllegalStateException
+	 *   Indicates that there is no current element, or that
+	 *   this checkpoint has been closed.
+	 **/
+	public Particle getCurrent( )
+	{
+		assert _wellFormed() : "invariant wrong at start of getCurrent()";
+		ensureOpen();
+		if(_cursor == _manyNodes) throw new IllegalStateException("no current element");
+
+		ByteBuffer b = _chunks[_cursor / CHUNK_RECORDS];
+		return ParticleRecords.get(b, (_cursor % CHUNK_RECORDS) * RECORD_SIZE);
+	}
+
+	/**
+	 * Move forward, so that the current element is now the next element in
+	 * this checkpoint.
+	 * @param - none
+	 * @precondition
+	 *   atEnd() returns false.
+	 * @postcondition
+	 *   The next element (if any) is current, otherwise we are at the end.
+	 * @exception IllegalStateException
+	 *   Indicates that we are at the end so
+	 *   advance may not be called.
+	 **/
+	public void advance( )
+	{
+		assert _wellFormed() : "invariant wrong at start of advance()";
+		if(_cursor == _manyNodes) throw new IllegalStateException("advancing past the end");
+		++_cursor;
+		assert _wellFormed() : "invariant wrong at end of advance()";
+	}
+
+	/**
+	 * Check the checksum of this checkpoint.  Every record is read.
+	 * @exception IOException
+	 *   Indicates that the checksum does not match the header and records.
+	 * @exception IllegalStateException
+	 *   Indicates that this checkpoint has been closed.
+	 */
+	public void verify() throws IOException
+	{
+		assert _wellFormed() : "invariant wrong at start of verify()";
+		ensureOpen();
+
+		CRC32C crc = new CRC32C();
+		crc.update(_header.duplicate().clear());
+		for(ByteBuffer chunk : _chunks)
+		{
+			crc.update(chunk.duplicate().clear());
+		}
+		if((int)crc.getValue() != _checksum) throw new IOException("checkpoint checksum does not match");
+	}
+
+	/**
+	 * Read every element of this checkpoint into a new sequence,
+	 * checking the checksum as they are read.  The cursor is not used.
+	 * @return
+	 *   a new sequence with the elements of this checkpoint, with the first element current
+	 * @exception IOException
+	 *   Indicates that the checksum does not match the header and records.
+	 * @exception IllegalStateException
+	 *   Indicates that this checkpoint has been closed.
+	 */
+	public ParticleSeq toParticleSeq() throws IOException
+	{
+		assert _wellFormed() : "invariant wrong at start of toParticleSeq()";
+		ensureOpen();
+
+		CRC32C crc = new CRC32C();
+		crc.update(_header.duplicate().clear());
+		ParticleSeq result = new ParticleSeq();
+		Particle[] batch = new Particle[Math.min(_manyNodes, ParticleSeqWriter.BUFFER_RECORDS)];
+		for(ByteBuffer chunk : _chunks)
+		{
+			int records = chunk.capacity() / RECORD_SIZE;
+			for(int first = 0; first < records; first += batch.length)
+			{
+				int n = Math.min(records - first, batch.length);
+				for(int i=0; i < n; ++i)
+				{
+					batch[i] = ParticleRecords.get(chunk, (first + i) * RECORD_SIZE);
+				}
+				crc.update(chunk.duplicate().limit((first + n) * RECORD_SIZE).position(first * RECORD_SIZE));
+				result.insertAllAfterCursor(n == batch.length ? batch : Arrays.copyOf(batch, n));
+			}
+		}
+		if((int)crc.getValue() != _checksum) throw new IOException("checkpoint checksum does not match");
+		result.start();
+
+		assert _wellFormed() : "invariant wrong at end of toParticleSeq()";
+		return result;
+	}
+
+	/**
+	 * Release the mapping of this checkpoint.
+	 * Afterwards, its elements may not be read.
+	 * Closing a checkpoint that is already closed has no effect.
+	 * (The mapping itself is released when it is garbage collected;
+	 * until then, on Windows, the file cannot be replaced or deleted.)
+	 */
+	@Override
+	public void close()
+	{
+		_header = null;
+		_chunks = null;
+		assert _wellFormed() : "invariant wrong at end of close()";
+	}
+}
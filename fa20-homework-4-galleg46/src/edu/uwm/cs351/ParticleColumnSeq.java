@@ -0,0 +1,565 @@
+package edu.uwm.cs351;
+
+import java.util.Arrays;
+
+
+/******************************************************************************
+ * A ParticleColumnSeq is a sequence of Particles with the same cursor
+ * behavior as {@link ParticleSeq}, but instead of a chain of nodes,
+ * the state of the particles is kept in parallel arrays of primitives
+ * (x, y, dx, dy, mass and ARGB color), one array per "column".
+ * The state of the current element can be read without any objects
+ * with {@link #getCurrentX()} and the other primitive accessors.
+ * <p>
+ * No particle objects are kept: adding a particle records its state,
+ * and, like {@link OffHeapParticleSeq}, {@link #getCurrent()} returns
+ * a new particle each time it is called.  Changes to a particle after it
+ * is added, or to a particle returned by getCurrent, are not reflected
+ * in the sequence.
+ * <p>
+ * Adding and removing at the cursor shifts the elements after the cursor,
+ * so it takes time proportional to the number of elements after the cursor.
+ * Adding at the end of the sequence takes amortized constant time.
+ ******************************************************************************/
+public class ParticleColumnSeq implements ParticleSequence<ParticleColumnSeq>
+{
+	private static final int INITIAL_CAPACITY = 1;
+
+	// The data structure:
+	private int _manyItems;
+	private double[] _x, _y, _dx, _dy, _mass;
+	private int[] _color;
+	private boolean[] _nulls; // whether each element is null
+	private int _precursor; // index of the precursor, -1 if none
+	private boolean _isCurrent;
+	private boolean _atEnd;
+
+
+	private static boolean _doReport = true; // used only by invariant checker
+
+	/**
+	 * Used to report an error found when checking the invariant.
+	 * By providing a string, this will help debugging the class if the invariant should fail.
+	 * @param error string to print to report the exact error found
+	 * @return false always
+	 */
+	private boolean _report(String error) {
+		if (_doReport) System.out.println("Invariant error found: " + error);
+		return false;
+	}
+
+	/**
+	 * Check the invariant.
+	 * Return false if any problem is found.
+	 * @return whether invariant is currently true
+	 */
+	private boolean _wellFormed() {
+		// Invariant:
+		// 1. all columns exist and have the same length
+		if(_x == null || _y == null || _dx == null || _dy == null ||
+				_mass == null || _color == null || _nulls == null) return _report("a column is null");
+		int capacity = _x.length;
+		if(_y.length != capacity || _dx.length != capacity || _dy.length != capacity ||
+				_mass.length != capacity || _color.length != capacity || _nulls.length != capacity)
+			return _report("columns have different lengths");
+
+		// 2. manyItems is between 0 and the capacity
+		if(_manyItems < 0 || _manyItems > capacity) return _report("manyItems is out of range: " + _manyItems);
+
+		// 3. precursor is -1 or the index of an element
+		if(_precursor < -1 || _precursor >= _manyItems) return _report("precursor is out of range: " + _precursor);
+
+		// 4. if there is a current element, it is after the precursor
+		if(_isCurrent && _precursor+1 >= _manyItems) return _report("current element is past the end");
+
+		// 5. if _atEnd is true then
+		//        there is no current element
+		//        the precursor is the last element (-1 if empty)
+		if(_atEnd)
+		{
+			if(_isCurrent) return _report("we are at the end, there should be no current element");
+			if(_precursor != _manyItems-1) return _report("at the end, but precursor is not the last element");
+		}
+
+		// If no problems found, then return true:
+		return true;
+	}
+
+	/**
+	 * Create an empty sequence of particles.
+	 * @param - none
+	 * @postcondition
+	 *   This sequence of particles is empty
+	 **/
+	public ParticleColumnSeq( )
+	{
+		_manyItems = 0;
+		allocate(INITIAL_CAPACITY);
+		_precursor = -1;
+		_isCurrent = false;
+		_atEnd = true;
+
+		assert _wellFormed() : "invariant failed at end of constructor";
+	}
+
+	private void allocate(int capacity)
+	{
+		_x = new double[capacity];
+		_y = new double[capacity];
+		_dx = new double[capacity];
+		_dy = new double[capacity];
+		_mass = new double[capacity];
+		_color = new int[capacity];
+		_nulls = new boolean[capacity];
+	}
+
+	/**
+	 * Make sure that the columns have room for at least the given number of elements.
+	 * @param minimumCapacity number of elements needed
+	 */
+	private void ensureCapacity(int minimumCapacity)
+	{
+		if(_x.length >= minimumCapacity) return;
+
+		int capacity = Math.max(minimumCapacity, _x.length*2);
+		_x = Arrays.copyOf(_x, capacity);
+		_y = Arrays.copyOf(_y, capacity);
+		_dx = Arrays.copyOf(_dx, capacity);
+		_dy = Arrays.copyOf(_dy, capacity);
+		_mass = Arrays.copyOf(_mass, capacity);
+		_color = Arrays.copyOf(_color, capacity);
+		_nulls = Arrays.copyOf(_nulls, capacity);
+	}
+
+	/**
+	 * Move the elements from index i onward by the given amount
+	 * (positive to open a gap, negative to close one).
+	 */
+	private void shift(int i, int amount)
+	{
+		int n = _manyItems - i;
+		System.arraycopy(_x, i, _x, i+amount, n);
+		System.arraycopy(_y, i, _y, i+amount, n);
+		System.arraycopy(_dx, i, _dx, i+amount, n);
+		System.arraycopy(_dy, i, _dy, i+amount, n);
+		System.arraycopy(_mass, i, _mass, i+amount, n);
+		System.arraycopy(_color, i, _color, i+amount, n);
+		System.arraycopy(_nulls, i, _nulls, i+amount, n);
+	}
+
+	/**
+	 * Open a gap at index i and store the given state there.
+	 */
+	private void insert(int i, double x, double y, double dx, double dy, double mass, int argb, boolean isNull)
+	{
+		ensureCapacity(_manyItems+1);
+		shift(i, 1);
+		_x[i] = x;
+		_y[i] = y;
+		_dx[i] = dx;
+		_dy[i] = dy;
+		_mass[i] = mass;
+		_color[i] = argb;
+		_nulls[i] = isNull;
+		++_manyItems;
+	}
+
+	/**
+	 * Open a gap at index i and store the given particle there.
+	 */
+	private void insert(int i, Particle p)
+	{
+		if(p == null)
+		{
+			insert(i, 0, 0, 0, 0, 0, 0, true);
+		}
+		else
+		{
+			Point pos = p.getPosition();
+			Vector vel = p.getVelocity();
+			insert(i, pos.x(), pos.y(), vel.dx(), vel.dy(), Particles.mass(p), Particles.argb(p), false);
+		}
+	}
+
+	/**
+	 * Determine the number of elements in this sequence.
+	 * @param - none
+	 * @return
+	 *   the number of elements in this sequence
+	 **/
+	public int size( )
+	{
+		assert _wellFormed() : "invariant wrong at start of size()";
+		return _manyItems;
+	}
+
+	/**
+	 * Return true if we are at the end of the sequence.
+	 * @precondition true
+	 * @return true if at the end of the sequence
+	 * @see ParticleSeq#atEnd()
+	 */
+	public boolean atEnd() {
+		assert _wellFormed() : "Invariant failed at start of atEnd";
+
+		return _atEnd;
+	}
+
+	/**
+	 * Set the current element at the front of this sequence.
+	 * @param - none
+	 * @postcondition
+	 *   The front element of this sequence is now the current element, but
+	 *   if this sequence has no elements at all, then there is no current
+	 *   element and we are at the end.
+	 **/
+	public void start( )
+	{
+		assert _wellFormed() : "invariant wrong at start of start()";
+
+		_precursor = -1;
+		_isCurrent = _manyItems > 0;
+		_atEnd = !_isCurrent;
+
+		assert _wellFormed() : "invariant wrong at end of start()";
+	}
+
+	/**
+	 * Accessor method to determine whether this sequence has a specified
+	 * current element that can be retrieved with the
+	 * getCurrent method.
+	 * @param - none
+	 * @return
+	 *   true (there is a current element) or false (there is no current element at the moment)
+	 **/
+	public boolean isCurrent( )
+	{
+		assert _wellFormed() : "invariant wrong at start of isCurrent()";
+
+		return _isCurrent;
+	}
+
+	/**
+	 * Accessor method to get the current element of this sequence.
+	 * A new particle is created from the columns each time.
+	 * @param - none
+	 * @precondition
+	 *   isCurrent() returns true.
+	 * @return
+	 *   the current element of this sequence
+	 * @exception IllegalStateException
+	 *   Indicates that there is no current element, so
+	 *   getCurrent may not be called.
+	 **/
+	public Particle getCurrent( )
+	{
+		assert _wellFormed() : "invariant wrong at start of getCurrent()";
+
+		int i = current();
+		if(_nulls[i]) return null;
+		return Particles.create(_x[i], _y[i], _dx[i], _dy[i], _mass[i], _color[i]);
+	}
+
+	/**
+	 * Return the index of the current element.
+	 * @exception IllegalStateException
+	 *   Indicates that there is no current element.
+	 */
+	private int current()
+	{
+		if(!_isCurrent) throw new IllegalStateException("no current element");
+		return _precursor+1;
+	}
+
+	/**
+	 * Get the x coordinate of the current element, as recorded in the columns.
+	 * The state of a null element is all zero.
+	 * @return the x coordinate of the current element
+	 * @exception IllegalStateException
+	 *   Indicates that there is no current element.
+	 */
+	public double getCurrentX()
+	{
+		assert _wellFormed() : "invariant wrong at start of getCurrentX()";
+		return _x[current()];
+	}
+
+	/**
+	 * Get the y coordinate of the current element, as recorded in the columns.
+	 * @return the y coordinate of the current element
+	 * @exception IllegalStateException
+	 *   Indicates that there is no current element.
+	 * @see #getCurrentX()
+	 */
+	public double getCurrentY()
+	{
+		assert _wellFormed() : "invariant wrong at start of getCurrentY()";
+		return _y[current()];
+	}
+
+	/**
+	 * Get the x component of the velocity of the current element, as recorded in the columns.
+	 * @return the x velocity of the current element
+	 * @exception IllegalStateException
+	 *   Indicates that there is no current element.
+	 * @see #getCurrentX()
+	 */
+	public double getCurrentDX()
+	{
+		assert _wellFormed() : "invariant wrong at start of getCurrentDX()";
+		return _dx[current()];
+	}
+
+	/**
+	 * Get the y component of the velocity of the current element, as recorded in the columns.
+	 * @return the y velocity of the current element
+	 * @exception IllegalStateException
+	 *   Indicates that there is no current element.
+	 * @see #getCurrentX()
+	 */
+	public double getCurrentDY()
+	{
+		assert _wellFormed() : "invariant wrong at start of getCurrentDY()";
+		return _dy[current()];
+	}
+
+	/**
+	 * Get the mass of the current element.
+	 * @return the mass of the current element
+	 * @exception IllegalStateException
+	 *   Indicates that there is no current element.
+	 * @see #getCurrentX()
+	 */
+	public double getCurrentMass()
+	{
+		assert _wellFormed() : "invariant wrong at start of getCurrentMass()";
+		return _mass[current()];
+	}
+
+	/**
+	 * Get the color of the current element, packed as ARGB.
+	 * @return the color of the current element
+	 * @exception IllegalStateException
+	 *   Indicates that there is no current element.
+	 * @see #getCurrentX()
+	 */
+	public int getCurrentColor()
+	{
+		assert _wellFormed() : "invariant wrong at start of getCurrentColor()";
+		return _color[current()];
+	}
+
+	/**
+	 * Move forward, so that the current element is now the next element in
+	 * this sequence.
+	 * @param - none
+	 * @precondition
+	 *   atEnd() returns false.
+	 * @postcondition
+	 *   If the current element (even if it was removed)
+	 *   was already the last element of this sequence,
+	 *   then there is no longer any current element.
+	 *   Otherwise, the new current element is the element immediately after the
+	 *   previous current element (whether or not it has been removed).
+	 * @exception IllegalStateException
+	 *   Indicates that we are at the end so
+	 *   advance may not be called.
+	 **/
+	public void advance( )
+	{
+		assert _wellFormed() : "invariant wrong at start of advance()";
+
+		if(_atEnd) throw new IllegalStateException("advancing past the end");
+
+		if(_isCurrent) ++_precursor;
+		_isCurrent = _precursor+1 < _manyItems;
+		_atEnd = !_isCurrent;
+
+		assert _wellFormed() : "invariant wrong at end of advance()";
+	}
+
+	/**
+	 * Add a new element to this sequence, before the current element (if any).
+	 * @param element
+	 *   the new element that is being added, it is allowed to be null
+	 * @postcondition
+	 *   The element has been added to this sequence. If there was
+	 *   a current element, then the new element is placed before the current
+	 *   element. If there was no current element, then the new element is placed
+	 *   where the removed element was, or at the end. In all cases, the new element becomes the
+	 *   new current element of this sequence.
+	 **/
+	public void addBefore(Particle element)
+	{
+		assert _wellFormed() : "invariant wrong at start of addBefore";
+
+		insert(_precursor+1, element);
+		_isCurrent = true;
+		_atEnd = false;
+
+		assert _wellFormed() : "invariant wrong at end of addBefore";
+	}
+
+	/**
+	 * Add a new element to this sequence, before the current element (if any).
+	 * The element is given by its state, so no particle object is needed.
+	 * @see #addBefore(Particle)
+	 **/
+	public void addBefore(double x, double y, double dx, double dy, double mass, int argb)
+	{
+		assert _wellFormed() : "invariant wrong at start of addBefore";
+
+		insert(_precursor+1, x, y, dx, dy, mass, argb, false);
+		_isCurrent = true;
+		_atEnd = false;
+
+		assert _wellFormed() : "invariant wrong at end of addBefore";
+	}
+
+	/**
+	 * Add a new element to this sequence, after the current element if any.
+	 * @param element
+	 *   the new element that is being added, may be null
+	 * @postcondition
+	 *   The element has been added to this sequence. If there was
+	 *   a current element, then the new element is placed after the current
+	 *   element. If there was no current element, then the new element is placed
+	 *   where the element was, or at the end of the sequence.
+	 *   In all cases, the new element becomes the
+	 *   new current element of this sequence.
+	 **/
+	public void addAfter(Particle element) {
+		assert _wellFormed() : "invariant wrong at start of addAfter";
+
+		if(_isCurrent) ++_precursor;
+		insert(_precursor+1, element);
+		_isCurrent = true;
+		_atEnd = false;
+
+		assert _wellFormed() : "invariant wrong at end of addAfter";
+	}
+
+	/**
+	 * Add a new element to this sequence, after the current element if any.
+	 * The element is given by its state, so no particle object is needed.
+	 * @see #addAfter(Particle)
+	 **/
+	public void addAfter(double x, double y, double dx, double dy, double mass, int argb) {
+		assert _wellFormed() : "invariant wrong at start of addAfter";
+
+		if(_isCurrent) ++_precursor;
+		insert(_precursor+1, x, y, dx, dy, mass, argb, false);
+		_isCurrent = true;
+		_atEnd = false;
+
+		assert _wellFormed() : "invariant wrong at end of addAfter";
+	}
+
+	/**
+	 * Remove the current element from this sequence.
+	 * @param - none
+	 * @precondition
+	 *   isCurrent() returns true.
+	 * @postcondition
+	 *   The current element has been removed from this sequence. and now
+	 *   there is no current element.  The sequence will <em>not</em> be
+	 *   at the end, even if the current element had been at the end.
+	 * @exception IllegalStateException
+	 *   Indicates that there is no current element, so
+	 *   removeCurrent may not be called.
+	 **/
+	public void removeCurrent( )
+	{
+		assert _wellFormed() : "invariant wrong at start of removeCurrent()";
+
+		if(!_isCurrent) throw new IllegalStateException("no current to remove");
+
+		int i = _precursor+1;
+		shift(i+1, -1);
+		--_manyItems;
+		_isCurrent = false;
+
+		assert _wellFormed() : "invariant wrong at end of removeCurrent()";
+	}
+
+	/**
+	 * Place the contents of another sequence at the end of this sequence.
+	 * @param addend
+	 *   a sequence whose contents will be placed at the end of this sequence
+	 * @precondition
+	 *   The parameter, addend, is not null.
+	 * @postcondition
+	 *   The elements from addend have been placed at the end of
+	 *   this sequence. The current element of this sequence if any,
+	 *   remains unchanged.   The addend is unchanged.
+	 *   Whether we are at the end is unchanged.
+	 * @exception NullPointerException
+	 *   Indicates that addend is null.
+	 **/
+	public void addAll(ParticleColumnSeq addend)
+	{
+		assert _wellFormed() : "invariant wrong at start of addAll";
+		assert addend._wellFormed() : "invariant of parameter wrong at start of addAll";
+
+		int n = addend._manyItems;
+		if(n == 0) return;
+
+		ensureCapacity(_manyItems + n);
+		System.arraycopy(addend._x, 0, _x, _manyItems, n);
+		System.arraycopy(addend._y, 0, _y, _manyItems, n);
+		System.arraycopy(addend._dx, 0, _dx, _manyItems, n);
+		System.arraycopy(addend._dy, 0, _dy, _manyItems, n);
+		System.arraycopy(addend._mass, 0, _mass, _manyItems, n);
+		System.arraycopy(addend._color, 0, _color, _manyItems, n);
+		System.arraycopy(addend._nulls, 0, _nulls, _manyItems, n);
+		_manyItems += n;
+
+		if(_atEnd) _precursor = _manyItems-1;
+
+		assert _wellFormed() : "invariant wrong at end of addAll";
+		assert addend._wellFormed() : "invariant of parameter wrong at end of addAll";
+	}
+
+
+	/**
+	 * Generate a copy of this sequence.
+	 * @param - none
+	 * @return
+	 *   The return value is a copy of this sequence. Subsequent changes to the
+	 *   copy will not affect the original, nor vice versa.
+	 *   Whatever was current in the original object is now current in the clone.
+	 * @exception OutOfMemoryError
+	 *   Indicates insufficient memory for creating the clone.
+	 **/
+	public ParticleColumnSeq clone( )
+	{
+		assert _wellFormed() : "invariant wrong at start of clone()";
+
+		ParticleColumnSeq result;
+
+		try
+		{
+			result = (ParticleColumnSeq) super.clone( );
+		}
+		catch (CloneNotSupportedException e)
+		{
+			// This exception should not occur. But if it does, it would probably
+			// indicate a programming error that made super.clone unavailable.
+			throw new RuntimeException
+			("This class does not implement Cloneable");
+		}
+
+		int capacity = Math.max(_manyItems, INITIAL_CAPACITY);
+		result._x = Arrays.copyOf(_x, capacity);
+		result._y = Arrays.copyOf(_y, capacity);
+		result._dx = Arrays.copyOf(_dx, capacity);
+		result._dy = Arrays.copyOf(_dy, capacity);
+		result._mass = Arrays.copyOf(_mass, capacity);
+		result._color = Arrays.copyOf(_color, capacity);
+		result._nulls = Arrays.copyOf(_nulls, capacity);
+
+		assert _wellFormed() : "invariant wrong at end of clone()";
+		assert result._wellFormed() : "invariant wrong for result of clone()";
+		return result;
+	}
+}
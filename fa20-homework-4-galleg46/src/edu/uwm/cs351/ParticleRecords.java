@@ -0,0 +1,114 @@
+package edu.uwm.cs351;
+
+import java.awt.Color;
+import java.nio.ByteBuffer;
+
+
+/******************************************************************************
+ * Reading and writing the fixed-size record of a particle used by
+ * {@link ParticleSeqWriter}, {@link ParticleSeqReader} and
+ * {@link ParticleCheckpoint}:
+ * <pre>
+ *   record (48 bytes):  double x, y, dx, dy, mass; int argb; int flags
+ * </pre>
+ * The only flag is {@link #NULL_FLAG}, for a null element (whose other
+ * fields are zero).  Records are read and written at an absolute index,
+ * so the position of the buffer is not used or changed.  The buffer
+ * should be little-endian.
+ * This class is not meant to be used outside of this package.
+ ******************************************************************************/
+final class ParticleRecords
+{
+	static final int SIZE = 48;
+	static final int NULL_FLAG = 1;
+
+	// Layout of a record:
+	private static final int X = 0;
+	private static final int Y = 8;
+	private static final int DX = 16;
+	private static final int DY = 24;
+	private static final int MASS = 32;
+	private static final int COLOR = 40;
+	private static final int FLAGS = 44;
+
+	private ParticleRecords() {} // no instances
+
+	/**
+	 * Write the record of a particle.
+	 * @param b buffer to write into
+	 * @param base index of the record in the buffer
+	 * @param p particle to write, may be null
+	 */
+	static void put(ByteBuffer b, int base, Particle p)
+	{
+		if(p == null)
+		{
+			b.putDouble(base + X, 0);
+			b.putDouble(base + Y, 0);
+			b.putDouble(base + DX, 0);
+			b.putDouble(base + DY, 0);
+			b.putDouble(base + MASS, 0);
+			b.putInt(base + COLOR, 0);
+			b.putInt(base + FLAGS, NULL_FLAG);
+			return;
+		}
+		Point pos = p.getPosition();
+		Vector v = p.getVelocity();
+		b.putDouble(base + X, pos.x());
+		b.putDouble(base + Y, pos.y());
+		b.putDouble(base + DX, v.dx());
+		b.putDouble(base + DY, v.dy());
+		b.putDouble(base + MASS, Particles.mass(p));
+		b.putInt(base + COLOR, Particles.argb(p));
+		b.putInt(base + FLAGS, 0);
+	}
+
+	/**
+	 * Return whether a record is of a null element.
+	 * @param b buffer to read from
+	 * @param base index of the record in the buffer
+	 * @return true if the element is null
+	 */
+	static boolean isNull(ByteBuffer b, int base)
+	{
+		return (b.getInt(base + FLAGS) & NULL_FLAG) != 0;
+	}
+
+	/**
+	 * Return the color of a record, packed as ARGB.
+	 * @param b buffer to read from
+	 * @param base index of the record in the buffer
+	 * @return the color of the element
+	 */
+	static int argb(ByteBuffer b, int base)
+	{
+		return b.getInt(base + COLOR);
+	}
+
+	/**
+	 * Read the particle of a record.
+	 * @param b buffer to read from
+	 * @param base index of the record in the buffer
+	 * @return a new particle, or null if the element is null
+	 */
+	static Particle get(ByteBuffer b, int base)
+	{
+		if(isNull(b, base)) return null;
+		return get(b, base, new Color(argb(b, base), true));
+	}
+
+	/**
+	 * Read the particle of a record that is not null, with a color
+	 * given by the caller (so that one color may be shared by many particles).
+	 * @param b buffer to read from
+	 * @param base index of the record in the buffer
+	 * @param color the color of the record, as given by {@link #argb}
+	 * @return a new particle
+	 */
+	static Particle get(ByteBuffer b, int base, Color color)
+	{
+		return new Particle(new Point(b.getDouble(base + X), b.getDouble(base + Y)),
+				new Vector(b.getDouble(base + DX), b.getDouble(base + DY)),
+				b.getDouble(base + MASS), color);
+	}
+}
@@ -4,6 +4,21 @@
 package edu.uwm.cs351;
 
 import java.awt.Color;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.ConcurrentModificationException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import junit.framework.TestCase;
 
@@ -14,9 +29,26 @@ import junit.framework.TestCase;
  * The sequence can have a special "current element," which is specified and 
  * accessed through four methods
  * (start, getCurrent, advance and isCurrent).
+ * <p>
+ * Cloning takes constant time: the clone shares its nodes with the original.
+ * A sequence only changes nodes that it owns, so before a change, the nodes
+ * from the head up to the place of the change are copied if they are shared.
+ * <p>
+ * Besides the built-in cursor, any number of detached {@link Cursor}s
+ * may be used.  A change through a detached cursor adjusts the built-in
+ * cursor, but any other change makes the other detached cursors stale:
+ * using a stale cursor (other than to restart it) throws
+ * {@link ConcurrentModificationException}.
+ * <p>
+ * The elements can also be read with an iterator or a (parallel) stream,
+ * which do not use the built-in cursor.
+ * <p>
+ * The first call to {@link #seek(int)} builds an indexable skip list over the
+ * nodes, after which seeking and changing the sequence take O(log n) expected time.
+ * (A clone starts without an index.)
  *
  ******************************************************************************/
-public class ParticleSeq implements Cloneable
+public class ParticleSeq implements Cloneable, Iterable<Particle>
 {
 	// Declare the private static Node class.
 	// It should have a constructor but no methods.
@@ -26,6 +58,7 @@ public class ParticleSeq implements Cloneable
 	{
 		Particle data;
 		Node next;
+		Object owner; // the sequence owner that may change this node
 		
 		Node(Particle p, Node n)
 		{
@@ -34,33 +67,145 @@ public class ParticleSeq implements Cloneable
 		}
 	}
 
+	// An entry of the skip list used to find positions quickly.
+	// Each level of the skip list starts with a header entry (with a null node),
+	// and each entry above the first level is over the entry for the same node.
+	private static class Index
+	{
+		Node node;
+		Index right, down;
+		int width; // distance to the position of right (or just past the end)
+		
+		Index(Node n, Index r, Index d, int w)
+		{
+			node = n;
+			right = r;
+			down = d;
+			width = w;
+		}
+	}
+	
+	private static final int MAX_LEVEL = 32;
+
 	// The data structure:
 	private int _manyNodes;
-	private Node _head;
+	private Node _head, _tail;
 	private Node _precursor, _cursor;
 	private boolean _atEnd;
+	private int _position; // the number of nodes up to and including the precursor
+	private Object _owner; // nodes with this owner are not shared
+	private int _modCount; // number of changes to the list, used by detached cursors
+	private int _checkedModCount; // the value of _modCount at the last full check
+	
+	// Nodes removed from the list, kept for reuse (linked through next):
+	private Node _pool;
+	private int _poolSize, _poolCapacity;
+	
+	// The positional index, null until the first seek:
+	private Index _top; // header of the highest level
+	private int _height; // number of levels
+	private Index[] _preds; // scratch space: the entries before a position at each level
+	private int[] _predPos; // and their positions
 	
 	
 	private static boolean _doReport = true; // used only by invariant checker
 	
+	// If true, assertions only check the parts of the invariant near the
+	// cursor and the ends of the list, in constant time.
+	private static boolean _localChecking = Boolean.getBoolean("edu.uwm.cs351.ParticleSeq.localChecking");
+	// When local checking is on, this decides when to check the whole invariant anyway.
+	private static CheckPolicy _checkPolicy = CheckPolicy.never();
+	private static CheckMonitor _checkMonitor = new CheckMonitor() {
+		@Override
+		public void checked(long nanos, boolean ok) { }
+		
+		@Override
+		public void violation(String error) {
+			System.out.println("Invariant error found: " + error);
+		}
+	};
+	
 	/**
 	 * Used to report an error found when checking the invariant.
 	 * By providing a string, this will help debugging the class if the invariant should fail.
-	 * @param error string to print to report the exact error found
+	 * @param error string to pass to the check monitor to report the exact error found
 	 * @return false always
 	 */
 	private boolean _report(String error) {
-		if (_doReport) System.out.println("Invariant error found: " + error);
+		if (_doReport) _checkMonitor.violation(error);
 		return false;
 	}
 
 	/**
-	 * Check the invariant. 
+	 * Check the invariant, or only the local part of it if local checking is on
+	 * and the check policy does not call for a full check.
 	 * Return false if any problem is found.  Returning the result
 	 * of {@link #_report(String)} will make it easier to debug invariant problems.
 	 * @return whether invariant is currently true
 	 */
 	private boolean _wellFormed() {
+		if(_localChecking && !_checkPolicy.shouldCheck(_modCount - _checkedModCount)) return _locallyWellFormed();
+		
+		long start = System.nanoTime();
+		boolean ok = _fullyWellFormed();
+		long nanos = System.nanoTime() - start;
+		_checkedModCount = _modCount;
+		_checkPolicy.checked(nanos);
+		_checkMonitor.checked(nanos, ok);
+		return ok;
+	}
+	
+	/**
+	 * Check the parts of the invariant that can be checked in constant time:
+	 * the ends of the list, the cursor and precursor (and the nodes next to them),
+	 * the position, and the ends of the pool and index.
+	 * @return whether no problem was found
+	 */
+	private boolean _locallyWellFormed() {
+		// 2. manyNodes agrees with the ends of the list
+		if(_manyNodes < 0) return _report("manyNodes is negative: " + _manyNodes);
+		if((_head == null) != (_manyNodes == 0)) return _report("head does not agree with manyNodes: " + _manyNodes);
+		if(_manyNodes == 1 && _head.next != null) return _report("only node has a next node");
+		
+		// 2a. tail is the last node
+		if((_tail == null) != (_head == null)) return _report("tail does not agree with head");
+		if(_tail != null && _tail.next != null) return _report("tail is not the last node");
+		
+		// 3. (part) position agrees with the precursor, and with the size at the tail
+		if(_position < 0 || _position > _manyNodes) return _report("position " + _position + " is out of range");
+		if((_precursor == null) != (_position == 0)) return _report("position is " + _position + " but precursor is " + _precursor);
+		if(_precursor != null && (_precursor == _tail) != (_position == _manyNodes)) return _report("position does not agree with the tail");
+		if(_precursor != null && _precursor.next == _tail && _tail != null && _position != _manyNodes - 1) return _report("position does not agree with the tail");
+		
+		// 4. if cursor != precursor, cursor is the node after precursor
+		if(_cursor != _precursor)
+		{
+			if(_precursor == null && _cursor != _head) return _report("cursor is not the head");
+			if(_precursor != null && _cursor != _precursor.next) return _report("cursor is not after precursor");
+		}
+		
+		// 5. at the end, cursor is null and precursor is the tail
+		if(_atEnd && (_cursor != null || _precursor != _tail)) return _report("at the end, but not after the tail");
+		
+		// 6. (part) the pool size agrees with the pool
+		if(_poolSize < 0 || _poolSize > _poolCapacity) return _report("pool size " + _poolSize + " is out of range");
+		if((_pool == null) != (_poolSize == 0)) return _report("pool does not agree with poolSize");
+		if(_pool != null && _pool.data != null) return _report("pooled node still refers to a particle");
+		
+		// 7. (part) if the tail is owned, so is the head
+		if(_tail != null && _tail.owner == _owner && _head.owner != _owner) return _report("owned tail follows a shared node");
+		
+		// 8. (part) the index has a header at the top
+		if(_top != null && (_height < 1 || _top.node != null)) return _report("index has no header at the top");
+		
+		return true;
+	}
+	
+	/**
+	 * Check the whole invariant, which takes linear time.
+	 * @return whether invariant is currently true
+	 */
+	private boolean _fullyWellFormed() {
 		// Invariant:
 		// 1. list must not include a cycle.
 		if (_head != null)
@@ -77,13 +222,25 @@ public class ParticleSeq implements Cloneable
 		// 2. manyNodes is number of nodes in list
 		int count = 0;
 		boolean foundPrecursor = false;
+		Node last = null;
+		Map<Node,Integer> positions = _top == null ? null : new IdentityHashMap<Node,Integer>();
 		for(Node c = _head; c != null; c = c.next)
 		{
-			if(c == _precursor) foundPrecursor = true;
+			if(positions != null) positions.put(c, count);
+			if(c == _precursor)
+			{
+				foundPrecursor = true;
+				if(_position != count + 1) return _report("position is " + _position + " but the precursor is at " + count);
+			}
+			last = c;
 			++count;
 		}
+		if(_precursor == null && _position != 0) return _report("position is " + _position + " without a precursor");
 		if(count != _manyNodes) return _report("manynodes is: " +_manyNodes +" does not equal the number of nodes: " +count);
 		
+		// 2a. tail is the last node in the list (null if the list is empty)
+		if(_tail != last) return _report("tail is not the last node in the list");
+		
 		// 3. precursor is either null or points to a node in the list.
 		if(_precursor != null && !foundPrecursor) return _report("precursor is not in the list");
 		
@@ -104,10 +261,222 @@ public class ParticleSeq implements Cloneable
 			if(_precursor == null && _head != null) return _report("precursor is null. Head should also be null and it is not");
 		}
 		
+		// 6. the pool has poolSize nodes, no more than the pool capacity,
+		//    and the pooled nodes hold no particles.
+		if(_poolSize < 0 || _poolSize > _poolCapacity) return _report("pool size " + _poolSize + " is out of range");
+		int pooled = 0;
+		for(Node c = _pool; c != null; c = c.next)
+		{
+			if(c.data != null) return _report("pooled node still refers to a particle");
+			if(++pooled > _poolSize) break;
+		}
+		if(pooled != _poolSize) return _report("poolSize is: " + _poolSize + " does not equal the number of pooled nodes: " + pooled);
+		
+		// 7. the nodes owned by this sequence form a prefix of the list
+		boolean shared = false;
+		for(Node c = _head; c != null; c = c.next)
+		{
+			if(c.owner != _owner) shared = true;
+			else if(shared) return _report("owned node follows a shared node");
+		}
+		
+		// 8. if there is an index, there are height levels; on each level,
+		//    the widths give the positions of the nodes, in order, and add up to
+		//    just past the end; each entry above the first level is over an
+		//    entry for the same node on the level below.
+		if(_top != null)
+		{
+			int level = _height;
+			for(Index h = _top; h != null; h = h.down, --level)
+			{
+				if(level == 0) return _report("index has more than " + _height + " levels");
+				if(h.node != null) return _report("index header refers to a node");
+				int pos = -1;
+				Index below = h.down;
+				for(Index e = h; e != null; e = e.right)
+				{
+					if(e != h && !Integer.valueOf(pos).equals(positions.get(e.node))) return _report("index entry at " + pos + " is not over the node there");
+					if(level > 1)
+					{
+						while(below != null && below.node != e.node) below = below.right;
+						if(below == null || e.down != below) return _report("index entry is not over an entry of the level below");
+					}
+					else if(e.down != null) return _report("index entry on the first level has an entry below");
+					if(e.width <= 0) return _report("index entry has width " + e.width);
+					pos += e.width;
+					if(pos > _manyNodes) return _report("index widths go past the end");
+				}
+				if(pos != _manyNodes) return _report("index widths do not reach the end");
+			}
+			if(level != 0) return _report("index has fewer than " + _height + " levels");
+		}
+		
 		// If no problems found, then return true:
 		return true;
 	}
 
+	/**
+	 * Set whether assertions check the whole invariant of each sequence
+	 * (which takes linear time for every operation) or only the parts near
+	 * where each operation changes the sequence (which takes constant time).
+	 * The initial setting is given by the system property
+	 * <code>edu.uwm.cs351.ParticleSeq.localChecking</code>.
+	 * This only matters if assertions are enabled.
+	 * @param local
+	 *   true to check only locally, false to check the whole invariant
+	 */
+	public static void setLocalChecking(boolean local)
+	{
+		_localChecking = local;
+	}
+	
+	/**
+	 * Set when assertions check the whole invariant while local checking is on.
+	 * Initially, they never do.
+	 * @param policy
+	 *   the policy to use, must not be null
+	 * @exception NullPointerException
+	 *   Indicates that policy is null.
+	 */
+	public static void setCheckPolicy(CheckPolicy policy)
+	{
+		if(policy == null) throw new NullPointerException("policy is null");
+		_checkPolicy = policy;
+	}
+	
+	/**
+	 * Set where the results of checking the whole invariant are sent.
+	 * Initially, problems are printed on standard output.
+	 * @param monitor
+	 *   the monitor to use, must not be null
+	 * @exception NullPointerException
+	 *   Indicates that monitor is null.
+	 */
+	public static void setCheckMonitor(CheckMonitor monitor)
+	{
+		if(monitor == null) throw new NullPointerException("monitor is null");
+		_checkMonitor = monitor;
+	}
+	
+	/**
+	 * Receives the results of checking the invariant of sequences,
+	 * for example to count them.  It may be called by several threads at once.
+	 */
+	public interface CheckMonitor
+	{
+		/**
+		 * Called after the whole invariant of a sequence has been checked.
+		 * @param nanos the time the check took, in nanoseconds
+		 * @param ok whether the invariant held
+		 */
+		void checked(long nanos, boolean ok);
+		
+		/**
+		 * Called for each problem found when checking the invariant.
+		 * @param error a description of the problem
+		 */
+		void violation(String error);
+	}
+	
+	/**
+	 * Decides when an assertion checks the whole invariant of a sequence
+	 * even though local checking is on.  It may be called by several threads at once.
+	 */
+	public interface CheckPolicy
+	{
+		/**
+		 * Decide whether to check the whole invariant.
+		 * @param changes the number of changes to the sequence since
+		 *   its whole invariant was last checked
+		 * @return true to check the whole invariant, false to check it locally
+		 */
+		boolean shouldCheck(int changes);
+		
+		/**
+		 * Called after the whole invariant has been checked.
+		 * @param nanos the time the check took, in nanoseconds
+		 */
+		default void checked(long nanos) { }
+		
+		/**
+		 * Return a policy that never checks the whole invariant.
+		 * @return a policy that only checks locally
+		 */
+		static CheckPolicy never()
+		{
+			return changes -> false;
+		}
+		
+		/**
+		 * Return a policy that checks the whole invariant at every n'th assertion
+		 * (counting the assertions of all sequences).
+		 * @param n the number of assertions per full check, must be positive
+		 * @return the policy
+		 * @exception IllegalArgumentException
+		 *   Indicates that n is not positive.
+		 */
+		static CheckPolicy everyNth(int n)
+		{
+			if(n <= 0) throw new IllegalArgumentException("n must be positive: " + n);
+			AtomicLong count = new AtomicLong();
+			return changes -> count.incrementAndGet() % n == 0;
+		}
+		
+		/**
+		 * Return a policy that checks the whole invariant of a sequence
+		 * once it has been changed n times since its last full check.
+		 * @param n the number of changes per full check, must be positive
+		 * @return the policy
+		 * @exception IllegalArgumentException
+		 *   Indicates that n is not positive.
+		 */
+		static CheckPolicy afterChanges(int n)
+		{
+			if(n <= 0) throw new IllegalArgumentException("n must be positive: " + n);
+			return changes -> changes >= n;
+		}
+		
+		/**
+		 * Return a policy that checks the whole invariant whenever the time
+		 * spent on full checks is within the given fraction of the time since the
+		 * policy was created.  For example, 0.01 allows about 1% of the time
+		 * (of one thread) for full checks.
+		 * @param fraction the fraction of time for full checks, from 0 to 1
+		 * @return the policy
+		 * @exception IllegalArgumentException
+		 *   Indicates that fraction is not between 0 and 1.
+		 */
+		static CheckPolicy budget(double fraction)
+		{
+			if(!(fraction >= 0 && fraction <= 1)) throw new IllegalArgumentException("fraction must be from 0 to 1: " + fraction);
+			long start = System.nanoTime();
+			LongAdder spent = new LongAdder();
+			return new CheckPolicy() {
+				@Override
+				public boolean shouldCheck(int changes) {
+					return spent.sum() <= fraction * (System.nanoTime() - start);
+				}
+				
+				@Override
+				public void checked(long nanos) {
+					spent.add(nanos);
+				}
+			};
+		}
+	}
+	
+	/**
+	 * Check the whole invariant of this sequence, whatever the checking
+	 * setting, and whether or not assertions are enabled.
+	 * This takes linear time.
+	 * @return
+	 *   whether this sequence is well formed
+	 */
+	public boolean isWellFormed()
+	{
+		return _fullyWellFormed();
+	}
+
 	private ParticleSeq(boolean doNotUse) {} // only for purposes of testing, do not change
 	
 	/**
@@ -119,11 +488,246 @@ public class ParticleSeq implements Cloneable
 	public ParticleSeq( )
 	{
 		_manyNodes = 0;
-		_head = _cursor = _precursor = null;
+		_head = _tail = _cursor = _precursor = null;
 		_atEnd = true;
+		_owner = new Object();
 		
 		assert _wellFormed() : "invariant failed at end of constructor";
 	}
+	
+	/**
+	 * Create an empty sequence of particles that keeps up to the
+	 * given number of removed nodes for reuse by later additions.
+	 * @param poolCapacity
+	 *   the number of removed nodes to keep, may be zero
+	 * @postcondition
+	 *   This sequence of particles is empty 
+	 * @exception IllegalArgumentException
+	 *   Indicates that poolCapacity is negative.
+	 **/
+	public ParticleSeq(int poolCapacity)
+	{
+		this();
+		setPoolCapacity(poolCapacity);
+	}
+	
+	/**
+	 * Get a node for a new element, reusing a pooled node if there is one.
+	 */
+	private Node newNode(Particle element, Node next)
+	{
+		Node n = _pool;
+		if(n == null)
+		{
+			n = new Node(element, next);
+		}
+		else
+		{
+			_pool = n.next;
+			--_poolSize;
+			n.data = element;
+			n.next = next;
+		}
+		n.owner = _owner;
+		return n;
+	}
+	
+	/**
+	 * Keep a node that is no longer in the list, if there is room in the pool
+	 * (and no other sequence shares it).
+	 */
+	private void recycle(Node n)
+	{
+		if(_poolSize == _poolCapacity || n.owner != _owner) return;
+		
+		n.data = null;
+		n.next = _pool;
+		_pool = n;
+		++_poolSize;
+	}
+	
+	/**
+	 * Make sure that the nodes from the head up to and including the given node
+	 * are owned by this sequence, copying the ones that are shared.
+	 * The precursor, cursor, tail and index entries are moved to the copies.
+	 * @param target a node in the list, or null (nothing to do)
+	 * @return the node now in the list in place of target
+	 */
+	private Node own(Node target)
+	{
+		if(target == null || target.owner == _owner) return target;
+		
+		// _preds[level] is the next index entry on each level
+		Index h = _top;
+		for(int level = _height; level > 0; --level, h = h.down)
+		{
+			_preds[level] = h.right;
+		}
+		
+		Node prev = null;
+		for(Node p = _head; ; p = p.next)
+		{
+			Node copy = p;
+			if(p.owner != _owner)
+			{
+				copy = newNode(p.data, p.next);
+				if(prev == null) _head = copy;
+				else prev.next = copy;
+				
+				if(p == _precursor) _precursor = copy;
+				if(p == _cursor) _cursor = copy;
+				if(p == _tail) _tail = copy;
+			}
+			for(int level = 1; level <= _height && _preds[level] != null && _preds[level].node == p; ++level)
+			{
+				_preds[level].node = copy;
+				_preds[level] = _preds[level].right;
+			}
+			if(p == target) return copy;
+			prev = copy;
+		}
+	}
+	
+	/**
+	 * Find the last index entry before the given position on each level,
+	 * and put them (and their positions) in the scratch arrays.
+	 */
+	private void findPreds(int position)
+	{
+		Index e = _top;
+		int pos = -1;
+		for(int level = _height; level > 0; --level, e = e.down)
+		{
+			while(e.right != null && pos + e.width < position)
+			{
+				pos += e.width;
+				e = e.right;
+			}
+			_preds[level] = e;
+			_predPos[level] = pos;
+		}
+	}
+	
+	/**
+	 * Add an index for a node just added at the given position, given
+	 * the entries before the position found by findPreds.  Afterwards, these
+	 * entries are the ones before the following position.
+	 * The node must already be counted in the size.
+	 */
+	private void addIndex(int position, Node added)
+	{
+		for(int level = 1; level <= _height; ++level)
+		{
+			++_preds[level].width;
+		}
+		
+		// Each entry is also on the next level with probability 1/2.
+		int levels = Integer.numberOfTrailingZeros(ThreadLocalRandom.current().nextInt() | 1 << (MAX_LEVEL - 1));
+		if(levels > _height)
+		{
+			levels = ++_height;
+			_top = new Index(null, null, _top, _manyNodes + 1);
+			_preds[levels] = _top;
+			_predPos[levels] = -1;
+		}
+		
+		Index below = null;
+		for(int level = 1; level <= levels; ++level)
+		{
+			Index pred = _preds[level];
+			int end = _predPos[level] + pred.width;
+			below = pred.right = new Index(added, pred.right, below, end - position);
+			pred.width = position - _predPos[level];
+			_preds[level] = below;
+			_predPos[level] = position;
+		}
+	}
+	
+	/**
+	 * Remove the index for a node that was at the given position.
+	 */
+	private void removeIndex(int position, Node removed)
+	{
+		findPreds(position);
+		for(int level = 1; level <= _height; ++level)
+		{
+			Index pred = _preds[level];
+			if(pred.right != null && pred.right.node == removed)
+			{
+				pred.width += pred.right.width - 1;
+				pred.right = pred.right.right;
+			}
+			else
+			{
+				--pred.width;
+			}
+		}
+	}
+	
+	/**
+	 * Build the index over the nodes currently in the list.
+	 */
+	private void buildIndex()
+	{
+		_preds = new Index[MAX_LEVEL + 1];
+		_predPos = new int[MAX_LEVEL + 1];
+		_top = new Index(null, null, null, 1);
+		_height = 1;
+		_preds[1] = _top;
+		_predPos[1] = -1;
+		
+		// add the nodes as if they were added one at a time at the end
+		int n = _manyNodes;
+		_manyNodes = 0;
+		for(Node p = _head; p != null; p = p.next)
+		{
+			++_manyNodes;
+			addIndex(_manyNodes - 1, p);
+		}
+		assert _manyNodes == n;
+	}
+	
+	/**
+	 * Set the number of removed nodes that this sequence keeps for reuse.
+	 * If more nodes are kept than the new capacity, the extra ones are released.
+	 * @param poolCapacity
+	 *   the number of removed nodes to keep, zero to disable reuse
+	 * @postcondition
+	 *   no more than poolCapacity nodes are kept
+	 * @exception IllegalArgumentException
+	 *   Indicates that poolCapacity is negative.
+	 */
+	public void setPoolCapacity(int poolCapacity)
+	{
+		assert _wellFormed() : "invariant wrong at start of setPoolCapacity";
+		
+		if(poolCapacity < 0) throw new IllegalArgumentException("negative pool capacity: " + poolCapacity);
+		
+		_poolCapacity = poolCapacity;
+		while(_poolSize > _poolCapacity)
+		{
+			_pool = _pool.next;
+			--_poolSize;
+		}
+		
+		assert _wellFormed() : "invariant wrong at end of setPoolCapacity";
+	}
+	
+	/**
+	 * Release all the removed nodes kept for reuse.
+	 * The pool capacity is not changed.
+	 * @postcondition
+	 *   no removed nodes are kept
+	 */
+	public void trim()
+	{
+		assert _wellFormed() : "invariant wrong at start of trim";
+		
+		_pool = null;
+		_poolSize = 0;
+		
+		assert _wellFormed() : "invariant wrong at end of trim";
+	}
 
 
 	/**
@@ -169,6 +773,7 @@ public class ParticleSeq implements Cloneable
 
 		_cursor = _head;
 		_precursor = null;
+		_position = 0;
 		
 		if(_head == null)
 		{
@@ -241,6 +846,7 @@ public class ParticleSeq implements Cloneable
 		
 		if(atEnd() == true) throw new IllegalStateException("advancing past the end");
 		
+		if(_cursor != _precursor) ++_position;
 		_precursor = _cursor;
 		_cursor = _cursor == null ? _head : _cursor.next;
 		
@@ -249,6 +855,68 @@ public class ParticleSeq implements Cloneable
 		assert _wellFormed() : "invariant wrong at end of advance()";
 	}
 
+	/**
+	 * Move to the given position, so that the element there becomes current.
+	 * The first call builds an index over this sequence (in linear time);
+	 * after that, this takes logarithmic time.
+	 * @param index
+	 *   the position of the new current element, from 0 to size(); if it is
+	 *   size(), there is no current element and we are at the end.
+	 * @postcondition
+	 *   The element at the given position is current, or we are at the end.
+	 * @exception IllegalArgumentException
+	 *   Indicates that index is negative or greater than size().
+	 **/
+	public void seek(int index)
+	{
+		assert _wellFormed() : "invariant wrong at start of seek";
+		
+		if(index < 0 || index > _manyNodes) throw new IllegalArgumentException("index out of range: " + index);
+		if(_top == null) buildIndex();
+		
+		Node p = null; // the node at index-1
+		if(index > 0)
+		{
+			findPreds(index);
+			int pos = _predPos[1];
+			if(pos < 0)
+			{
+				p = _head;
+				pos = 0;
+			}
+			else
+			{
+				p = _preds[1].node;
+			}
+			for(; pos < index - 1; ++pos) p = p.next;
+		}
+		_precursor = p;
+		_cursor = p == null ? _head : p.next;
+		_atEnd = _cursor == null;
+		_position = index;
+		
+		assert _wellFormed() : "invariant wrong at end of seek";
+	}
+	
+	/**
+	 * Return the position of the current element, counting from zero.
+	 * @param - none
+	 * @precondition
+	 *   isCurrent() returns true.
+	 * @return
+	 *   the position of the current element in this sequence
+	 * @exception IllegalStateException
+	 *   Indicates that there is no current element.
+	 **/
+	public int indexOfCurrent( )
+	{
+		assert _wellFormed() : "invariant wrong at start of indexOfCurrent()";
+		
+		if(!isCurrent()) throw new IllegalStateException("no current element");
+		
+		return _position;
+	}
+
 	/**
 	 * Add a new element to this sequence, before the current element (if any).
 	 * @param element
@@ -264,17 +932,25 @@ public class ParticleSeq implements Cloneable
 	{
 		assert _wellFormed() : "invariant wrong at start of addBefore";
 		
+		own(_precursor);
 		if(_precursor == null)
 		{
-			_cursor = _head = new Node(element, _head);
+			_cursor = _head = newNode(element, _head);
 		}
 		else
 		{
-			_cursor = _precursor.next = new Node(element, _precursor.next);
+			_cursor = _precursor.next = newNode(element, _precursor.next);
 		}
+		if(_cursor.next == null) _tail = _cursor;
 		
 		++_manyNodes;
+		++_modCount;
 		_atEnd = false;
+		if(_top != null)
+		{
+			findPreds(_position);
+			addIndex(_position, _cursor);
+		}
 		
 		assert _wellFormed() : "invariant wrong at end of addBefore";
 	}
@@ -296,10 +972,19 @@ public class ParticleSeq implements Cloneable
 		
 		if(isCurrent())
 		{
+			own(_cursor);
 			_precursor = _cursor;
-			_cursor = _cursor.next = new Node(element, _cursor.next);
+			_cursor = _cursor.next = newNode(element, _cursor.next);
+			if(_cursor.next == null) _tail = _cursor;
 			++_manyNodes;
+			++_modCount;
+			++_position;
 			_atEnd = false;
+			if(_top != null)
+			{
+				findPreds(_position);
+				addIndex(_position, _cursor);
+			}
 		}
 		else
 		{
@@ -328,6 +1013,7 @@ public class ParticleSeq implements Cloneable
 		
 		if(!isCurrent()) throw new IllegalStateException("no current to remove");
 		
+		own(_precursor);
 		if(_precursor == null)
 		{
 			_head = _head.next;
@@ -336,9 +1022,13 @@ public class ParticleSeq implements Cloneable
 		{
 			_precursor.next = _precursor.next.next;
 		}
+		if(_cursor == _tail) _tail = _precursor;
+		if(_top != null) removeIndex(_position, _cursor);
+		recycle(_cursor);
 
 		_cursor = _precursor;
 		--_manyNodes;
+		++_modCount;
 		
 		assert _wellFormed() : "invariant wrong at end of removeCurrent()";
 	}
@@ -362,41 +1052,39 @@ public class ParticleSeq implements Cloneable
 		assert _wellFormed() : "invariant wrong at start of addAll";
 		assert addend._wellFormed() : "invariant of parameter wrong at start of addAll";
 		
-		if(addend.size() == 0) return;
-	
-		ParticleSeq clone = addend.clone();
-		Node last = _head;
+		int n = addend._manyNodes;
+		if(n == 0) return;
 		
-		if(_head == null)
-		{
-			_head = clone._head;
-		}
-		else
+		own(_tail);
+		Node last = _tail;
+		Node first = null;
+		if(_top != null) findPreds(_manyNodes);
+		
+		// Copy the nodes of addend onto the end of this list.
+		// Only n nodes are copied, so this works even if addend is this sequence.
+		Node p = addend._head;
+		for(int i=0; i < n; ++i, p = p.next)
 		{
-			while(last.next != null)
-			{
-				last = last.next;
-			}
-			last.next = clone._head;
+			Node copy = newNode(p.data, null);
+			if(_tail == null) _head = copy;
+			else _tail.next = copy;
+			_tail = copy;
+			if(first == null) first = copy;
+			++_manyNodes;
+			if(_top != null) addIndex(_manyNodes - 1, copy);
 		}
 		
 		if(_atEnd)
 		{
-			last = clone._head;
-			while(last.next != null)
-			{
-				last = last.next;
-			}
-			_precursor = last;
+			_precursor = _tail;
+			_position += n;
 		}
 		else if(_precursor == last && _precursor != _cursor) 
 		{
-			_cursor = clone._head;
+			_cursor = first;
 		}
 		
-		clone._head = clone._precursor = null; //defensive programming
-		
-		_manyNodes += addend._manyNodes;
+		++_modCount;
 		
 		assert _wellFormed() : "invariant wrong at end of addAll";
 		assert addend._wellFormed() : "invariant of parameter wrong at end of addAll";
@@ -404,17 +1092,315 @@ public class ParticleSeq implements Cloneable
 
 
 	/**
-	 * Generate a copy of this sequence.
-	 * @param - none
+	 * Create a sequence of the given particles, in order.
+	 * @param elements
+	 *   the particles to put in the sequence, any of which may be null
 	 * @return
-	 *   The return value is a copy of this sequence. Subsequent changes to the
-	 *   copy will not affect the original, nor vice versa.
-	 *   Whatever was current in the original object is now current in the clone.
-	 * @exception OutOfMemoryError
-	 *   Indicates insufficient memory for creating the clone.
-	 **/ 
-	public ParticleSeq clone( )
-	{  	 
+	 *   a new sequence of the particles, with the first one current
+	 *   (or at the end, if there are none)
+	 * @exception NullPointerException
+	 *   Indicates that elements is null.
+	 **/
+	public static ParticleSeq of(Particle... elements)
+	{
+		return fromIterable(Arrays.asList(elements));
+	}
+	
+	/**
+	 * Create a sequence of the particles given by an iterable, in order.
+	 * @param elements
+	 *   the particles to put in the sequence, any of which may be null
+	 * @return
+	 *   a new sequence of the particles, with the first one current
+	 *   (or at the end, if there are none)
+	 * @exception NullPointerException
+	 *   Indicates that elements is null.
+	 **/
+	public static ParticleSeq fromIterable(Iterable<? extends Particle> elements)
+	{
+		ParticleSeq result = new ParticleSeq();
+		Node last = null;
+		for(Particle p : elements)
+		{
+			Node n = result.newNode(p, null);
+			if(last == null) result._head = n;
+			else last.next = n;
+			last = n;
+			++result._manyNodes;
+		}
+		result._tail = last;
+		result._cursor = result._head;
+		result._atEnd = result._head == null;
+		
+		assert result._wellFormed() : "invariant wrong at end of fromIterable";
+		return result;
+	}
+	
+	/**
+	 * Add the given particles after the current element (if any), in order,
+	 * as if by calling addAfter for each of them, but in one pass.
+	 * @param elements
+	 *   the particles to add, any of which may be null
+	 * @postcondition
+	 *   The particles have been added to this sequence.  If there was a current
+	 *   element, they are placed after it, otherwise they are placed where the
+	 *   removed element was, or at the end.  If any were added, the last
+	 *   one added is now the current element.
+	 * @exception NullPointerException
+	 *   Indicates that elements is null.
+	 **/
+	public void insertAllAfterCursor(Particle[] elements)
+	{
+		assert _wellFormed() : "invariant wrong at start of insertAllAfterCursor";
+		
+		int n = elements.length;
+		if(n == 0) return;
+		
+		Node first = newNode(elements[0], null);
+		Node beforeLast = null, last = first;
+		for(int i=1; i < n; ++i)
+		{
+			beforeLast = last;
+			last = last.next = newNode(elements[i], null);
+		}
+		insertChain(first, beforeLast, last, n);
+		
+		assert _wellFormed() : "invariant wrong at end of insertAllAfterCursor";
+	}
+	
+	/**
+	 * Add the particles of another sequence after the current element (if any),
+	 * in order, as if by calling addAfter for each of them, but in one pass.
+	 * @param addend
+	 *   the sequence whose particles are added, may be this sequence
+	 * @postcondition
+	 *   The particles have been added to this sequence.  If there was a current
+	 *   element, they are placed after it, otherwise they are placed where the
+	 *   removed element was, or at the end.  If any were added, the last
+	 *   one added is now the current element.  The addend is unchanged
+	 *   (unless it is this sequence).
+	 * @exception NullPointerException
+	 *   Indicates that addend is null.
+	 **/
+	public void insertAllAfterCursor(ParticleSeq addend)
+	{
+		assert _wellFormed() : "invariant wrong at start of insertAllAfterCursor";
+		assert addend._wellFormed() : "invariant of parameter wrong at start of insertAllAfterCursor";
+		
+		int n = addend._manyNodes;
+		if(n == 0) return;
+		
+		// The copies are made before any are linked in,
+		// so this works even if addend is this sequence.
+		Node p = addend._head;
+		Node first = newNode(p.data, null);
+		Node beforeLast = null, last = first;
+		for(int i=1; i < n; ++i)
+		{
+			p = p.next;
+			beforeLast = last;
+			last = last.next = newNode(p.data, null);
+		}
+		insertChain(first, beforeLast, last, n);
+		
+		assert _wellFormed() : "invariant wrong at end of insertAllAfterCursor";
+		assert addend._wellFormed() : "invariant of parameter wrong at end of insertAllAfterCursor";
+	}
+	
+	/**
+	 * Link a chain of new nodes in after the current element (if any),
+	 * otherwise where the removed element was or at the end,
+	 * and make the last of them current.
+	 * @param first the first node of the chain
+	 * @param beforeLast the node before the last one, or null if there is only one
+	 * @param last the last node of the chain
+	 * @param n the number of nodes in the chain
+	 */
+	private void insertChain(Node first, Node beforeLast, Node last, int n)
+	{
+		Node anchor;
+		int position = _position; // where the first node goes
+		if(_precursor != _cursor && _cursor != null)
+		{
+			anchor = own(_cursor);
+			++position;
+		}
+		else
+		{
+			anchor = own(_precursor);
+		}
+		
+		if(anchor == null)
+		{
+			last.next = _head;
+			_head = first;
+		}
+		else
+		{
+			last.next = anchor.next;
+			anchor.next = first;
+		}
+		if(last.next == null) _tail = last;
+		
+		_precursor = beforeLast == null ? anchor : beforeLast;
+		_cursor = last;
+		_atEnd = false;
+		_position = position + n - 1;
+		++_modCount;
+		
+		if(_top == null)
+		{
+			_manyNodes += n;
+		}
+		else
+		{
+			findPreds(position);
+			for(Node p = first; p != last.next; p = p.next)
+			{
+				++_manyNodes;
+				addIndex(position++, p);
+			}
+		}
+	}
+
+	/**
+	 * Remove all the elements of this sequence that satisfy the given predicate.
+	 * The predicate is tested on every element before any is removed.
+	 * @param filter
+	 *   the predicate telling which elements to remove (it is given null
+	 *   for null elements)
+	 * @postcondition
+	 *   The elements for which filter returned true have been removed, and the
+	 *   others are in the same order.  If the current element was removed,
+	 *   there is no current element, and advancing moves to the next element
+	 *   that was kept, as if the current element had been removed with
+	 *   removeCurrent.  Otherwise the current element (if any) is unchanged,
+	 *   and whether we are at the end is unchanged.
+	 * @return
+	 *   the number of elements removed
+	 * @exception NullPointerException
+	 *   Indicates that filter is null.  If filter throws an exception,
+	 *   the exception is passed on and the sequence is unchanged.
+	 **/
+	public int removeIf(Predicate<? super Particle> filter)
+	{
+		assert _wellFormed() : "invariant wrong at start of removeIf";
+		if(filter == null) throw new NullPointerException("filter is null");
+		
+		// Test every element first, so a failing filter leaves the list as it was.
+		BitSet remove = new BitSet();
+		int i = 0;
+		for(Node p = _head; p != null; p = p.next, ++i)
+		{
+			if(filter.test(p.data)) remove.set(i);
+		}
+		if(remove.isEmpty()) return 0;
+		
+		boolean wasCurrent = _precursor != _cursor && _cursor != null;
+		Node precursor = null, cursor = null; // the new precursor and cursor
+		boolean cursorKept = false;
+		int position = 0;
+		
+		// The nodes before run are in their final form; the nodes from run to
+		// runEnd are kept but shared, and are copied only if a later node is removed.
+		Node last = null; // the last kept node before run (null if none)
+		Node run = null, runEnd = null;
+		int kept = 0, removed = 0;
+		i = 0;
+		for(Node p = _head; p != null; ++i)
+		{
+			Node next = p.next;
+			if(remove.get(i))
+			{
+				if(run != null)
+				{
+					// copy the shared nodes, so the link to p can be changed
+					for(Node q = run; ; q = q.next)
+					{
+						Node copy = newNode(q.data, null);
+						if(last == null) _head = copy;
+						else last.next = copy;
+						if(q == precursor) precursor = copy;
+						if(q == cursor) cursor = copy;
+						last = copy;
+						if(q == runEnd) break;
+					}
+					run = runEnd = null;
+				}
+				if(last == null) _head = next;
+				else last.next = next;
+				recycle(p);
+				++removed;
+			}
+			else
+			{
+				++kept;
+				if(p.owner == _owner) last = p;
+				else
+				{
+					if(run == null) run = p;
+					runEnd = p;
+				}
+				if(p == _cursor && wasCurrent)
+				{
+					cursor = p;
+					cursorKept = true;
+				}
+			}
+			if(p == _precursor)
+			{
+				precursor = runEnd != null ? runEnd : last;
+				position = kept;
+			}
+			p = next;
+		}
+		
+		_tail = runEnd != null ? runEnd : last;
+		_precursor = precursor;
+		if(!cursorKept) _cursor = _atEnd ? null : precursor;
+		else _cursor = cursor;
+		_position = position;
+		_manyNodes -= removed;
+		++_modCount;
+		// The index is rebuilt by the next seek.
+		_top = null;
+		_height = 0;
+		
+		assert _wellFormed() : "invariant wrong at end of removeIf";
+		return removed;
+	}
+	
+	/**
+	 * Keep only the elements of this sequence that satisfy the given predicate,
+	 * removing the others.
+	 * @param filter
+	 *   the predicate telling which elements to keep (it is given null
+	 *   for null elements)
+	 * @postcondition
+	 *   as for removeIf, with the elements for which filter returned false removed
+	 * @return
+	 *   the number of elements removed
+	 * @exception NullPointerException
+	 *   Indicates that filter is null.
+	 **/
+	public int retainIf(Predicate<? super Particle> filter)
+	{
+		if(filter == null) throw new NullPointerException("filter is null");
+		return removeIf(filter.negate());
+	}
+
+	/**
+	 * Generate a copy of this sequence.
+	 * @param - none
+	 * @return
+	 *   The return value is a copy of this sequence. Subsequent changes to the
+	 *   copy will not affect the original, nor vice versa.
+	 *   Whatever was current in the original object is now current in the clone.
+	 * @exception OutOfMemoryError
+	 *   Indicates insufficient memory for creating the clone.
+	 **/ 
+	public ParticleSeq clone( )
+	{  	 
 		assert _wellFormed() : "invariant wrong at start of clone()";
 
 		ParticleSeq result;
@@ -433,29 +1419,551 @@ public class ParticleSeq implements Cloneable
 			("This class does not implement Cloneable");
 		}
 
-		if(_head != null)
+		// The nodes are now shared: neither sequence may change them
+		// until it has made its own copy.
+		_owner = new Object();
+		result._owner = new Object();
+		result._pool = null; // the clone starts with an empty pool
+		result._poolSize = 0;
+		result._top = null; // the clone builds its own index if needed
+		result._height = 0;
+		result._preds = null;
+		result._predPos = null;
+
+		assert _wellFormed() : "invariant wrong at end of clone()";
+		assert result._wellFormed() : "invariant wrong for result of clone()";
+		return result;
+	}
+
+	/**
+	 * Return an iterator over the elements of this sequence, from first to last.
+	 * The built-in cursor is not used or changed.
+	 * @return an iterator over this sequence
+	 **/
+	@Override
+	public Iterator<Particle> iterator( )
+	{
+		return Spliterators.iterator(spliterator());
+	}
+	
+	/**
+	 * Return a spliterator over the elements of this sequence.  It is
+	 * {@link Spliterator#SIZED sized} and {@link Spliterator#ORDERED ordered},
+	 * and splits in constant time after one pass to find the split points.
+	 * It fails fast if this sequence is changed while it is in use.
+	 * @return a spliterator over this sequence
+	 **/
+	@Override
+	public Spliterator<Particle> spliterator( )
+	{
+		assert _wellFormed() : "invariant wrong at start of spliterator()";
+		return new ParticleSpliterator(_head, 0, _manyNodes, null, 0);
+	}
+	
+	/**
+	 * Return a sequential stream of the elements of this sequence.
+	 * @return a stream of the elements of this sequence
+	 **/
+	public Stream<Particle> stream( )
+	{
+		return StreamSupport.stream(spliterator(), false);
+	}
+	
+	/**
+	 * Return a parallel stream of the elements of this sequence.
+	 * The sequence must not be changed while the stream is in use.
+	 * @return a possibly parallel stream of the elements of this sequence
+	 **/
+	public Stream<Particle> parallelStream( )
+	{
+		return StreamSupport.stream(spliterator(), true);
+	}
+	
+	// Split points are kept every SPLIT_GRAIN nodes or more,
+	// with no more than MAX_SPLITS of them.
+	private static final int SPLIT_GRAIN = 64;
+	private static final int MAX_SPLITS = 1024;
+	
+	/**
+	 * A spliterator over the elements from index to fence (exclusive).
+	 * The first split walks the list once to record every step'th node,
+	 * and all the spliterators split from it share these split points,
+	 * so later splits do not need to walk the list.
+	 */
+	private class ParticleSpliterator implements Spliterator<Particle>
+	{
+		private Node next; // the node at index
+		private int index, fence;
+		private Node[] splits; // splits[i] is the node at index i*step
+		private int step;
+		private final int expectedModCount = _modCount;
+		
+		ParticleSpliterator(Node n, int i, int f, Node[] s, int st)
 		{
-			Node newHead = null;
-			Node prev = newHead;
-			for(Node p = _head; p != null; p = p.next)
+			next = n;
+			index = i;
+			fence = f;
+			splits = s;
+			step = st;
+		}
+		
+		private void checkModCount()
+		{
+			if(expectedModCount != _modCount) throw new ConcurrentModificationException("sequence changed during traversal");
+		}
+		
+		private void findSplits()
+		{
+			int n = _manyNodes;
+			step = Math.max(SPLIT_GRAIN, (n + MAX_SPLITS - 1) / MAX_SPLITS);
+			splits = new Node[(n + step - 1) / step];
+			int i = 0;
+			for(Node p = _head; p != null; p = p.next, ++i)
 			{
-				Node copy = new Node(p.data, null);
-				if(newHead == null) newHead = copy;
-				else prev.next = copy;
+				if(i % step == 0) splits[i / step] = p;
+			}
+		}
+		
+		@Override
+		public boolean tryAdvance(Consumer<? super Particle> action)
+		{
+			if(action == null) throw new NullPointerException("action is null");
+			checkModCount();
+			if(index >= fence) return false;
+			Particle p = next.data;
+			next = next.next;
+			++index;
+			action.accept(p);
+			return true;
+		}
+		
+		@Override
+		public void forEachRemaining(Consumer<? super Particle> action)
+		{
+			if(action == null) throw new NullPointerException("action is null");
+			// Check before each element: a removal recycles nodes into the pool,
+			// and the walk must not follow them (or a null link) any further.
+			while(index < fence)
+			{
+				checkModCount();
+				Node p = next;
+				if(p == null) throw new ConcurrentModificationException("sequence changed during traversal");
+				next = p.next;
+				++index;
+				action.accept(p.data);
+			}
+			checkModCount();
+		}
+		
+		@Override
+		public Spliterator<Particle> trySplit()
+		{
+			checkModCount();
+			if(fence - index < 2 * SPLIT_GRAIN) return null;
+			if(splits == null) findSplits();
+			
+			int mid = (index + fence) >>> 1;
+			mid -= mid % step;
+			if(mid <= index) return null;
+			
+			Spliterator<Particle> prefix = new ParticleSpliterator(next, index, mid, splits, step);
+			next = splits[mid / step];
+			index = mid;
+			return prefix;
+		}
+		
+		@Override
+		public long estimateSize()
+		{
+			return fence - index;
+		}
+		
+		@Override
+		public int characteristics()
+		{
+			return ORDERED | SIZED | SUBSIZED;
+		}
+	}
+	
+	/**
+	 * Create a new cursor for this sequence, independent of the built-in cursor.
+	 * @param - none
+	 * @return
+	 *   a cursor whose current element is the first element of this sequence
+	 *   (it is at the end if this sequence is empty)
+	 **/
+	public Cursor cursor( )
+	{
+		assert _wellFormed() : "invariant wrong at start of cursor()";
+		Cursor result = new Cursor();
+		result.start();
+		return result;
+	}
+	
+	/**
+	 * Keep the built-in cursor valid after a detached cursor adds a node.
+	 * @param anchor the node that the new node follows, or null if it is the head
+	 * @param added the new node
+	 * @param position the position of the new node
+	 */
+	private void repairAfterAdd(Node anchor, Node added, int position)
+	{
+		// If the built-in cursor was on the node after the anchor (or at the end
+		// just after it), the new node is now the one before the cursor.
+		if(_precursor == anchor && (_cursor != _precursor || _atEnd))
+		{
+			_precursor = added;
+			++_position;
+		}
+		else if(_position > position) ++_position;
+		
+		if(_top != null)
+		{
+			findPreds(position);
+			addIndex(position, added);
+		}
+	}
+	
+	/**
+	 * Keep the built-in cursor valid after a detached cursor removes a node.
+	 * @param before the node before the removed one, or null if it was the head
+	 * @param removed the node no longer in the list
+	 * @param position the position the node was at
+	 */
+	private void repairAfterRemove(Node before, Node removed, int position)
+	{
+		if(_position > position) --_position;
+		if(_top != null) removeIndex(position, removed);
+		
+		if(_cursor == removed && _precursor != removed)
+		{
+			// the current element was removed
+			_cursor = before;
+		}
+		else if(_precursor == removed)
+		{
+			if(_cursor == removed) _cursor = before;
+			_precursor = before;
+		}
+	}
+	
+	/**
+	 * A cursor over a sequence, with the same operations as the built-in cursor.
+	 * Any number of cursors may be used on the same sequence.
+	 * A change made through a cursor keeps the built-in cursor where it was,
+	 * but a change made any other way makes this cursor stale: until it is
+	 * restarted, using it throws {@link ConcurrentModificationException}.
+	 */
+	public class Cursor
+	{
+		private Node precursor, cursor; // as in the sequence itself
+		private boolean atEnd;
+		private int position;
+		private int expectedModCount;
+		
+		private Cursor() { }
+		
+		private void checkModCount()
+		{
+			if(expectedModCount != _modCount) throw new ConcurrentModificationException("sequence changed since cursor was used");
+		}
+		
+		/**
+		 * Set the current element at the front of the sequence.
+		 * This may be used even if the cursor is stale.
+		 * @postcondition
+		 *   The front element is now the current element, but
+		 *   if the sequence has no elements at all, then we are at the end.
+		 */
+		public void start()
+		{
+			precursor = null;
+			cursor = _head;
+			atEnd = _head == null;
+			position = 0;
+			expectedModCount = _modCount;
+		}
+		
+		/**
+		 * Return true if we are at the end of the sequence.
+		 * @return true if at the end of the sequence
+		 * @exception ConcurrentModificationException
+		 *   Indicates that the sequence was changed by something other than this cursor
+		 */
+		public boolean atEnd()
+		{
+			checkModCount();
+			return atEnd;
+		}
+		
+		/**
+		 * Determine whether there is a current element.
+		 * @return true if there is a current element
+		 * @exception ConcurrentModificationException
+		 *   Indicates that the sequence was changed by something other than this cursor
+		 */
+		public boolean isCurrent()
+		{
+			checkModCount();
+			return precursor != cursor && cursor != null;
+		}
+		
+		/**
+		 * Get the current element.
+		 * @return the current element (which may be null)
+		 * @exception IllegalStateException
+		 *   Indicates that there is no current element
+		 * @exception ConcurrentModificationException
+		 *   Indicates that the sequence was changed by something other than this cursor
+		 */
+		public Particle getCurrent()
+		{
+			if(!isCurrent()) throw new IllegalStateException("no current element");
+			return cursor.data;
+		}
+		
+		/**
+		 * Move forward to the next element (even if the current one was removed).
+		 * @postcondition
+		 *   The next element (if any) is current, otherwise we are at the end.
+		 * @exception IllegalStateException
+		 *   Indicates that we are at the end, so advance may not be called
+		 * @exception ConcurrentModificationException
+		 *   Indicates that the sequence was changed by something other than this cursor
+		 */
+		public void advance()
+		{
+			if(atEnd()) throw new IllegalStateException("advancing past the end");
+			
+			if(cursor != precursor) ++position;
+			precursor = cursor;
+			cursor = cursor == null ? _head : cursor.next;
+			if(cursor == null) atEnd = true;
+		}
+		
+		/**
+		 * Add a new element before the current element (if any),
+		 * otherwise where the removed element was, or at the end.
+		 * The new element becomes current.
+		 * @param element the new element, may be null
+		 * @exception ConcurrentModificationException
+		 *   Indicates that the sequence was changed by something other than this cursor
+		 */
+		public void addBefore(Particle element)
+		{
+			assert _wellFormed() : "invariant wrong at start of Cursor.addBefore";
+			checkModCount();
+			
+			precursor = own(precursor);
+			if(precursor == null)
+			{
+				cursor = _head = newNode(element, _head);
+			}
+			else
+			{
+				cursor = precursor.next = newNode(element, precursor.next);
+			}
+			if(cursor.next == null) _tail = cursor;
+			++_manyNodes;
+			repairAfterAdd(precursor, cursor, position);
+			
+			expectedModCount = ++_modCount;
+			atEnd = false;
+			
+			assert _wellFormed() : "invariant wrong at end of Cursor.addBefore";
+		}
+		
+		/**
+		 * Add a new element after the current element (if any),
+		 * otherwise where the removed element was, or at the end.
+		 * The new element becomes current.
+		 * @param element the new element, may be null
+		 * @exception ConcurrentModificationException
+		 *   Indicates that the sequence was changed by something other than this cursor
+		 */
+		public void addAfter(Particle element)
+		{
+			if(isCurrent())
+			{
+				assert _wellFormed() : "invariant wrong at start of Cursor.addAfter";
+				
+				precursor = own(cursor);
+				cursor = precursor.next = newNode(element, precursor.next);
+				if(cursor.next == null) _tail = cursor;
+				++_manyNodes;
+				repairAfterAdd(precursor, cursor, ++position);
 				
-				prev = copy;
+				expectedModCount = ++_modCount;
+				atEnd = false;
 				
-				if(p == _precursor) result._precursor = copy;
-				if(p == _cursor) result._cursor = copy;
+				assert _wellFormed() : "invariant wrong at end of Cursor.addAfter";
 			}
+			else
+			{
+				addBefore(element);
+			}
+		}
+		
+		/**
+		 * Remove the current element from the sequence.
+		 * @postcondition
+		 *   The current element is no longer in the sequence, and there is
+		 *   no current element.  We are not at the end.
+		 * @exception IllegalStateException
+		 *   Indicates that there is no current element
+		 * @exception ConcurrentModificationException
+		 *   Indicates that the sequence was changed by something other than this cursor
+		 */
+		public void removeCurrent()
+		{
+			assert _wellFormed() : "invariant wrong at start of Cursor.removeCurrent";
+			if(!isCurrent()) throw new IllegalStateException("no current to remove");
 			
-			result._head = newHead;
+			precursor = own(precursor);
+			Node removed = cursor;
+			if(precursor == null)
+			{
+				_head = removed.next;
+			}
+			else
+			{
+				precursor.next = removed.next;
+			}
+			if(removed == _tail) _tail = precursor;
+			--_manyNodes;
+			repairAfterRemove(precursor, removed, position);
+			recycle(removed);
+			
+			cursor = precursor;
+			expectedModCount = ++_modCount;
+			
+			assert _wellFormed() : "invariant wrong at end of Cursor.removeCurrent";
 		}
+	}
 
-		assert _wellFormed() : "invariant wrong at end of clone()";
-		assert result._wellFormed() : "invariant wrong for result of clone()";
+	/**
+	 * Take an immutable snapshot of the elements of this sequence.
+	 * The snapshot shares its nodes with this sequence, so this takes constant time.
+	 * @param - none
+	 * @return
+	 *   a snapshot of the current contents of this sequence. Subsequent changes to
+	 *   this sequence are not visible through the snapshot.  The snapshot may be
+	 *   read by other threads while this sequence is being changed.
+	 **/
+	public Snapshot snapshot( )
+	{
+		assert _wellFormed() : "invariant wrong at start of snapshot()";
+		
+		// The nodes are now shared with the snapshot, and so
+		// must be copied before this sequence changes them.
+		_owner = new Object();
+		Snapshot result = new Snapshot(_head, _manyNodes);
+		
+		assert _wellFormed() : "invariant wrong at end of snapshot()";
 		return result;
 	}
+	
+	/**
+	 * An immutable view of the elements of a sequence at the time
+	 * {@link ParticleSeq#snapshot()} was called.
+	 * The snapshot is read through cursors, each of which
+	 * may be used by a different thread.
+	 */
+	public static class Snapshot
+	{
+		// The nodes of a snapshot are never changed.
+		// (final fields make them visible to other threads.)
+		private final Node head;
+		private final int size;
+		
+		private Snapshot(Node h, int n)
+		{
+			head = h;
+			size = n;
+		}
+		
+		/**
+		 * Determine the number of elements in this snapshot.
+		 * @return the number of elements in this snapshot
+		 */
+		public int size()
+		{
+			return size;
+		}
+		
+		/**
+		 * Create a new cursor over this snapshot.
+		 * @return a cursor whose current element is the first element
+		 *   of the snapshot (it is at the end if the snapshot is empty)
+		 */
+		public Cursor cursor()
+		{
+			return new Cursor();
+		}
+		
+		/**
+		 * A read-only cursor over a snapshot.
+		 * A cursor should only be used by one thread at a time.
+		 */
+		public class Cursor
+		{
+			private Node cursor = head;
+			
+			/**
+			 * Set the current element at the front of the snapshot.
+			 * @postcondition
+			 *   The front element is now the current element, but
+			 *   if the snapshot has no elements at all, then we are at the end.
+			 */
+			public void start()
+			{
+				cursor = head;
+			}
+			
+			/**
+			 * Return true if we are at the end of the snapshot.
+			 * @return true if there is no current element
+			 */
+			public boolean atEnd()
+			{
+				return cursor == null;
+			}
+			
+			/**
+			 * Determine whether there is a current element.
+			 * @return true if there is a current element
+			 */
+			public boolean isCurrent()
+			{
+				return cursor != null;
+			}
+			
+			/**
+			 * Get the current element.
+			 * @return the current element (which may be null)
+			 * @exception IllegalStateException
+			 *   Indicates that we are at the end, so there is no current element
+			 */
+			public Particle getCurrent()
+			{
+				if(cursor == null) throw new IllegalStateException("no current element");
+				return cursor.data;
+			}
+			
+			/**
+			 * Move forward to the next element.
+			 * @postcondition
+			 *   The next element (if any) is current, otherwise we are at the end.
+			 * @exception IllegalStateException
+			 *   Indicates that we are at the end, so advance may not be called
+			 */
+			public void advance()
+			{
+				if(cursor == null) throw new IllegalStateException("advancing past the end");
+				cursor = cursor.next;
+			}
+		}
+	}
 
 	
 	public static class TestInvariantChecker extends TestCase {
@@ -483,7 +1991,7 @@ public class ParticleSeq implements Cloneable
 		}
 		
 		public void test1() {
-			hs._head = new Node(h1,null);
+			hs._head = hs._tail = new Node(h1,null);
 			assertFalse(hs._wellFormed());
 			hs._manyNodes = 2;
 			assertFalse(hs._wellFormed());
@@ -494,7 +2002,7 @@ public class ParticleSeq implements Cloneable
 		}
 		
 		public void test2() {
-			hs._head = new Node(h1,null);
+			hs._head = hs._tail = new Node(h1,null);
 			hs._manyNodes = 1;
 			hs._precursor = new Node(h1,null);
 			assertFalse(hs._wellFormed());
@@ -502,6 +2010,7 @@ public class ParticleSeq implements Cloneable
 			hs._cursor = hs._head;
 			assertFalse(hs._wellFormed());
 			hs._precursor = hs._head;
+			hs._position = 1;
 
 			_doReport = true;
 			assertTrue(hs._wellFormed());
@@ -523,7 +2032,7 @@ public class ParticleSeq implements Cloneable
 		}
 		
 		public void test5() {
-			hs._head = new Node(h1,null);
+			hs._head = hs._tail = new Node(h1,null);
 			hs._head = new Node(h2,hs._head);
 			hs._head = new Node(null,hs._head);
 			hs._head = new Node(h2,hs._head);
@@ -548,7 +2057,7 @@ public class ParticleSeq implements Cloneable
 		
 		public void test6() {
 			Node n1,n2,n3,n4,n5;
-			hs._head = n5 = new Node(h1,null);
+			hs._head = hs._tail = n5 = new Node(h1,null);
 			hs._head = n4 = new Node(h2,hs._head);
 			hs._head = n3 = new Node(null,hs._head);
 			hs._head = n2 = new Node(h2,hs._head);
@@ -576,22 +2085,27 @@ public class ParticleSeq implements Cloneable
 			_doReport = true;
 			hs._precursor = n1;
 			hs._cursor = n1;
+			hs._position = 1;
 			assertTrue(hs._wellFormed());
 			hs._precursor = n2;
 			hs._cursor = n3;
+			hs._position = 2;
 			assertTrue(hs._wellFormed());
 			hs._precursor = n3;
+			hs._position = 3;
 			assertTrue(hs._wellFormed());
 			hs._precursor = n4;
 			hs._cursor = n5;
+			hs._position = 4;
 			assertTrue(hs._wellFormed());
 			hs._precursor = n5;
+			hs._position = 5;
 			assertTrue(hs._wellFormed());
 		}
 		
 		public void test7() {
 			Node n1,n2,n3,n4,n5;
-			hs._head = n5 = new Node(h1,null);
+			hs._head = hs._tail = n5 = new Node(h1,null);
 			hs._head = n4 = new Node(h2,hs._head);
 			hs._head = n3 = new Node(null,hs._head);
 			hs._head = n2 = new Node(h2,hs._head);
@@ -624,6 +2138,7 @@ public class ParticleSeq implements Cloneable
 			Node n1 = new Node(h1,n2);
 			hs._manyNodes = 2;
 			hs._head = n1;
+			hs._tail = n2;
 			
 			hs._precursor = null;
 			hs._cursor = n2;
@@ -643,6 +2158,7 @@ public class ParticleSeq implements Cloneable
 			Node n1 = new Node(h1,n2);
 			hs._manyNodes = 2;
 			hs._head = n1;
+			hs._tail = n2;
 
 			hs._atEnd = true;
 			assertFalse(hs._wellFormed()); // we are at the beginning,not end
@@ -660,8 +2176,196 @@ public class ParticleSeq implements Cloneable
 			
 			_doReport = true;
 			hs._cursor = null;
+			hs._position = 2;
 			assertTrue(hs._wellFormed()); // we're at the end
 		}
+		
+		public void test10() {
+			Node n2 = new Node(h1,null);
+			Node n1 = new Node(h1,n2);
+			hs._manyNodes = 2;
+			hs._head = n1;
+			
+			hs._tail = null;
+			assertFalse(hs._wellFormed());
+			hs._tail = n1;
+			assertFalse(hs._wellFormed());
+			hs._tail = new Node(h1,null);
+			assertFalse(hs._wellFormed());
+			
+			_doReport = true;
+			hs._tail = n2;
+			assertTrue(hs._wellFormed());
+		}
+		
+		public void test11() {
+			hs._poolCapacity = 2;
+			hs._pool = new Node(h1,null);
+			hs._poolSize = 1;
+			assertFalse(hs._wellFormed());
+			hs._pool.data = null;
+			hs._poolSize = 2;
+			assertFalse(hs._wellFormed());
+			hs._pool = new Node(null,new Node(null,new Node(null,null)));
+			hs._poolSize = 3;
+			assertFalse(hs._wellFormed());
+			
+			_doReport = true;
+			hs._pool = hs._pool.next;
+			hs._poolSize = 2;
+			assertTrue(hs._wellFormed());
+		}
+		
+		public void test12() {
+			Node n2 = new Node(h1,null);
+			Node n1 = new Node(h1,n2);
+			hs._manyNodes = 2;
+			hs._head = n1;
+			hs._tail = n2;
+			
+			n1.owner = new Object();
+			assertFalse(hs._wellFormed()); // owned node after a shared one
+			
+			_doReport = true;
+			n2.owner = n1.owner;
+			assertTrue(hs._wellFormed()); // all shared
+			n1.owner = null;
+			assertTrue(hs._wellFormed()); // shared suffix
+		}
+		
+		public void test13() {
+			Node n2 = new Node(h1,null);
+			Node n1 = new Node(h1,n2);
+			hs._manyNodes = 2;
+			hs._head = n1;
+			hs._tail = n2;
+			
+			hs._position = 1;
+			assertFalse(hs._wellFormed()); // no precursor
+			hs._precursor = n1;
+			hs._cursor = n2;
+			hs._position = 0;
+			assertFalse(hs._wellFormed());
+			hs._position = 2;
+			assertFalse(hs._wellFormed());
+			hs._position = 1;
+			
+			// one level: header, n1
+			hs._height = 1;
+			hs._top = new Index(null, null, null, 2);
+			hs._top.right = new Index(n1, null, null, 1);
+			assertFalse(hs._wellFormed()); // n1 is at 0
+			hs._top.width = 1;
+			hs._top.right.width = 3;
+			assertFalse(hs._wellFormed()); // past the end
+			hs._top.right.width = 1;
+			assertFalse(hs._wellFormed()); // does not reach the end
+			hs._top.right.width = 2;
+			hs._height = 2;
+			assertFalse(hs._wellFormed()); // too few levels
+			hs._height = 1;
+			
+			_doReport = true;
+			assertTrue(hs._wellFormed());
+			
+			_doReport = false;
+			hs._top = new Index(null, new Index(n2, null, null, 1), hs._top, 2);
+			hs._height = 2;
+			assertFalse(hs._wellFormed()); // n2 not on the level below
+			hs._top.right.node = n1;
+			hs._top.width = 1;
+			hs._top.right.width = 2;
+			assertFalse(hs._wellFormed()); // not over the entry below
+			hs._top.right.down = hs._top.down.right;
+			
+			_doReport = true;
+			assertTrue(hs._wellFormed());
+		}
+		
+		public void test14() {
+			Node n3 = new Node(h1,null);
+			Node n2 = new Node(h2,n3);
+			Node n1 = new Node(h1,n2);
+			hs._manyNodes = 3;
+			hs._head = n1;
+			hs._tail = n3;
+			_localChecking = true;
+			try {
+				hs._manyNodes = 0;
+				assertFalse(hs._wellFormed());
+				hs._manyNodes = 3;
+				hs._tail = n2;
+				assertFalse(hs._wellFormed());
+				hs._tail = n3;
+				hs._precursor = n1;
+				hs._cursor = n3;
+				hs._position = 1;
+				assertFalse(hs._wellFormed()); // cursor not after precursor
+				hs._cursor = n2;
+				hs._position = 3;
+				assertFalse(hs._wellFormed()); // position of precursor before tail
+				hs._precursor = n2;
+				hs._cursor = n3;
+				hs._position = 1;
+				assertFalse(hs._wellFormed()); // position of precursor before tail
+				hs._position = 2;
+				hs._atEnd = true;
+				assertFalse(hs._wellFormed()); // there is a current element
+				hs._atEnd = false;
+				hs._manyNodes = 4;
+				assertFalse(hs._wellFormed()); // count does not agree with position
+				hs._manyNodes = 3;
+				
+				_doReport = true;
+				assertTrue(hs._wellFormed());
+				hs._precursor = n3;
+				hs._cursor = null;
+				hs._position = 3;
+				hs._atEnd = true;
+				assertTrue(hs._wellFormed());
+				
+				_doReport = false;
+				// only two nodes, which is not noticed locally
+				hs._precursor = null;
+				hs._cursor = n1;
+				hs._position = 0;
+				hs._atEnd = false;
+				hs._tail = n2;
+				n2.next = null;
+				assertTrue(hs._wellFormed());
+				assertFalse(hs.isWellFormed());
+			} finally {
+				_localChecking = false;
+			}
+		}
+		
+		public void test15() {
+			final StringBuilder errors = new StringBuilder();
+			final int[] checks = { 0, 0 };
+			CheckMonitor old = _checkMonitor;
+			_checkMonitor = new CheckMonitor() {
+				@Override
+				public void checked(long nanos, boolean ok) {
+					++checks[ok ? 0 : 1];
+				}
+				@Override
+				public void violation(String error) {
+					errors.append(error);
+				}
+			};
+			try {
+				_doReport = true;
+				hs._manyNodes = 1;
+				assertFalse(hs._wellFormed());
+				assertTrue(errors.length() > 0);
+				hs._manyNodes = 0;
+				assertTrue(hs._wellFormed());
+				assertEquals(1, checks[0]);
+				assertEquals(1, checks[1]);
+			} finally {
+				_checkMonitor = old;
+			}
+		}
 	}
 }
 
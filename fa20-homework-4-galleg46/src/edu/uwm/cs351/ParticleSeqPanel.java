@@ -0,0 +1,439 @@
+package edu.uwm.cs351;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.swing.JPanel;
+
+
+/******************************************************************************
+ * A ParticleSeqPanel shows all the particles of a {@link ParticleSeq}
+ * (unlike {@link ThreeParticles}, which shows exactly three).
+ * Each particle is drawn as a disk of radius the square root of its mass,
+ * as {@link Particle#draw(java.awt.Graphics)} does, but at least one pixel wide.
+ * <p>
+ * The particles are not drawn one at a time with Graphics.  They are drawn into
+ * an off-screen image by writing the pixels of its raster directly.  Particles
+ * outside the view are skipped.  Later particles are drawn over earlier ones,
+ * and colors are not blended.  The finished image is handed to the Swing thread,
+ * which paints it with one drawImage.  As in {@link SimulationRunner}, there are three
+ * images, so drawing the particles and painting never wait for each other.
+ * <p>
+ * The particles can be drawn on a background thread (see {@link #start()}),
+ * by calling {@link #renderParticles()}, or by passing the panel to a
+ * {@link SimulationRunner} as its renderer, which draws its frames instead.
+ * The structure of the sequence must not be changed while it is being drawn,
+ * but the particles may move.
+ ******************************************************************************/
+public class ParticleSeqPanel extends JPanel implements SimulationRunner.Renderer
+{
+	private static final long serialVersionUID = 1L;
+	private static final int MAX_TABLE = 64; // largest disk with spans computed in advance
+	private static final int MAX_RADIUS = 1 << 24; // larger disks are drawn this size, to avoid overflow
+	private static final int BAND_ROWS = 64; // rows of pixels drawn together
+
+	// Row j of a disk d pixels wide covers the pixels from SPAN_START[d][j] to d-SPAN_START[d][j]
+	// (exclusive), relative to the left of its box (as for Graphics.fillOval).
+	private static final int[][] SPAN_START = new int[MAX_TABLE+1][];
+
+	static
+	{
+		for(int d=1; d <= MAX_TABLE; ++d)
+		{
+			SPAN_START[d] = new int[d];
+			for(int j=0; j < d; ++j)
+			{
+				SPAN_START[d][j] = spanStart(d, j);
+			}
+		}
+	}
+
+	/**
+	 * Return the first pixel of row j of a disk d pixels wide.
+	 */
+	private static int spanStart(int d, int j)
+	{
+		double c = d / 2.0, yc = j + 0.5 - c;
+		int start = (int)Math.round(c - Math.sqrt(Math.max(0, c*c - yc*yc)));
+		return Math.min(start, (d - 1) / 2); // every row has at least one pixel
+	}
+
+	// An off-screen image, and the frame drawn in it
+	private static final class Canvas
+	{
+		final BufferedImage image;
+		final int[] raster;
+		final int width, height;
+		long frame;
+
+		Canvas(int w, int h)
+		{
+			width = w;
+			height = h;
+			image = new BufferedImage(Math.max(w, 1), Math.max(h, 1), BufferedImage.TYPE_INT_RGB);
+			raster = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+		}
+	}
+
+	// The data structure:
+	private volatile ParticleSeq _particles;
+	private volatile double _left, _top, _scale; // the view: panel (0,0) shows (left,top), and is scale pixels per unit
+	private final AtomicReference<Canvas> _ready; // the latest image, or the one the panel last painted
+	private Canvas _back; // owned by the thread drawing the particles
+	private volatile Canvas _front; // owned by the Swing thread
+	private volatile long _frames;
+	private int _manyDisks; // the disks to draw in the back image:
+	private int[] _diskX = new int[0], _diskY = new int[0], _diskSize = new int[0], _diskColor = new int[0];
+	private int[] _bandStart = new int[1]; // where each band of rows starts in the order
+	private int[] _order = new int[0]; // the disks to draw in each band of rows, in order
+	private Thread _thread; // the background thread, if started
+	private volatile boolean _running;
+
+
+	private static boolean _doReport = true; // used only by invariant checker
+
+	/**
+	 * Used to report an error found when checking the invariant.
+	 * By providing a string, this will help debugging the class if the invariant should fail.
+	 * @param error string to print to report the exact error found
+	 * @return false always
+	 */
+	private boolean _report(String error) {
+		if (_doReport) System.out.println("Invariant error found: " + error);
+		return false;
+	}
+
+	/**
+	 * Check the invariant.  This is only checked while no other thread
+	 * is drawing the particles.
+	 * Return false if any problem is found.
+	 * @return whether invariant is currently true
+	 */
+	private boolean _wellFormed() {
+		// Invariant:
+		// 1. the scale is positive and finite, and the view is finite
+		if(!(_scale > 0) || Double.isInfinite(_scale)) return _report("scale is " + _scale);
+		if(Double.isNaN(_left) || Double.isInfinite(_left) || Double.isNaN(_top) || Double.isInfinite(_top)) return _report("view is not finite");
+
+		// 2. there are three different images, each with a raster of its size
+		Canvas ready = _ready.get();
+		if(ready == null || _back == null || _front == null) return _report("an image is missing");
+		if(ready == _back || ready == _front || _back == _front) return _report("images are shared");
+		for(Canvas c : new Canvas[] { ready, _back, _front })
+		{
+			if(c.raster.length != Math.max(c.width, 1) * Math.max(c.height, 1)) return _report("raster is the wrong size");
+		}
+
+		// 3. the thread is running exactly if we are running
+		if(_running != (_thread != null)) return _report("thread does not agree with running");
+
+		// If no problems found, then return true:
+		return true;
+	}
+
+	/**
+	 * Create a panel showing the particles of a sequence, with a view
+	 * that draws each particle at its position in pixels.
+	 * @param particles
+	 *   the sequence of particles to show, must not be null
+	 * @exception NullPointerException
+	 *   Indicates that particles is null.
+	 */
+	public ParticleSeqPanel(ParticleSeq particles)
+	{
+		if(particles == null) throw new NullPointerException("particles is null");
+		_particles = particles;
+		_scale = 1;
+		_back = new Canvas(0, 0);
+		_front = new Canvas(0, 0);
+		_ready = new AtomicReference<Canvas>(new Canvas(0, 0));
+		assert _wellFormed() : "invariant failed at end of constructor";
+	}
+
+	/**
+	 * Change the sequence of particles shown.
+	 * @param particles
+	 *   the sequence of particles to show, must not be null
+	 * @exception NullPointerException
+	 *   Indicates that particles is null.
+	 */
+	public void setParticles(ParticleSeq particles)
+	{
+		if(particles == null) throw new NullPointerException("particles is null");
+		_particles = particles;
+	}
+
+	/**
+	 * Change what part of space is shown.  A particle at (x,y) is drawn at
+	 * ((x-left)*scale, (y-top)*scale) in the panel, and its radius is scaled too.
+	 * @param left
+	 *   the x coordinate shown at the left side of the panel
+	 * @param top
+	 *   the y coordinate shown at the top of the panel
+	 * @param scale
+	 *   pixels per unit, must be positive
+	 * @exception IllegalArgumentException
+	 *   Indicates that the view is not finite, or the scale is not positive.
+	 */
+	public void setView(double left, double top, double scale)
+	{
+		if(Double.isNaN(left) || Double.isInfinite(left) || Double.isNaN(top) || Double.isInfinite(top)) throw new IllegalArgumentException("view must be finite");
+		if(!(scale > 0) || Double.isInfinite(scale)) throw new IllegalArgumentException("scale must be positive: " + scale);
+		_left = left;
+		_top = top;
+		_scale = scale;
+	}
+
+	/**
+	 * Return the number of images drawn so far.
+	 * @return the number of images drawn
+	 */
+	public long getFrames()
+	{
+		return _frames;
+	}
+
+	/**
+	 * Draw the particles of the sequence into an off-screen image at the
+	 * current size of the panel, and ask for the panel to be repainted with it.
+	 * This should not be called while the background thread is running,
+	 * or by more than one thread at a time.
+	 */
+	public void renderParticles()
+	{
+		ParticleSeq particles = _particles;
+		Canvas c = prepare(particles.size());
+		double left = _left, top = _top, scale = _scale;
+		for(Particle p : particles)
+		{
+			if(p == null) continue;
+			Point pos = p.getPosition();
+			if(collect(c, (pos.x() - left) * scale, (pos.y() - top) * scale, Math.sqrt(Particles.mass(p)) * scale))
+			{
+				_diskColor[_manyDisks-1] = Particles.argb(p); // only read for particles in view
+			}
+		}
+		draw(c);
+		publish(c);
+	}
+
+	/**
+	 * Draw a frame from a {@link SimulationRunner} into an off-screen image at the
+	 * current size of the panel, and ask for the panel to be repainted with it.
+	 * It should not be called by more than one thread at a time,
+	 * or while the background thread is running.
+	 * @param frame
+	 *   the frame to draw, must not be null
+	 * @exception NullPointerException
+	 *   Indicates that frame is null.
+	 */
+	@Override
+	public void render(SimulationRunner.Frame frame)
+	{
+		int n = frame.size();
+		Canvas c = prepare(n);
+		double left = _left, top = _top, scale = _scale;
+		for(int i=0; i < n; ++i)
+		{
+			_diskColor[_manyDisks] = frame.argb(i); // kept only if the disk is in view
+			collect(c, (frame.x(i) - left) * scale, (frame.y(i) - top) * scale, Math.sqrt(frame.mass(i)) * scale);
+		}
+		draw(c);
+		publish(c);
+	}
+
+	/**
+	 * Return the back image, the size of the panel and cleared to the background,
+	 * with no disks collected and room for n disks.
+	 */
+	private Canvas prepare(int n)
+	{
+		Canvas c = _back;
+		int w = getWidth(), h = getHeight();
+		if(c.width != w || c.height != h) c = _back = new Canvas(w, h);
+		Arrays.fill(c.raster, getBackground().getRGB());
+		_manyDisks = 0;
+		if(_diskX.length < n)
+		{
+			_diskX = new int[n];
+			_diskY = new int[n];
+			_diskSize = new int[n];
+			_diskColor = new int[n];
+		}
+		return c;
+	}
+
+	/**
+	 * Return the number of bands of rows in an image of the given height.
+	 */
+	private static int bands(int h)
+	{
+		return (h + BAND_ROWS - 1) / BAND_ROWS;
+	}
+
+	/**
+	 * Make the back image the latest one, and ask for it to be painted.
+	 */
+	private void publish(Canvas c)
+	{
+		long frame = _frames + 1;
+		c.frame = frame;
+		_back = _ready.getAndSet(c);
+		_frames = frame;
+		repaint();
+	}
+
+	/**
+	 * Add a disk with center (x,y) in pixels to the disks to draw, unless it is
+	 * entirely outside the image.  Return whether it was added.  Either way,
+	 * its place is written (the caller gives its color), so that there is no
+	 * branch to mispredict when particles in and out of view are mixed together.
+	 */
+	private boolean collect(Canvas c, double x, double y, double r)
+	{
+		// comparing doubles, which may be huge or not numbers
+		boolean visible = x + r >= 0 & y + r >= 0 & x - r < c.width & y - r < c.height;
+
+		r = Math.min(r, MAX_RADIUS);
+		int d = Math.max((int)(2 * r), 1);
+		int i = _manyDisks;
+		_diskX[i] = (int)Math.floor(x - d / 2.0);
+		_diskY[i] = (int)Math.floor(y - d / 2.0);
+		_diskSize[i] = d;
+		_manyDisks = i + (visible ? 1 : 0);
+		return visible;
+	}
+
+	/**
+	 * Draw the disks that were collected, one band of rows at a time,
+	 * so that the pixels being written stay in the cache.
+	 * Within each band, the disks are drawn in the order they were collected.
+	 */
+	private void draw(Canvas c)
+	{
+		int w = c.width, h = c.height, bands = bands(h);
+		if(w == 0 || h == 0) return;
+		if(_bandStart.length < bands + 1) _bandStart = new int[bands + 1];
+		int[] start = _bandStart;
+		Arrays.fill(start, 0);
+		for(int i=0; i < _manyDisks; ++i)
+		{
+			int y0 = _diskY[i];
+			int last = Math.min(y0 + _diskSize[i] - 1, h - 1) / BAND_ROWS;
+			for(int b = Math.max(y0, 0) / BAND_ROWS; b <= last; ++b) ++start[b+1];
+		}
+		for(int b=0; b < bands; ++b) start[b+1] += start[b];
+		if(_order.length < start[bands]) _order = new int[Math.max(start[bands], _order.length * 2)];
+
+		// a stable counting sort by band, using start[b] as the next place for band b
+		int[] order = _order;
+		for(int i=0; i < _manyDisks; ++i)
+		{
+			int y0 = _diskY[i];
+			int last = Math.min(y0 + _diskSize[i] - 1, h - 1) / BAND_ROWS;
+			for(int b = Math.max(y0, 0) / BAND_ROWS; b <= last; ++b) order[start[b]++] = i;
+		}
+		// now start[b] is the end of band b, and the start of band b+1
+
+		int[] raster = c.raster;
+		int from = 0;
+		for(int b=0; b < bands; ++b)
+		{
+			int top = b * BAND_ROWS, bottom = Math.min(top + BAND_ROWS, h);
+			for(int k=from; k < start[b]; ++k)
+			{
+				int i = order[k];
+				fillDisk(raster, w, top, bottom, _diskX[i], _diskY[i], _diskSize[i], _diskColor[i]);
+			}
+			from = start[b];
+		}
+	}
+
+	/**
+	 * Draw the rows from top to bottom (exclusive) of a disk d pixels wide
+	 * whose box has its top left corner at (x0,y0).
+	 */
+	private static void fillDisk(int[] raster, int w, int top, int bottom, int x0, int y0, int d, int argb)
+	{
+		int[] starts = d <= MAX_TABLE ? SPAN_START[d] : null;
+		int jFrom = Math.max(0, top - y0), jTo = Math.min(d, bottom - y0);
+		for(int j=jFrom; j < jTo; ++j)
+		{
+			int s = starts != null ? starts[j] : spanStart(d, j);
+			int from = Math.max(x0 + s, 0), to = Math.min(x0 + d - s, w);
+			int row = (y0 + j) * w;
+			for(int i=row + from; i < row + to; ++i) raster[i] = argb;
+		}
+	}
+
+	/**
+	 * Start drawing the particles of the sequence on a background thread.
+	 * A new image is drawn each time the last one has been painted.
+	 * @exception IllegalStateException
+	 *   Indicates that the thread is already running.
+	 */
+	public void start()
+	{
+		assert _wellFormed() : "invariant failed at start of start";
+		if(_running) throw new IllegalStateException("already running");
+		_running = true;
+		_thread = new Thread(this::run, "particle renderer");
+		_thread.setDaemon(true);
+		_thread.start();
+		assert _wellFormed() : "invariant failed at end of start";
+	}
+
+	/**
+	 * Stop drawing on the background thread, and wait for it to finish.
+	 * Stopping when not running does nothing.
+	 */
+	public void stop()
+	{
+		if(!_running) return;
+		_running = false;
+		Thread t = _thread;
+		LockSupport.unpark(t);
+		boolean interrupted = false;
+		while(t.isAlive())
+		{
+			try
+			{
+				t.join();
+			}
+			catch (InterruptedException e)
+			{
+				interrupted = true;
+			}
+		}
+		if(interrupted) Thread.currentThread().interrupt();
+		_thread = null;
+		assert _wellFormed() : "invariant failed at end of stop";
+	}
+
+	/**
+	 * The background thread: draw, then wait for the panel to be painted.
+	 */
+	private void run()
+	{
+		while(_running)
+		{
+			renderParticles();
+			while(_running && _front.frame < _frames) LockSupport.park(this);
+		}
+	}
+
+	@Override
+	protected void paintComponent(Graphics g)
+	{
+		super.paintComponent(g);
+		if(_ready.get().frame > _front.frame) _front = _ready.getAndSet(_front);
+		Canvas c = _front;
+		if(c.frame > 0) g.drawImage(c.image, 0, 0, null);
+		Thread t = _thread;
+		if(t != null) LockSupport.unpark(t);
+	}
+}
@@ -0,0 +1,192 @@
+package edu.uwm.cs351;
+
+import java.awt.Color;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+
+/******************************************************************************
+ * A ParticleSeqReader reads sequences of particles from a file channel,
+ * in the format written by {@link ParticleSeqWriter}.
+ * <p>
+ * The channel is read into a direct buffer, which is reused for the rest of
+ * the reader's sequences.  The particles of each full buffer are added to the
+ * sequence together (see {@link ParticleSeq#insertAllAfterCursor(Particle[])}),
+ * so no other copy of the whole sequence is made.  Particles with the same color
+ * one after another share one Color.
+ ******************************************************************************/
+public class ParticleSeqReader implements AutoCloseable
+{
+	// The data structure:
+	private final FileChannel _channel;
+	private final ByteBuffer _buffer; // holds unread bytes from position to limit
+	private final Particle[] _batch; // the particles of one buffer, before they are added
+
+
+	private static boolean _doReport = true; // used only by invariant checker
+
+	/**
+	 * Used to report an error found when checking the invariant.
+	 * By providing a string, this will help debugging the class if the invariant should fail.
+	 * @param error string to print to report the exact error found
+	 * @return false always
+	 */
+	private boolean _report(String error) {
+		if (_doReport) System.out.println("Invariant error found: " + error);
+		return false;
+	}
+
+	/**
+	 * Check the invariant.
+	 * Return false if any problem is found.
+	 * @return whether invariant is currently true
+	 */
+	private boolean _wellFormed() {
+		// Invariant:
+		// 1. there is a channel
+		if(_channel == null) return _report("channel is null");
+
+		// 2. the buffer is little-endian, and the batch holds a buffer of records
+		if(_buffer.order() != ByteOrder.LITTLE_ENDIAN) return _report("buffer is not little-endian");
+		if(_batch.length * ParticleRecords.SIZE != _buffer.capacity()) return _report("batch does not match the buffer");
+
+		// 3. no particles are kept in the batch
+		for(Particle p : _batch)
+		{
+			if(p != null) return _report("batch still holds a particle");
+		}
+
+		// If no problems found, then return true:
+		return true;
+	}
+
+	/**
+	 * Create a reader that reads from a channel, starting at its current position.
+	 * Closing the reader closes the channel.
+	 * @param channel
+	 *   the channel to read from, must not be null
+	 * @exception NullPointerException
+	 *   Indicates that channel is null.
+	 */
+	public ParticleSeqReader(FileChannel channel)
+	{
+		if(channel == null) throw new NullPointerException("channel is null");
+		_channel = channel;
+		_buffer = ByteBuffer.allocateDirect(ParticleSeqWriter.BUFFER_RECORDS * ParticleRecords.SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		_buffer.limit(0);
+		_batch = new Particle[ParticleSeqWriter.BUFFER_RECORDS];
+		assert _wellFormed() : "invariant failed at end of constructor";
+	}
+
+	/**
+	 * Read the first sequence of a file.
+	 * @param file
+	 *   the file to read
+	 * @return
+	 *   the sequence, with the first element current
+	 * @exception IOException
+	 *   Indicates that the file could not be read, or does not hold a sequence.
+	 */
+	public static ParticleSeq read(Path file) throws IOException
+	{
+		try (ParticleSeqReader r = new ParticleSeqReader(FileChannel.open(file, StandardOpenOption.READ)))
+		{
+			return r.read();
+		}
+	}
+
+	/**
+	 * Read the next sequence.
+	 * @return
+	 *   the sequence, with the first element current (or at the end, if empty)
+	 * @exception EOFException
+	 *   Indicates that the channel ended before the end of a sequence.
+	 * @exception IOException
+	 *   Indicates that the channel could not be read, or
+	 *   what was read was not a sequence of a known version.
+	 */
+	public ParticleSeq read() throws IOException
+	{
+		assert _wellFormed() : "invariant failed at start of read";
+
+		fill(ParticleSeqWriter.HEADER_SIZE);
+		ByteBuffer b = _buffer;
+		int magic = b.getInt(), version = b.getInt();
+		long count = b.getLong();
+		if(magic != ParticleSeqWriter.MAGIC) throw new IOException("not a particle sequence");
+		if(version != ParticleSeqWriter.VERSION) throw new IOException("unknown version " + version);
+		if(count < 0 || count > Integer.MAX_VALUE) throw new IOException("bad count " + count);
+
+		ParticleSeq result = new ParticleSeq();
+		int lastArgb = 0;
+		Color lastColor = null;
+		try
+		{
+			for(long left = count; left > 0; )
+			{
+				int n = (int)Math.min(left, _batch.length);
+				fill(n * ParticleRecords.SIZE);
+				int start = b.position();
+				for(int i=0; i < n; ++i)
+				{
+					int base = start + i * ParticleRecords.SIZE;
+					if(ParticleRecords.isNull(b, base)) continue; // already null
+					int argb = ParticleRecords.argb(b, base);
+					if(lastColor == null || argb != lastArgb)
+					{
+						lastArgb = argb;
+						lastColor = new Color(argb, true);
+					}
+					_batch[i] = ParticleRecords.get(b, base, lastColor);
+				}
+				b.position(start + n * ParticleRecords.SIZE);
+				result.insertAllAfterCursor(n == _batch.length ? _batch : Arrays.copyOf(_batch, n));
+				left -= n;
+				Arrays.fill(_batch, 0, n, null);
+			}
+		}
+		finally
+		{
+			Arrays.fill(_batch, null);
+		}
+		result.start();
+
+		assert _wellFormed() : "invariant failed at end of read";
+		return result;
+	}
+
+	/**
+	 * Read from the channel until the buffer has at least the given number of bytes.
+	 */
+	private void fill(int bytes) throws IOException
+	{
+		if(_buffer.remaining() >= bytes) return;
+		_buffer.compact();
+		while(_buffer.position() < bytes)
+		{
+			if(_channel.read(_buffer) < 0)
+			{
+				_buffer.flip();
+				throw new EOFException("end of file in particle sequence");
+			}
+		}
+		_buffer.flip();
+	}
+
+	/**
+	 * Close the channel.
+	 * @exception IOException
+	 *   Indicates that the channel could not be closed.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		_channel.close();
+	}
+}
@@ -0,0 +1,158 @@
+package edu.uwm.cs351;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+
+/******************************************************************************
+ * A ParticleSeqWriter writes sequences of particles to a file channel in a
+ * compact binary format, which is read back by {@link ParticleSeqReader}.
+ * <p>
+ * Each sequence is a header followed by one record for each element, all
+ * little-endian:
+ * <pre>
+ *   header (16 bytes):  int magic (the bytes "PSEQ"), int version (1), long count
+ *   record (48 bytes):  double x, y, dx, dy, mass; int argb; int flags
+ * </pre>
+ * The only flag is 1, for a null element (whose other fields are zero).
+ * Several sequences may be written one after another.
+ * <p>
+ * The records are put in a direct buffer, which is written to the channel
+ * each time it fills, and reused for the rest of the writer's sequences.
+ ******************************************************************************/
+public class ParticleSeqWriter implements AutoCloseable
+{
+	static final int MAGIC = 0x51455350; // the bytes "PSEQ", little-endian
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 16;
+	static final int BUFFER_RECORDS = 1 << 14; // records per buffer (768K bytes)
+
+	// The data structure:
+	private final FileChannel _channel;
+	private final ByteBuffer _buffer; // filled from position 0 to position
+
+
+	private static boolean _doReport = true; // used only by invariant checker
+
+	/**
+	 * Used to report an error found when checking the invariant.
+	 * By providing a string, this will help debugging the class if the invariant should fail.
+	 * @param error string to print to report the exact error found
+	 * @return false always
+	 */
+	private boolean _report(String error) {
+		if (_doReport) System.out.println("Invariant error found: " + error);
+		return false;
+	}
+
+	/**
+	 * Check the invariant.
+	 * Return false if any problem is found.
+	 * @return whether invariant is currently true
+	 */
+	private boolean _wellFormed() {
+		// Invariant:
+		// 1. there is a channel
+		if(_channel == null) return _report("channel is null");
+
+		// 2. the buffer is little-endian, and in use for filling
+		if(_buffer.order() != ByteOrder.LITTLE_ENDIAN) return _report("buffer is not little-endian");
+		if(_buffer.limit() != _buffer.capacity()) return _report("buffer is not being filled");
+
+		// If no problems found, then return true:
+		return true;
+	}
+
+	/**
+	 * Create a writer that writes to a channel, starting at its current position.
+	 * Closing the writer closes the channel.
+	 * @param channel
+	 *   the channel to write to, must not be null
+	 * @exception NullPointerException
+	 *   Indicates that channel is null.
+	 */
+	public ParticleSeqWriter(FileChannel channel)
+	{
+		if(channel == null) throw new NullPointerException("channel is null");
+		_channel = channel;
+		_buffer = ByteBuffer.allocateDirect(BUFFER_RECORDS * ParticleRecords.SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		assert _wellFormed() : "invariant failed at end of constructor";
+	}
+
+	/**
+	 * Write a sequence to a file, replacing its contents.
+	 * @param particles
+	 *   the sequence to write, must not be null
+	 * @param file
+	 *   the file to write
+	 * @exception NullPointerException
+	 *   Indicates that particles or file is null.
+	 * @exception IOException
+	 *   Indicates that the file could not be written.
+	 */
+	public static void write(ParticleSeq particles, Path file) throws IOException
+	{
+		if(particles == null) throw new NullPointerException("particles is null");
+		try (ParticleSeqWriter w = new ParticleSeqWriter(FileChannel.open(file,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)))
+		{
+			w.write(particles);
+		}
+	}
+
+	/**
+	 * Write a sequence.  The particles are not changed, and the cursor of
+	 * the sequence is not used.  The structure of the sequence must not
+	 * change while it is being written.
+	 * @param particles
+	 *   the sequence to write, must not be null
+	 * @postcondition
+	 *   the sequence has been written to the channel
+	 * @exception NullPointerException
+	 *   Indicates that particles is null.
+	 * @exception IOException
+	 *   Indicates that the channel could not be written.
+	 */
+	public void write(ParticleSeq particles) throws IOException
+	{
+		assert _wellFormed() : "invariant failed at start of write";
+		if(particles == null) throw new NullPointerException("particles is null");
+
+		ByteBuffer b = _buffer;
+		b.putInt(MAGIC).putInt(VERSION).putLong(particles.size());
+		for(Particle p : particles)
+		{
+			if(b.remaining() < ParticleRecords.SIZE) flush();
+			ParticleRecords.put(b, b.position(), p);
+			b.position(b.position() + ParticleRecords.SIZE);
+		}
+		flush();
+
+		assert _wellFormed() : "invariant failed at end of write";
+	}
+
+	/**
+	 * Write out the buffer, and clear it.
+	 */
+	private void flush() throws IOException
+	{
+		_buffer.flip();
+		while(_buffer.hasRemaining()) _channel.write(_buffer);
+		_buffer.clear();
+	}
+
+	/**
+	 * Close the channel.
+	 * @exception IOException
+	 *   Indicates that the channel could not be closed.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		_channel.close();
+	}
+}
@@ -0,0 +1,86 @@
+package edu.uwm.cs351;
+
+
+/******************************************************************************
+ * The cursor operations shared by the sequences of particles that keep
+ * the behavior of {@link ParticleSeq} with a different representation.
+ * The type parameter is the implementing class itself, so that
+ * {@link #addAll} and {@link #clone} work with the same kind of sequence.
+ * @see ParticleSeq
+ ******************************************************************************/
+public interface ParticleSequence<S extends ParticleSequence<S>> extends Cloneable
+{
+	/**
+	 * Determine the number of elements in this sequence.
+	 * @return the number of elements in this sequence
+	 * @see ParticleSeq#size()
+	 */
+	int size();
+
+	/**
+	 * Return true if we are at the end of the sequence.
+	 * @return true if at the end of the sequence
+	 * @see ParticleSeq#atEnd()
+	 */
+	boolean atEnd();
+
+	/**
+	 * Set the current element at the front of this sequence.
+	 * @see ParticleSeq#start()
+	 */
+	void start();
+
+	/**
+	 * Determine whether there is a current element.
+	 * @return true if there is a current element
+	 * @see ParticleSeq#isCurrent()
+	 */
+	boolean isCurrent();
+
+	/**
+	 * Get the current element of this sequence.
+	 * @return the current element (which may be null)
+	 * @see ParticleSeq#getCurrent()
+	 */
+	Particle getCurrent();
+
+	/**
+	 * Move forward to the next element.
+	 * @see ParticleSeq#advance()
+	 */
+	void advance();
+
+	/**
+	 * Add a new element before the current element (if any).
+	 * @param element the new element, may be null
+	 * @see ParticleSeq#addBefore(Particle)
+	 */
+	void addBefore(Particle element);
+
+	/**
+	 * Add a new element after the current element (if any).
+	 * @param element the new element, may be null
+	 * @see ParticleSeq#addAfter(Particle)
+	 */
+	void addAfter(Particle element);
+
+	/**
+	 * Remove the current element.
+	 * @see ParticleSeq#removeCurrent()
+	 */
+	void removeCurrent();
+
+	/**
+	 * Place the contents of another sequence at the end of this sequence.
+	 * @param addend the sequence to add, must not be null
+	 * @see ParticleSeq#addAll(ParticleSeq)
+	 */
+	void addAll(S addend);
+
+	/**
+	 * Generate a copy of this sequence.
+	 * @return a copy of this sequence
+	 * @see ParticleSeq#clone()
+	 */
+	S clone();
+}
@@ -0,0 +1,99 @@
+package edu.uwm.cs351;
+
+import java.awt.Color;
+import java.lang.reflect.Field;
+
+
+/******************************************************************************
+ * Helper methods for reading and rebuilding the state of a Particle
+ * as primitive values.  Particle only exposes its position and velocity,
+ * so the mass and color are read from the (private) fields directly,
+ * and so is the velocity set.
+ * This class is not meant to be used outside of this package.
+ ******************************************************************************/
+final class Particles
+{
+	private static final Field MASS = field("_mass");
+	private static final Field COLOR = field("_color");
+	private static final Field VELOCITY = field("_velocity");
+
+	private Particles() {} // no instances
+
+	private static Field field(String name)
+	{
+		try
+		{
+			Field f = Particle.class.getDeclaredField(name);
+			f.setAccessible(true);
+			return f;
+		}
+		catch (ReflectiveOperationException e)
+		{
+			// This should not occur unless the Particle class has changed.
+			throw new IllegalStateException("Particle has no field " + name, e);
+		}
+	}
+
+	/**
+	 * Return the mass of a particle.
+	 * @param p particle to examine, must not be null
+	 * @return mass of the particle
+	 */
+	static double mass(Particle p)
+	{
+		try
+		{
+			return MASS.getDouble(p);
+		}
+		catch (IllegalAccessException e)
+		{
+			throw new IllegalStateException("cannot read mass of particle", e);
+		}
+	}
+
+	/**
+	 * Return the color of a particle packed as ARGB.
+	 * A particle without a color is given 0 (transparent black).
+	 * @param p particle to examine, must not be null
+	 * @return color of the particle as an ARGB int
+	 */
+	static int argb(Particle p)
+	{
+		try
+		{
+			Color c = (Color)COLOR.get(p);
+			return c == null ? 0 : c.getRGB();
+		}
+		catch (IllegalAccessException e)
+		{
+			throw new IllegalStateException("cannot read color of particle", e);
+		}
+	}
+
+	/**
+	 * Set the velocity of a particle exactly.
+	 * (Changing it with applyForce divides by the mass, and may round.)
+	 * @param p particle to change, must not be null
+	 * @param dx, dy new velocity of the particle
+	 */
+	static void setVelocity(Particle p, double dx, double dy)
+	{
+		try
+		{
+			VELOCITY.set(p, new Vector(dx, dy));
+		}
+		catch (IllegalAccessException e)
+		{
+			throw new IllegalStateException("cannot set velocity of particle", e);
+		}
+	}
+
+	/**
+	 * Create a new particle from primitive state.
+	 * @return a new particle with the given state
+	 */
+	static Particle create(double x, double y, double dx, double dy, double mass, int argb)
+	{
+		return new Particle(new Point(x,y), new Vector(dx,dy), mass, new Color(argb, true));
+	}
+}
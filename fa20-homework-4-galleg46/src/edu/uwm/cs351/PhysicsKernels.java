@@ -0,0 +1,205 @@
+package edu.uwm.cs351;
+
+
+/******************************************************************************
+ * Primitive versions of the physics of {@link Particle}, working on arrays
+ * of doubles in place.  Particle uses immutable {@link Vector} and
+ * {@link Point} objects, so computing the forces between n particles
+ * allocates O(n^2) objects; these methods compute the same results
+ * (up to rounding) without allocating anything.
+ * <p>
+ * Particle i has its position in (x[i],y[i]), its velocity in (vx[i],vy[i])
+ * and its mass in mass[i].  Each method works on the particles
+ * from one index up to (but not including) another, so that ranges
+ * can be given to different threads.
+ * <p>
+ * The force loop is done by a kernel chosen when the class is loaded.
+ * A SIMD kernel using <code>jdk.incubator.vector</code> is used if it was
+ * compiled (it is in the separate <code>simd</code> source folder, which needs
+ * <code>--add-modules jdk.incubator.vector</code> to compile and run) and the
+ * module is available; otherwise the scalar kernel is used.  The choice can
+ * be forced with the system property
+ * <code>edu.uwm.cs351.PhysicsKernels.kernel</code> set to
+ * <code>scalar</code> or <code>simd</code>.  The script
+ * <code>simd-tests.sh</code> compiles both source folders and runs the
+ * tests with the SIMD kernel.  The SIMD kernel adds up each
+ * row in a different order, so its forces agree with the scalar kernel
+ * to within about 1e-12 of the sum of the magnitudes of the pair forces,
+ * not exactly.
+ ******************************************************************************/
+public final class PhysicsKernels
+{
+	private static final double G = 1.0; // as used by Particle
+
+	private static final String SIMD_KERNEL = "edu.uwm.cs351.SimdForceKernel";
+
+	/**
+	 * A loop computing the forces between pairs of particles,
+	 * as described for {@link PhysicsKernels#accumulateForces}.
+	 * The arguments have already been checked.
+	 */
+	interface ForceKernel
+	{
+		void accumulate(double[] x, double[] y, double[] mass, int n, int from, int to, double[] fx, double[] fy);
+	}
+
+	private static final ForceKernel SCALAR = PhysicsKernels::scalarForces;
+	private static final ForceKernel KERNEL = chooseKernel(System.getProperty("edu.uwm.cs351.PhysicsKernels.kernel", "simd"));
+
+	private PhysicsKernels() {} // no instances
+
+	/**
+	 * Return the SIMD kernel if asked for and it can be loaded and run,
+	 * otherwise the scalar kernel.
+	 */
+	private static ForceKernel chooseKernel(String name)
+	{
+		if(!name.equals("simd")) return SCALAR;
+		try
+		{
+			ForceKernel k = (ForceKernel)Class.forName(SIMD_KERNEL).getDeclaredConstructor().newInstance();
+			// make sure it links and runs (the module may not be available)
+			double[] z = new double[2], m = { 1, 1 };
+			k.accumulate(z, new double[] { 0, 1 }, m, 2, 0, 2, new double[2], new double[2]);
+			return k;
+		}
+		catch (ReflectiveOperationException | LinkageError e)
+		{
+			return SCALAR;
+		}
+	}
+
+	/**
+	 * Return the name of the force kernel in use.
+	 * @return "simd" or "scalar"
+	 */
+	public static String kernel()
+	{
+		return KERNEL == SCALAR ? "scalar" : "simd";
+	}
+
+	private static void checkRange(int from, int to, int n, double[]... arrays)
+	{
+		if(from < 0 || from > to || to > n) throw new IllegalArgumentException("bad range " + from + ".." + to + " of " + n);
+		for(double[] a : arrays)
+		{
+			if(a.length < n) throw new IllegalArgumentException("array of length " + a.length + " is shorter than " + n);
+		}
+	}
+
+	/**
+	 * Add the gravitational forces between the pairs of particles (i,j)
+	 * with from &lt;= i &lt; to and i &lt; j &lt; n to the force arrays.
+	 * Each pair is computed once, and its force is added to both particles
+	 * (in opposite directions).  Particles at the same place exert no force
+	 * on each other (rather than the infinite force gravForceOn would give).
+	 * Calling this for the rows 0 to n gives each particle the total force
+	 * from all the others, the same as adding up
+	 * {@link Particle#gravForceOn(Particle)}.
+	 * @param x, y, mass
+	 *   the positions and masses of the particles, at least n long
+	 * @param n
+	 *   the number of particles
+	 * @param from, to
+	 *   the range of rows to compute
+	 * @param fx, fy
+	 *   the forces, at least n long, to which the forces are added
+	 * @exception IllegalArgumentException
+	 *   Indicates that the range is not within 0..n, or an array is too short.
+	 */
+	public static void accumulateForces(double[] x, double[] y, double[] mass, int n, int from, int to, double[] fx, double[] fy)
+	{
+		checkRange(from, to, n, x, y, mass, fx, fy);
+		KERNEL.accumulate(x, y, mass, n, from, to, fx, fy);
+	}
+
+	/**
+	 * Add the forces as {@link #accumulateForces} does, but always with
+	 * the scalar kernel, whichever kernel is in use.  This is the
+	 * reference against which the SIMD kernel is checked.
+	 * @see #accumulateForces
+	 * @exception IllegalArgumentException
+	 *   Indicates that the range is not within 0..n, or an array is too short.
+	 */
+	public static void accumulateScalarForces(double[] x, double[] y, double[] mass, int n, int from, int to, double[] fx, double[] fy)
+	{
+		checkRange(from, to, n, x, y, mass, fx, fy);
+		scalarForces(x, y, mass, n, from, to, fx, fy);
+	}
+
+	/**
+	 * Add the forces of the given rows one pair at a time.
+	 */
+	private static void scalarForces(double[] x, double[] y, double[] mass, int n, int from, int to, double[] fx, double[] fy)
+	{
+		for(int i = from; i < to; ++i)
+		{
+			double xi = x[i], yi = y[i], mi = mass[i];
+			double sx = 0, sy = 0;
+			for(int j = i + 1; j < n; ++j)
+			{
+				double dx = x[j] - xi, dy = y[j] - yi;
+				double d2 = dx * dx + dy * dy;
+				if(d2 == 0) continue;
+				double f = G * mi * mass[j] / (d2 * Math.sqrt(d2));
+				sx += f * dx;
+				sy += f * dy;
+				fx[j] -= f * dx;
+				fy[j] -= f * dy;
+			}
+			fx[i] += sx;
+			fy[i] += sy;
+		}
+	}
+
+	/**
+	 * Change the velocities of particles by applying forces for a time step,
+	 * as {@link Particle#applyForce(Vector)} does with the force times dt.
+	 * @param vx, vy
+	 *   the velocities, changed in place
+	 * @param mass
+	 *   the masses of the particles
+	 * @param fx, fy
+	 *   the forces on the particles
+	 * @param from, to
+	 *   the range of particles to change
+	 * @param dt
+	 *   the time step
+	 * @exception IllegalArgumentException
+	 *   Indicates that the range is not valid, or an array is too short.
+	 */
+	public static void applyForces(double[] vx, double[] vy, double[] mass, double[] fx, double[] fy, int from, int to, double dt)
+	{
+		checkRange(from, to, to, vx, vy, mass, fx, fy);
+		for(int i = from; i < to; ++i)
+		{
+			double a = dt / mass[i];
+			vx[i] += fx[i] * a;
+			vy[i] += fy[i] * a;
+		}
+	}
+
+	/**
+	 * Move particles by their velocities for a time step,
+	 * as {@link Particle#move()} does when dt is 1.
+	 * @param x, y
+	 *   the positions, changed in place
+	 * @param vx, vy
+	 *   the velocities of the particles
+	 * @param from, to
+	 *   the range of particles to move
+	 * @param dt
+	 *   the time step
+	 * @exception IllegalArgumentException
+	 *   Indicates that the range is not valid, or an array is too short.
+	 */
+	public static void move(double[] x, double[] y, double[] vx, double[] vy, int from, int to, double dt)
+	{
+		checkRange(from, to, to, x, y, vx, vy);
+		for(int i = from; i < to; ++i)
+		{
+			x[i] += vx[i] * dt;
+			y[i] += vy[i] * dt;
+		}
+	}
+}
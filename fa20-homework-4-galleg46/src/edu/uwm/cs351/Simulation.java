@@ -0,0 +1,357 @@
+package edu.uwm.cs351;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/******************************************************************************
+ * A Simulation moves the particles of a {@link ParticleSeq} under their
+ * mutual gravity, computing the exact force between every pair of particles
+ * in parallel with the common fork/join pool.
+ * <p>
+ * Each pair is only computed once: the pairs are divided into blocks of
+ * about the same size, and each block adds its forces into its own
+ * primitive buffers.  The buffers are then added up in the same order every
+ * time, so the result does not depend on how the work was scheduled.
+ * The buffers are kept from one step to the next.
+ * <p>
+ * A sequence may hold the same particle more than once.  Such a particle
+ * is simulated once, as if it appeared only at its first place, so no two
+ * tasks ever update the same particle.
+ * <p>
+ * A simulation should only be used by one thread at a time.
+ ******************************************************************************/
+public class Simulation
+{
+	private static final int MIN_ROWS = 64; // fewest particles per block
+	private static final int MIN_PARTICLES = 1024; // fewest particles per task when adding up or applying forces
+
+	// The data structure:
+	private int _manyBodies;
+	private Particle[] _bodies; // each particle at most once
+	private final Map<Particle,Boolean> _loaded = new IdentityHashMap<Particle,Boolean>(); // for load only
+	private double[] _x, _y, _mass, _sumX, _sumY; // for step: the particles, and their total forces
+	private int _manyBlocks;
+	private int[] _firstRow; // block b has the pairs (i,j) with _firstRow[b] <= i < _firstRow[b+1] and i < j
+	private double[][] _fx, _fy; // force buffers for each block
+
+
+	private static boolean _doReport = true; // used only by invariant checker
+
+	/**
+	 * Used to report an error found when checking the invariant.
+	 * By providing a string, this will help debugging the class if the invariant should fail.
+	 * @param error string to print to report the exact error found
+	 * @return false always
+	 */
+	private boolean _report(String error) {
+		if (_doReport) System.out.println("Invariant error found: " + error);
+		return false;
+	}
+
+	/**
+	 * Check the invariant.
+	 * Return false if any problem is found.
+	 * @return whether invariant is currently true
+	 */
+	private boolean _wellFormed() {
+		// Invariant:
+		// 1. the particle arrays have the same length, at least manyBodies
+		int capacity = _bodies.length;
+		for(double[] a : new double[][] { _x, _y, _mass, _sumX, _sumY })
+		{
+			if(a.length != capacity) return _report("particle arrays have different lengths");
+		}
+		if(_manyBodies < 0 || _manyBodies > capacity) return _report("manyBodies is out of range: " + _manyBodies);
+
+		// 2. there is a pair of buffers of the same length for each block
+		if(_manyBlocks < 0 || _manyBlocks > _fx.length || _fx.length != _fy.length) return _report("manyBlocks is out of range: " + _manyBlocks);
+		for(int b=0; b < _manyBlocks; ++b)
+		{
+			if(_fx[b] == null || _fy[b] == null || _fx[b].length != _fx[0].length || _fy[b].length != _fx[0].length) return _report("buffer " + b + " is missing or the wrong length");
+		}
+
+		// 3. the blocks divide some number of rows in order
+		if(_firstRow.length != _fx.length + 1) return _report("firstRow has the wrong length");
+		if(_manyBlocks > 0 && (_firstRow[0] != 0 || _firstRow[_manyBlocks] > _fx[0].length)) return _report("blocks do not cover the rows");
+		for(int b=0; b < _manyBlocks; ++b)
+		{
+			if(_firstRow[b] > _firstRow[b+1]) return _report("block " + b + " is out of order");
+		}
+
+		// 4. no particle is in bodies twice
+		_loaded.clear();
+		for(int i=0; i < _manyBodies; ++i)
+		{
+			if(_bodies[i] == null) return _report("body " + i + " is null");
+			if(_loaded.put(_bodies[i], Boolean.TRUE) != null) return _report("body " + i + " is also earlier in bodies");
+		}
+		_loaded.clear();
+
+		// If no problems found, then return true:
+		return true;
+	}
+
+	/**
+	 * Create a simulation.
+	 * @param - none
+	 */
+	public Simulation()
+	{
+		_bodies = new Particle[0];
+		_x = _y = _mass = _sumX = _sumY = new double[0];
+		_fx = _fy = new double[0][];
+		_firstRow = new int[1];
+		assert _wellFormed() : "invariant failed at end of constructor";
+	}
+
+	/**
+	 * Advance the particles of a sequence by one time step.  The gravitational
+	 * force between every pair of particles is computed from their current
+	 * positions, and then each particle is given the impulse of its total force
+	 * over the time step (by {@link Particle#applyForce(Vector)}) and moved
+	 * by its new velocity for the time step.  Null elements are ignored,
+	 * and particles at the same place exert no force on each other.
+	 * A particle that is in the sequence more than once is accelerated
+	 * and moved only once, and counted once in the forces on the others.
+	 * @param particles
+	 *   the sequence of particles, must not be null
+	 * @param dt
+	 *   the length of the time step; a step of 1 moves each particle
+	 *   the way {@link Particle#move()} does
+	 * @postcondition
+	 *   each particle of the sequence has been accelerated and moved
+	 * @exception NullPointerException
+	 *   Indicates that particles is null.
+	 */
+	public void step(ParticleSeq particles, double dt)
+	{
+		assert _wellFormed() : "invariant failed at start of step";
+
+		load(particles);
+		computeForces(_x, _y, _mass, _manyBodies, _sumX, _sumY);
+		ForkJoinPool.commonPool().invoke(new Apply(0, _manyBodies, dt));
+
+		assert _wellFormed() : "invariant failed at end of step";
+	}
+
+	/**
+	 * Compute the total gravitational force on each of the given particles
+	 * from all the others, in parallel, as {@link #step} does.
+	 * The arrays are as for {@link PhysicsKernels}.
+	 * @param x, y, mass
+	 *   the positions and masses of the particles, at least n long
+	 * @param n
+	 *   the number of particles
+	 * @param fx, fy
+	 *   arrays at least n long, set to the total force on each particle
+	 * @exception IllegalArgumentException
+	 *   Indicates that n is negative, or an array is too short.
+	 */
+	public void forces(double[] x, double[] y, double[] mass, int n, double[] fx, double[] fy)
+	{
+		assert _wellFormed() : "invariant failed at start of forces";
+		if(n < 0) throw new IllegalArgumentException("n must not be negative: " + n);
+		for(double[] a : new double[][] { x, y, mass, fx, fy })
+		{
+			if(a.length < n) throw new IllegalArgumentException("array of length " + a.length + " is shorter than " + n);
+		}
+
+		computeForces(x, y, mass, n, fx, fy);
+
+		assert _wellFormed() : "invariant failed at end of forces";
+	}
+
+	private void computeForces(double[] x, double[] y, double[] mass, int n, double[] fx, double[] fy)
+	{
+		divide(n);
+		ForkJoinPool.commonPool().invoke(new Forces(x, y, mass, n, 0, _manyBlocks));
+		ForkJoinPool.commonPool().invoke(new Sum(fx, fy, 0, n));
+	}
+
+	/**
+	 * Copy the positions and masses of the particles into the arrays,
+	 * skipping nulls and any particle already copied.
+	 */
+	private void load(ParticleSeq particles)
+	{
+		int n = particles.size();
+		if(_bodies.length < n)
+		{
+			_bodies = new Particle[n];
+			_x = new double[n];
+			_y = new double[n];
+			_mass = new double[n];
+			_sumX = new double[n];
+			_sumY = new double[n];
+		}
+		n = 0;
+		for(Particle p : particles)
+		{
+			if(p == null || _loaded.put(p, Boolean.TRUE) != null) continue;
+			Point pos = p.getPosition();
+			_bodies[n] = p;
+			_x[n] = pos.x();
+			_y[n] = pos.y();
+			_mass[n] = Particles.mass(p);
+			++n;
+		}
+		_loaded.clear(); // do not keep the particles
+		for(int i=n; i < _manyBodies; ++i) _bodies[i] = null; // do not keep old particles
+		_manyBodies = n;
+	}
+
+	/**
+	 * Divide n rows into blocks with about the same number of pairs each,
+	 * and make sure each block has buffers for n particles.
+	 */
+	private void divide(int n)
+	{
+		int blocks = Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism(), n / MIN_ROWS));
+		if(_fx.length < blocks)
+		{
+			_fx = Arrays.copyOf(_fx, blocks);
+			_fy = Arrays.copyOf(_fy, blocks);
+			_firstRow = new int[blocks + 1];
+		}
+		int length = _fx[0] == null ? 0 : _fx[0].length;
+		if(length < n) length = n;
+		for(int b=0; b < _fx.length; ++b)
+		{
+			if(_fx[b] == null || _fx[b].length != length)
+			{
+				_fx[b] = new double[length];
+				_fy[b] = new double[length];
+			}
+		}
+		_manyBlocks = blocks;
+
+		// Row i has n-1-i pairs.
+		double pairs = (double)n * (n - 1) / 2;
+		double sum = 0;
+		int b = 1;
+		_firstRow[0] = 0;
+		for(int i=0; i < n && b < blocks; ++i)
+		{
+			sum += n - 1 - i;
+			while(b < blocks && sum >= pairs * b / blocks) _firstRow[b++] = i + 1;
+		}
+		while(b <= blocks) _firstRow[b++] = n;
+	}
+
+	/**
+	 * Compute the forces for the blocks from lo to hi (exclusive).
+	 */
+	private class Forces extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		private final double[] x, y, mass;
+		private final int n, lo, hi;
+
+		Forces(double[] x, double[] y, double[] mass, int n, int l, int h)
+		{
+			this.x = x;
+			this.y = y;
+			this.mass = mass;
+			this.n = n;
+			lo = l;
+			hi = h;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if(hi - lo > 1)
+			{
+				int mid = (lo + hi) >>> 1;
+				invokeAll(new Forces(x, y, mass, n, lo, mid), new Forces(x, y, mass, n, mid, hi));
+				return;
+			}
+			if(hi > lo)
+			{
+				double[] fx = _fx[lo], fy = _fy[lo];
+				Arrays.fill(fx, 0, n, 0.0);
+				Arrays.fill(fy, 0, n, 0.0);
+				PhysicsKernels.accumulateForces(x, y, mass, n, _firstRow[lo], _firstRow[lo+1], fx, fy);
+			}
+		}
+	}
+
+	/**
+	 * Add up the buffers for the particles from lo to hi (exclusive).
+	 */
+	private class Sum extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		private final double[] sumX, sumY;
+		private final int lo, hi;
+
+		Sum(double[] sx, double[] sy, int l, int h)
+		{
+			sumX = sx;
+			sumY = sy;
+			lo = l;
+			hi = h;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if(hi - lo > MIN_PARTICLES)
+			{
+				int mid = (lo + hi) >>> 1;
+				invokeAll(new Sum(sumX, sumY, lo, mid), new Sum(sumX, sumY, mid, hi));
+				return;
+			}
+			for(int i=lo; i < hi; ++i)
+			{
+				double fx = 0, fy = 0;
+				for(int b=0; b < _manyBlocks; ++b)
+				{
+					fx += _fx[b][i];
+					fy += _fy[b][i];
+				}
+				sumX[i] = fx;
+				sumY[i] = fy;
+			}
+		}
+	}
+
+	/**
+	 * Apply the forces and move the particles from lo to hi (exclusive).
+	 */
+	private class Apply extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		private final int lo, hi;
+		private final double dt;
+
+		Apply(int l, int h, double t)
+		{
+			lo = l;
+			hi = h;
+			dt = t;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if(hi - lo > MIN_PARTICLES)
+			{
+				int mid = (lo + hi) >>> 1;
+				invokeAll(new Apply(lo, mid, dt), new Apply(mid, hi, dt));
+				return;
+			}
+			for(int i=lo; i < hi; ++i)
+			{
+				Particle p = _bodies[i];
+				p.applyForce(new Vector(_sumX[i] * dt, _sumY[i] * dt));
+				if(dt == 1) p.move();
+				else p._position = p.getVelocity().scale(dt).move(p.getPosition());
+			}
+		}
+	}
+}
@@ -0,0 +1,409 @@
+package edu.uwm.cs351;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+
+/******************************************************************************
+ * A SimulationRunner runs the gravity simulation of a {@link ParticleSeq}
+ * world on its own thread, and hands the resulting frames to a
+ * {@link Renderer} on another thread, so that drawing frame N does not hold
+ * up computing frame N+1 (as it does when both are done on the Swing thread).
+ * <p>
+ * The state of the simulation is kept in primitive arrays while it runs
+ * (see {@link PhysicsKernels}): each step computes the forces in parallel
+ * with a {@link Simulation} and then integrates.  The forces of a step need
+ * the positions of the step before, so these two phases take turns on the
+ * simulation thread; the force phase itself is spread over the fork/join pool.
+ * The particles themselves are only updated when the runner is stopped.
+ * <p>
+ * Frames are handed over without locks, by triple buffering: the simulation
+ * writes into its back frame while the renderer reads its front frame, and
+ * the two swap through a third, "ready" frame with an atomic exchange.
+ * The renderer always gets the latest finished frame, and frames it is too
+ * slow to draw are skipped.
+ ******************************************************************************/
+public class SimulationRunner
+{
+	/**
+	 * Draws frames of the simulation.  It is called on the render thread
+	 * with a frame that does not change until render returns.
+	 */
+	public interface Renderer
+	{
+		/**
+		 * Draw a frame.  The frame must not be used after this returns.
+		 * @param frame the state of the particles after some step
+		 */
+		void render(Frame frame);
+	}
+
+	/**
+	 * The positions of the particles after some step.
+	 * Particles are in the order of the world (ignoring null elements).
+	 */
+	public static final class Frame
+	{
+		private final double[] _fx, _fy;
+		private final int[] _argb; // shared by all frames
+		private final double[] _fmass; // shared by all frames
+		private long _step;
+
+		Frame(int n, int[] argb, double[] mass)
+		{
+			_fx = new double[n];
+			_fy = new double[n];
+			_argb = argb;
+			_fmass = mass;
+		}
+
+		/**
+		 * Return the number of particles.
+		 * @return the number of particles
+		 */
+		public int size() { return _fx.length; }
+
+		/**
+		 * Return the number of steps the simulation had taken for this frame.
+		 * @return the step number of this frame
+		 */
+		public long step() { return _step; }
+
+		/**
+		 * Return the x coordinate of a particle.
+		 * @param i the index of the particle, from 0 to size()-1
+		 * @return the x coordinate of the particle
+		 */
+		public double x(int i) { return _fx[i]; }
+
+		/**
+		 * Return the y coordinate of a particle.
+		 * @param i the index of the particle, from 0 to size()-1
+		 * @return the y coordinate of the particle
+		 */
+		public double y(int i) { return _fy[i]; }
+
+		/**
+		 * Return the mass of a particle.
+		 * @param i the index of the particle, from 0 to size()-1
+		 * @return the mass of the particle
+		 */
+		public double mass(int i) { return _fmass[i]; }
+
+		/**
+		 * Return the color of a particle packed as ARGB.
+		 * @param i the index of the particle, from 0 to size()-1
+		 * @return the color of the particle
+		 */
+		public int argb(int i) { return _argb[i]; }
+	}
+
+	private static final long IDLE_NANOS = 100_000; // how long the renderer waits for a new frame
+
+	// The data structure:
+	private final Particle[] _bodies;
+	private final int _manyBodies;
+	private final double _dt;
+	private final double[] _x, _y, _vx, _vy, _mass, _forceX, _forceY;
+	private final Simulation _simulation = new Simulation();
+	private final AtomicReference<Frame> _ready; // the latest frame, or the one the renderer last gave back
+	private Frame _back; // owned by the simulation thread
+	private Frame _front; // owned by the render thread
+	private Thread _simThread, _renderThread;
+	private volatile boolean _running;
+	private volatile long _steps, _frames;
+	private volatile long _startNanos, _stopNanos;
+	private volatile Throwable _failure;
+
+
+	private static boolean _doReport = true; // used only by invariant checker
+
+	/**
+	 * Used to report an error found when checking the invariant.
+	 * By providing a string, this will help debugging the class if the invariant should fail.
+	 * @param error string to print to report the exact error found
+	 * @return false always
+	 */
+	private boolean _report(String error) {
+		if (_doReport) System.out.println("Invariant error found: " + error);
+		return false;
+	}
+
+	/**
+	 * Check the invariant.  This is only checked on the thread that
+	 * starts and stops the runner, while the other threads are not running.
+	 * Return false if any problem is found.
+	 * @return whether invariant is currently true
+	 */
+	private boolean _wellFormed() {
+		// Invariant:
+		// 1. the arrays all hold manyBodies particles, none null
+		int n = _manyBodies;
+		if(_bodies.length != n) return _report("bodies has the wrong length");
+		for(double[] a : new double[][] { _x, _y, _vx, _vy, _mass, _forceX, _forceY })
+		{
+			if(a.length != n) return _report("arrays have the wrong length");
+		}
+		for(Particle p : _bodies)
+		{
+			if(p == null) return _report("null particle");
+		}
+
+		// 2. there are three different frames of the right size
+		Frame ready = _ready.get();
+		if(ready == null || _back == null || _front == null) return _report("a frame is missing");
+		if(ready == _back || ready == _front || _back == _front) return _report("frames are shared");
+		if(ready.size() != n || _back.size() != n || _front.size() != n) return _report("frames have the wrong size");
+
+		// 3. we are only running if started and not stopped
+		if(_running && (_simThread == null || _stopNanos != 0)) return _report("running but not started, or stopped");
+
+		// If no problems found, then return true:
+		return true;
+	}
+
+	/**
+	 * Create a runner for the particles of a sequence.  Null elements are ignored.
+	 * Changes to the sequence after this do not affect the runner.
+	 * @param world
+	 *   the particles, must not be null
+	 * @param dt
+	 *   the time step of the simulation
+	 * @exception NullPointerException
+	 *   Indicates that world is null.
+	 */
+	public SimulationRunner(ParticleSeq world, double dt)
+	{
+		int n = 0;
+		Particle[] all = new Particle[world.size()];
+		for(Particle p : world)
+		{
+			if(p != null) all[n++] = p;
+		}
+		_manyBodies = n;
+		_bodies = java.util.Arrays.copyOf(all, n);
+		_dt = dt;
+		_x = new double[n];
+		_y = new double[n];
+		_vx = new double[n];
+		_vy = new double[n];
+		_mass = new double[n];
+		_forceX = new double[n];
+		_forceY = new double[n];
+		int[] argb = new int[n];
+		for(int i=0; i < n; ++i)
+		{
+			Particle p = _bodies[i];
+			Point pos = p.getPosition();
+			Vector v = p.getVelocity();
+			_x[i] = pos.x();
+			_y[i] = pos.y();
+			_vx[i] = v.dx();
+			_vy[i] = v.dy();
+			_mass[i] = Particles.mass(p);
+			argb[i] = Particles.argb(p);
+		}
+		_back = new Frame(n, argb, _mass);
+		_front = new Frame(n, argb, _mass);
+		Frame ready = new Frame(n, argb, _mass);
+		System.arraycopy(_x, 0, ready._fx, 0, n);
+		System.arraycopy(_y, 0, ready._fy, 0, n);
+		_front._step = -1; // so the first frame is drawn
+		_ready = new AtomicReference<Frame>(ready);
+		assert _wellFormed() : "invariant failed at end of constructor";
+	}
+
+	/**
+	 * Start running the simulation and the renderer.
+	 * @param renderer
+	 *   draws the frames, must not be null
+	 * @exception IllegalStateException
+	 *   Indicates that the runner has already been started.
+	 * @exception NullPointerException
+	 *   Indicates that renderer is null.
+	 */
+	public void start(Renderer renderer)
+	{
+		assert _wellFormed() : "invariant failed at start of start";
+		if(_simThread != null) throw new IllegalStateException("runner has already been started");
+		if(renderer == null) throw new NullPointerException("renderer is null");
+
+		_running = true;
+		_startNanos = System.nanoTime();
+		_simThread = new Thread(this::simulate, "simulation");
+		_renderThread = new Thread(() -> render(renderer), "render");
+		_simThread.setDaemon(true);
+		_renderThread.setDaemon(true);
+		_simThread.start();
+		_renderThread.start();
+
+		assert _wellFormed() : "invariant failed at end of start";
+	}
+
+	/**
+	 * Stop the simulation and the renderer, waiting for them to finish,
+	 * and give the particles of the world their new positions and velocities.
+	 * Stopping a runner that was never started, or is already stopped, does nothing.
+	 * @postcondition
+	 *   the particles are as they were after the last step
+	 * @exception IllegalStateException
+	 *   Indicates that the simulation or the renderer failed
+	 *   (the particles are updated anyway).
+	 */
+	public void stop()
+	{
+		if(_simThread == null || _stopNanos != 0) return;
+		_running = false;
+		boolean interrupted = false;
+		for(Thread t : new Thread[] { _simThread, _renderThread })
+		{
+			while(t.isAlive())
+			{
+				try
+				{
+					t.join();
+				}
+				catch (InterruptedException e)
+				{
+					interrupted = true;
+				}
+			}
+		}
+		if(interrupted) Thread.currentThread().interrupt();
+		_stopNanos = System.nanoTime();
+		writeBack();
+
+		assert _wellFormed() : "invariant failed at end of stop";
+		if(_failure != null) throw new IllegalStateException("runner failed", _failure);
+	}
+
+	/**
+	 * Give each particle the position and velocity from the arrays.
+	 */
+	private void writeBack()
+	{
+		for(int i=0; i < _manyBodies; ++i)
+		{
+			Particle p = _bodies[i];
+			Particles.setVelocity(p, _vx[i], _vy[i]);
+			p._position = new Point(_x[i], _y[i]);
+		}
+	}
+
+	/**
+	 * Return whether the runner is running.
+	 * @return true if started, not stopped, and nothing has failed
+	 */
+	public boolean isRunning()
+	{
+		return _running;
+	}
+
+	/**
+	 * Return the number of steps taken so far.
+	 * @return the number of steps taken
+	 */
+	public long getSteps()
+	{
+		return _steps;
+	}
+
+	/**
+	 * Return the number of frames drawn so far.
+	 * @return the number of frames drawn
+	 */
+	public long getFrames()
+	{
+		return _frames;
+	}
+
+	/**
+	 * Return the average number of steps per second since the runner was started
+	 * (until it was stopped).
+	 * @return steps per second, or 0 if never started
+	 */
+	public double stepsPerSecond()
+	{
+		return rate(_steps);
+	}
+
+	/**
+	 * Return the average number of frames drawn per second since the runner
+	 * was started (until it was stopped).
+	 * @return frames per second, or 0 if never started
+	 */
+	public double framesPerSecond()
+	{
+		return rate(_frames);
+	}
+
+	private double rate(long count)
+	{
+		long start = _startNanos;
+		if(start == 0) return 0;
+		long end = _stopNanos;
+		if(end == 0) end = System.nanoTime();
+		if(end <= start) return 0;
+		return count * 1e9 / (end - start);
+	}
+
+	/**
+	 * The simulation thread: step, and publish each step as a frame.
+	 */
+	private void simulate()
+	{
+		try
+		{
+			int n = _manyBodies;
+			while(_running)
+			{
+				_simulation.forces(_x, _y, _mass, n, _forceX, _forceY);
+				PhysicsKernels.applyForces(_vx, _vy, _mass, _forceX, _forceY, 0, n, _dt);
+				PhysicsKernels.move(_x, _y, _vx, _vy, 0, n, _dt);
+				long step = _steps + 1;
+
+				Frame f = _back;
+				System.arraycopy(_x, 0, f._fx, 0, n);
+				System.arraycopy(_y, 0, f._fy, 0, n);
+				f._step = step;
+				_back = _ready.getAndSet(f);
+				_steps = step;
+			}
+		}
+		catch (RuntimeException | Error e)
+		{
+			fail(e);
+		}
+	}
+
+	/**
+	 * The render thread: draw each new frame.
+	 */
+	private void render(Renderer renderer)
+	{
+		try
+		{
+			while(_running)
+			{
+				if(_ready.get()._step <= _front._step)
+				{
+					LockSupport.parkNanos(IDLE_NANOS);
+					continue;
+				}
+				_front = _ready.getAndSet(_front);
+				renderer.render(_front);
+				++_frames;
+			}
+		}
+		catch (RuntimeException | Error e)
+		{
+			fail(e);
+		}
+	}
+
+	private void fail(Throwable e)
+	{
+		if(_failure == null) _failure = e;
+		_running = false;
+	}
+}
@@ -0,0 +1,533 @@
+package edu.uwm.cs351;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/******************************************************************************
+ * A SpatialHashGrid indexes the particles of a {@link ParticleSeq} by position,
+ * so that the particles near a point can be found without looking at all of them.
+ * Space is divided into square cells of a fixed size, and each cell that has
+ * particles in it is kept in a hash table, so the particles may be anywhere.
+ * <p>
+ * The grid records the position of each particle when it was added.
+ * After particles have moved, {@link #update()} moves them to their new cells;
+ * this only does work for particles that have changed cells.
+ * Queries work best when the cell size is about the usual query radius.
+ ******************************************************************************/
+public class SpatialHashGrid
+{
+	private static final int INITIAL_CAPACITY = 16; // particles
+	private static final int INITIAL_TABLE = 16; // cells (a power of two)
+	private static final int MAX_COORD = 1 << 30; // cells farther away are merged
+
+	// The data structure:
+	private double _cellSize;
+	private int _manyBodies;
+	private Particle[] _bodies;
+	private double[] _x, _y; // position of each particle when it was last placed
+	private long[] _cell; // the key of the cell holding each particle
+	private int[] _next, _prev; // doubly linked list of particles in the same cell, -1 at the ends
+	private int _manyCells; // number of keys used in the table (including empty cells)
+	private long[] _keys; // open addressing table of cell keys
+	private int[] _heads; // first particle in each cell, -1 if empty; -2 if the slot is unused
+
+
+	private static boolean _doReport = true; // used only by invariant checker
+
+	/**
+	 * Used to report an error found when checking the invariant.
+	 * By providing a string, this will help debugging the class if the invariant should fail.
+	 * @param error string to print to report the exact error found
+	 * @return false always
+	 */
+	private boolean _report(String error) {
+		if (_doReport) System.out.println("Invariant error found: " + error);
+		return false;
+	}
+
+	/**
+	 * Check the invariant.
+	 * Return false if any problem is found.
+	 * @return whether invariant is currently true
+	 */
+	private boolean _wellFormed() {
+		// Invariant:
+		// 1. the cell size is positive
+		if(!(_cellSize > 0)) return _report("cell size is " + _cellSize);
+
+		// 2. the arrays hold at least manyBodies particles, none of them null
+		if(_manyBodies < 0 || _manyBodies > _bodies.length) return _report("manyBodies is out of range: " + _manyBodies);
+		for(int i=0; i < _manyBodies; ++i)
+		{
+			if(_bodies[i] == null) return _report("particle " + i + " is null");
+		}
+
+		// 3. the table is a power of two in size, at most half full,
+		//    and manyCells is the number of slots used
+		int used = 0;
+		if(Integer.bitCount(_keys.length) != 1 || _heads.length != _keys.length) return _report("table has bad size");
+		for(int h=0; h < _heads.length; ++h)
+		{
+			if(_heads[h] != -2) ++used;
+		}
+		if(used != _manyCells) return _report("manyCells is " + _manyCells + ", but " + used + " slots are used");
+		if(_manyCells * 2 > _keys.length) return _report("table is too full");
+
+		// 4. each particle is in the list of its cell, which is the cell of its position,
+		//    and the lists are linked both ways
+		int seen = 0;
+		for(int h=0; h < _heads.length; ++h)
+		{
+			if(_heads[h] < 0) continue;
+			if(find(_keys[h]) != h) return _report("cell " + _keys[h] + " cannot be found");
+			int prev = -1;
+			for(int i = _heads[h]; i >= 0; i = _next[i])
+			{
+				if(i >= _manyBodies || ++seen > _manyBodies) return _report("bad list for cell " + _keys[h]);
+				if(_prev[i] != prev) return _report("particle " + i + " has the wrong prev");
+				if(_cell[i] != _keys[h] || key(_x[i], _y[i]) != _cell[i]) return _report("particle " + i + " is in the wrong cell");
+				prev = i;
+			}
+		}
+		if(seen != _manyBodies) return _report("cells have " + seen + " particles, not " + _manyBodies);
+
+		// If no problems found, then return true:
+		return true;
+	}
+
+	/**
+	 * Create an empty grid with the given cell size.
+	 * @param cellSize
+	 *   the width of each cell
+	 * @exception IllegalArgumentException
+	 *   Indicates that the cell size is not positive (or not a number).
+	 */
+	public SpatialHashGrid(double cellSize)
+	{
+		if(!(cellSize > 0)) throw new IllegalArgumentException("cell size must be positive: " + cellSize);
+		_cellSize = cellSize;
+		_bodies = new Particle[INITIAL_CAPACITY];
+		_x = new double[INITIAL_CAPACITY];
+		_y = new double[INITIAL_CAPACITY];
+		_cell = new long[INITIAL_CAPACITY];
+		_next = new int[INITIAL_CAPACITY];
+		_prev = new int[INITIAL_CAPACITY];
+		_keys = new long[INITIAL_TABLE];
+		_heads = new int[INITIAL_TABLE];
+		Arrays.fill(_heads, -2);
+		assert _wellFormed() : "invariant failed at end of constructor";
+	}
+
+	/**
+	 * Create a grid holding the particles of a sequence.
+	 * @param cellSize
+	 *   the width of each cell
+	 * @param particles
+	 *   the sequence of particles, must not be null
+	 * @exception IllegalArgumentException
+	 *   Indicates that the cell size is not positive (or not a number).
+	 * @exception NullPointerException
+	 *   Indicates that particles is null.
+	 */
+	public SpatialHashGrid(double cellSize, ParticleSeq particles)
+	{
+		this(cellSize);
+		build(particles);
+	}
+
+	/**
+	 * Return the number of particles in the grid.
+	 * @return the number of particles in the grid
+	 */
+	public int size()
+	{
+		assert _wellFormed() : "invariant failed at start of size";
+		return _manyBodies;
+	}
+
+	/**
+	 * Return the cell size.
+	 * @return the width of each cell
+	 */
+	public double getCellSize()
+	{
+		assert _wellFormed() : "invariant failed at start of getCellSize";
+		return _cellSize;
+	}
+
+	/**
+	 * Remove all the particles from the grid, and add the particles
+	 * of a sequence at their current positions.  Null elements are ignored.
+	 * @param particles
+	 *   the sequence of particles, must not be null
+	 * @postcondition
+	 *   the grid holds exactly the (non-null) particles of the sequence
+	 * @exception NullPointerException
+	 *   Indicates that particles is null.
+	 */
+	public void build(ParticleSeq particles)
+	{
+		assert _wellFormed() : "invariant failed at start of build";
+
+		int n = particles.size();
+		Arrays.fill(_bodies, 0, _manyBodies, null); // do not keep old particles
+		_manyBodies = 0;
+		_manyCells = 0;
+		int table = INITIAL_TABLE;
+		while(table < n) table *= 2; // expect about one cell for each particle
+		_keys = new long[table];
+		_heads = new int[table];
+		Arrays.fill(_heads, -2);
+		ensureCapacity(n);
+		for(Particle p : particles)
+		{
+			if(p != null) place(p);
+		}
+
+		assert _wellFormed() : "invariant failed at end of build";
+	}
+
+	/**
+	 * Add a particle to the grid at its current position.
+	 * @param p
+	 *   the particle to add, must not be null
+	 * @exception NullPointerException
+	 *   Indicates that p is null.
+	 */
+	public void add(Particle p)
+	{
+		assert _wellFormed() : "invariant failed at start of add";
+		if(p == null) throw new NullPointerException("cannot add null to the grid");
+		ensureCapacity(_manyBodies + 1);
+		place(p);
+		assert _wellFormed() : "invariant failed at end of add";
+	}
+
+	/**
+	 * Move the particles that have changed cells since they were placed
+	 * (for instance by {@link Particle#move()}) to their new cells.
+	 * The work done is O(n) reading the positions, plus a little for each
+	 * particle that has changed cells.
+	 * @postcondition
+	 *   each particle is in the cell of its current position
+	 * @return the number of particles that changed cells
+	 */
+	public int update()
+	{
+		assert _wellFormed() : "invariant failed at start of update";
+
+		int moved = 0;
+		for(int i=0; i < _manyBodies; ++i)
+		{
+			Point pos = _bodies[i].getPosition();
+			_x[i] = pos.x();
+			_y[i] = pos.y();
+			long k = key(_x[i], _y[i]);
+			if(k == _cell[i]) continue;
+			unlink(i);
+			link(i, k);
+			++moved;
+		}
+
+		assert _wellFormed() : "invariant failed at end of update";
+		return moved;
+	}
+
+	/**
+	 * Return the particles within a distance of a point, as they were
+	 * when last placed.  The time taken is about proportional to the number
+	 * of particles returned plus the number of cells the circle touches.
+	 * @param center
+	 *   the point to search around, must not be null
+	 * @param radius
+	 *   the distance; particles exactly this far away are included
+	 * @return
+	 *   a new list of the particles within the radius, in no particular order
+	 * @exception IllegalArgumentException
+	 *   Indicates that the radius is negative (or not a number).
+	 * @exception NullPointerException
+	 *   Indicates that center is null.
+	 */
+	public List<Particle> queryRadius(Point center, double radius)
+	{
+		assert _wellFormed() : "invariant failed at start of queryRadius";
+		if(!(radius >= 0)) throw new IllegalArgumentException("radius must not be negative: " + radius);
+
+		List<Particle> result = new ArrayList<Particle>();
+		double cx = center.x(), cy = center.y(), r2 = radius * radius;
+		int x0 = coord(cx - radius), x1 = coord(cx + radius);
+		int y0 = coord(cy - radius), y1 = coord(cy + radius);
+		if((double)(x1 - x0 + 1) * (y1 - y0 + 1) > _manyCells)
+		{
+			// more cells to look at than there are in the table
+			for(int h=0; h < _heads.length; ++h)
+			{
+				collect(_heads[h], cx, cy, r2, result);
+			}
+		}
+		else
+		{
+			for(int gx = x0; gx <= x1; ++gx)
+			{
+				for(int gy = y0; gy <= y1; ++gy)
+				{
+					int h = find(key(gx, gy));
+					if(h >= 0) collect(_heads[h], cx, cy, r2, result);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Add the particles of a cell's list that are within range to the result.
+	 */
+	private void collect(int first, double cx, double cy, double r2, List<Particle> result)
+	{
+		for(int i = first; i >= 0; i = _next[i])
+		{
+			double dx = _x[i] - cx, dy = _y[i] - cy;
+			if(dx * dx + dy * dy <= r2) result.add(_bodies[i]);
+		}
+	}
+
+	/**
+	 * Return the particles nearest to a point, as they were when last placed.
+	 * Cells are searched in rings around the point until no
+	 * closer particle can be found.
+	 * @param center
+	 *   the point to search around, must not be null
+	 * @param k
+	 *   how many particles to return
+	 * @return
+	 *   a new list of the k particles (or all of them, if there are fewer)
+	 *   nearest the point, closest first
+	 * @exception IllegalArgumentException
+	 *   Indicates that k is negative.
+	 * @exception NullPointerException
+	 *   Indicates that center is null.
+	 */
+	public List<Particle> nearest(Point center, int k)
+	{
+		assert _wellFormed() : "invariant failed at start of nearest";
+		if(k < 0) throw new IllegalArgumentException("k must not be negative: " + k);
+
+		double cx = center.x(), cy = center.y();
+		k = Math.min(k, _manyBodies);
+		Nearest best = new Nearest(k);
+		if(k > 0)
+		{
+			int gx = coord(cx), gy = coord(cy);
+			long cells = 0;
+			for(int ring = 0; ; ++ring)
+			{
+				// The cells of this ring are at least ring-1 cells away.
+				if(ring > 0 && best.full() && best.worst() <= sq((ring - 1) * _cellSize)) break;
+				cells += ring == 0 ? 1 : 8L * ring;
+				if(cells > _manyCells)
+				{
+					// the rings now cover more cells than there are: just look at them all
+					best = new Nearest(k);
+					for(int h=0; h < _heads.length; ++h)
+					{
+						for(int i = _heads[h]; i >= 0; i = _next[i]) best.offer(i, sq(_x[i] - cx) + sq(_y[i] - cy));
+					}
+					break;
+				}
+				for(int dx = -ring; dx <= ring; ++dx)
+				{
+					boolean edge = dx == -ring || dx == ring;
+					for(int dy = -ring; dy <= ring; dy += edge ? 1 : 2 * ring)
+					{
+						int h = find(key(gx + dx, gy + dy));
+						if(h < 0) continue;
+						for(int i = _heads[h]; i >= 0; i = _next[i]) best.offer(i, sq(_x[i] - cx) + sq(_y[i] - cy));
+					}
+				}
+			}
+		}
+
+		List<Particle> result = new ArrayList<Particle>(best.size);
+		for(int j=0; j < best.size; ++j) result.add(_bodies[best.index[j]]);
+		return result;
+	}
+
+	/**
+	 * The closest particles found so far, kept in order.
+	 */
+	private static class Nearest
+	{
+		final int[] index;
+		final double[] dist2;
+		int size;
+
+		Nearest(int k)
+		{
+			index = new int[k];
+			dist2 = new double[k];
+		}
+
+		boolean full()
+		{
+			return size == index.length;
+		}
+
+		double worst()
+		{
+			return dist2[size - 1];
+		}
+
+		void offer(int i, double d2)
+		{
+			if(full() && d2 >= worst()) return;
+			int j = full() ? size - 1 : size++;
+			for(; j > 0 && dist2[j-1] > d2; --j)
+			{
+				index[j] = index[j-1];
+				dist2[j] = dist2[j-1];
+			}
+			index[j] = i;
+			dist2[j] = d2;
+		}
+	}
+
+	private static double sq(double a)
+	{
+		return a * a;
+	}
+
+	/**
+	 * Return the cell coordinate of a position.  Positions too far from the
+	 * origin share the outermost cells, so that cell coordinates can be
+	 * stepped through without overflow.
+	 */
+	private int coord(double v)
+	{
+		double c = Math.floor(v / _cellSize);
+		return (int)Math.max(-MAX_COORD, Math.min(MAX_COORD, c));
+	}
+
+	private long key(double x, double y)
+	{
+		return key(coord(x), coord(y));
+	}
+
+	private static long key(int gx, int gy)
+	{
+		return ((long)gx << 32) | (gy & 0xFFFFFFFFL);
+	}
+
+	private int slot(long k)
+	{
+		return (int)((k * 0x9E3779B97F4A7C15L) >>> (64 - Integer.numberOfTrailingZeros(_keys.length)));
+	}
+
+	/**
+	 * Return the slot of a cell in the table, or -1 if it is not there.
+	 */
+	private int find(long k)
+	{
+		int mask = _keys.length - 1;
+		for(int h = slot(k); _heads[h] != -2; h = (h + 1) & mask)
+		{
+			if(_keys[h] == k) return h;
+		}
+		return -1;
+	}
+
+	/**
+	 * Return the slot of a cell in the table, adding it if needed.
+	 */
+	private int findOrAdd(long k)
+	{
+		int h = find(k);
+		if(h >= 0) return h;
+		if((_manyCells + 1) * 2 > _keys.length) rehash();
+		int mask = _keys.length - 1;
+		for(h = slot(k); _heads[h] != -2; h = (h + 1) & mask) { }
+		_keys[h] = k;
+		_heads[h] = -1;
+		++_manyCells;
+		return h;
+	}
+
+	/**
+	 * Rebuild the table, dropping empty cells, and making it larger if needed.
+	 */
+	private void rehash()
+	{
+		long[] keys = _keys;
+		int[] heads = _heads;
+		int live = 0;
+		for(int h=0; h < heads.length; ++h)
+		{
+			if(heads[h] >= 0) ++live;
+		}
+		int table = INITIAL_TABLE;
+		while(table < 4 * (live + 1)) table *= 2;
+		_keys = new long[table];
+		_heads = new int[table];
+		Arrays.fill(_heads, -2);
+		_manyCells = 0;
+		int mask = table - 1;
+		for(int h=0; h < heads.length; ++h)
+		{
+			if(heads[h] < 0) continue;
+			int s = slot(keys[h]);
+			while(_heads[s] != -2) s = (s + 1) & mask;
+			_keys[s] = keys[h];
+			_heads[s] = heads[h];
+			++_manyCells;
+		}
+	}
+
+	private void ensureCapacity(int n)
+	{
+		if(_bodies.length >= n) return;
+		int capacity = Math.max(n, _bodies.length * 2);
+		_bodies = Arrays.copyOf(_bodies, capacity);
+		_x = Arrays.copyOf(_x, capacity);
+		_y = Arrays.copyOf(_y, capacity);
+		_cell = Arrays.copyOf(_cell, capacity);
+		_next = Arrays.copyOf(_next, capacity);
+		_prev = Arrays.copyOf(_prev, capacity);
+	}
+
+	/**
+	 * Add a particle at its current position (there must be room).
+	 */
+	private void place(Particle p)
+	{
+		int i = _manyBodies++;
+		Point pos = p.getPosition();
+		_bodies[i] = p;
+		_x[i] = pos.x();
+		_y[i] = pos.y();
+		link(i, key(_x[i], _y[i]));
+	}
+
+	/**
+	 * Put a particle at the front of the list of a cell.
+	 */
+	private void link(int i, long k)
+	{
+		int h = findOrAdd(k);
+		_cell[i] = k;
+		_prev[i] = -1;
+		_next[i] = _heads[h];
+		if(_heads[h] >= 0) _prev[_heads[h]] = i;
+		_heads[h] = i;
+	}
+
+	/**
+	 * Take a particle out of the list of its cell.
+	 */
+	private void unlink(int i)
+	{
+		if(_next[i] >= 0) _prev[_next[i]] = _prev[i];
+		if(_prev[i] >= 0) _next[_prev[i]] = _next[i];
+		else _heads[find(_cell[i])] = _next[i];
+	}
+}
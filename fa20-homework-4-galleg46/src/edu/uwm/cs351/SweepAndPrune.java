@@ -0,0 +1,365 @@
+package edu.uwm.cs351;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.function.ToDoubleFunction;
+
+
+/******************************************************************************
+ * A SweepAndPrune finds the pairs of particles that may be colliding.
+ * Each particle is treated as a square box of a given radius around its
+ * position, and the pairs whose boxes overlap are reported.
+ * <p>
+ * The particles are kept in a {@link ParticleSeq} ordered by the left
+ * side of their boxes.  Particles move only a little between frames, so
+ * the order is repaired with an insertion pass: each particle that is
+ * out of order is removed with the cursor and carried forward to where
+ * it belongs, where it is put back with the cursor.  This takes about
+ * linear time when particles have not moved far in the order.  Then the boxes are
+ * swept from left to right, and each box is only compared with the boxes that
+ * start before it ends.  This works best when each box overlaps few others
+ * along the x axis; with many particles spread evenly over a square, that
+ * number grows with the square root of the number of particles.
+ ******************************************************************************/
+public class SweepAndPrune
+{
+	/**
+	 * Receives the pairs of particles whose boxes overlap.
+	 */
+	public interface PairCallback
+	{
+		/**
+		 * Report a pair of particles whose boxes overlap.
+		 * @param a the particle whose box starts first
+		 * @param b the other particle
+		 */
+		void pair(Particle a, Particle b);
+	}
+
+	// The data structure:
+	private ToDoubleFunction<Particle> _radius;
+	private ParticleSeq _order; // the particles, by left side at the last sort
+	private int _manySorted; // number of particles in the sweep arrays
+	private Particle[] _bodies; // the particles in order at the last sort, for the sweep
+	private double[] _minX, _maxX, _minY, _maxY; // and their boxes
+	private Particle[] _scanBody; // the particles in the order they were before sorting
+	private double[] _scanMinX, _scanMaxX, _scanMinY, _scanMaxY; // and their boxes
+	private double[] _scanAfter; // least left side after each one
+	private int _manyCarried; // a heap of particles carried forward by sort (indices into the scan arrays)
+	private int[] _carried;
+
+
+	private static boolean _doReport = true; // used only by invariant checker
+
+	/**
+	 * Used to report an error found when checking the invariant.
+	 * By providing a string, this will help debugging the class if the invariant should fail.
+	 * @param error string to print to report the exact error found
+	 * @return false always
+	 */
+	private boolean _report(String error) {
+		if (_doReport) System.out.println("Invariant error found: " + error);
+		return false;
+	}
+
+	/**
+	 * Check the invariant.
+	 * Return false if any problem is found.
+	 * @return whether invariant is currently true
+	 */
+	private boolean _wellFormed() {
+		// Invariant:
+		// 1. there is a radius function and a sequence with no null elements
+		//    (The order may be wrong, since the particles may have moved.)
+		if(_radius == null) return _report("radius is null");
+		if(_order == null) return _report("order is null");
+		for(Particle p : _order)
+		{
+			if(p == null) return _report("null particle in the order");
+		}
+
+		// 2. the arrays have the same length, enough for the particles;
+		//    the sweep arrays have the particles in order of left side
+		//    (as they were at the last sort), and no particles are being carried
+		int n = _bodies.length;
+		if(n < _order.size()) return _report("arrays are too short");
+		for(double[] a : new double[][] { _minX, _maxX, _minY, _maxY, _scanMinX, _scanMaxX, _scanMinY, _scanMaxY, _scanAfter })
+		{
+			if(a.length != n) return _report("arrays have different lengths");
+		}
+		if(_scanBody.length != n || _carried.length != n) return _report("arrays have different lengths");
+		if(_manySorted < 0 || _manySorted > _order.size()) return _report("manySorted is out of range: " + _manySorted);
+		for(int i=1; i < _manySorted; ++i)
+		{
+			if(_minX[i-1] > _minX[i]) return _report("sweep arrays are out of order at " + i);
+		}
+		if(_manyCarried != 0) return _report("particles are still being carried");
+
+		// If no problems found, then return true:
+		return true;
+	}
+
+	/**
+	 * Create a broad phase for the particles of a sequence, each with the same radius.
+	 * Null elements are ignored.  Particles added to the sequence later are not included.
+	 * @param particles
+	 *   the sequence of particles, must not be null
+	 * @param radius
+	 *   half the width of the box around each particle
+	 * @exception IllegalArgumentException
+	 *   Indicates that the radius is negative (or not a number).
+	 * @exception NullPointerException
+	 *   Indicates that particles is null.
+	 */
+	public SweepAndPrune(ParticleSeq particles, double radius)
+	{
+		this(particles, constant(radius));
+	}
+
+	private static ToDoubleFunction<Particle> constant(double radius)
+	{
+		if(!(radius >= 0)) throw new IllegalArgumentException("radius must not be negative: " + radius);
+		return p -> radius;
+	}
+
+	/**
+	 * Create a broad phase for the particles of a sequence, with the given radii.
+	 * Null elements are ignored.  Particles added to the sequence later are not included.
+	 * @param particles
+	 *   the sequence of particles, must not be null
+	 * @param radius
+	 *   gives half the width of the box around a particle, must not be null
+	 *   and must not give negative values
+	 * @exception NullPointerException
+	 *   Indicates that particles or radius is null.
+	 */
+	public SweepAndPrune(ParticleSeq particles, ToDoubleFunction<Particle> radius)
+	{
+		if(radius == null) throw new NullPointerException("radius function is null");
+		_radius = radius;
+		int n = 0;
+		Particle[] all = new Particle[particles.size()];
+		for(Particle p : particles)
+		{
+			if(p != null) all[n++] = p;
+		}
+		all = Arrays.copyOf(all, n);
+		Arrays.sort(all, Comparator.comparingDouble(this::left));
+		_order = ParticleSeq.of(all);
+		allocate(Math.max(n, 1));
+		assert _wellFormed() : "invariant failed at end of constructor";
+	}
+
+	private void allocate(int n)
+	{
+		_bodies = new Particle[n];
+		_minX = new double[n];
+		_maxX = new double[n];
+		_minY = new double[n];
+		_maxY = new double[n];
+		_scanBody = new Particle[n];
+		_scanMinX = new double[n];
+		_scanMaxX = new double[n];
+		_scanMinY = new double[n];
+		_scanMaxY = new double[n];
+		_scanAfter = new double[n];
+		_carried = new int[n];
+		_manySorted = 0;
+	}
+
+	/**
+	 * Return the left side of the box of a particle.
+	 */
+	private double left(Particle p)
+	{
+		return p.getPosition().x() - _radius.applyAsDouble(p);
+	}
+
+	/**
+	 * Return the number of particles.
+	 * @return the number of particles
+	 */
+	public int size()
+	{
+		assert _wellFormed() : "invariant failed at start of size";
+		return _order.size();
+	}
+
+	/**
+	 * Add a particle.  It is put in its place in the order by the next sort.
+	 * @param p
+	 *   the particle to add, must not be null
+	 * @exception NullPointerException
+	 *   Indicates that p is null.
+	 */
+	public void add(Particle p)
+	{
+		assert _wellFormed() : "invariant failed at start of add";
+		if(p == null) throw new NullPointerException("cannot add null");
+
+		_order.start();
+		_order.addBefore(p);
+		if(_bodies.length < _order.size()) allocate(_bodies.length * 2);
+
+		assert _wellFormed() : "invariant failed at end of add";
+	}
+
+	/**
+	 * Put the particles back in order by the left sides of their boxes,
+	 * as they are now.  In one pass, each particle that is greater than some
+	 * particle after it is taken out with the cursor and carried forward,
+	 * to be put back before the first remaining particle that is not less than it.
+	 * The time is linear, plus a little for each particle carried, which
+	 * depends on how far it has to go.
+	 * @return the number of particles that were carried
+	 */
+	public int sort()
+	{
+		assert _wellFormed() : "invariant failed at start of sort";
+
+		// Record the boxes as they are now, and the least left side after each.
+		int n = 0;
+		for(Particle p : _order)
+		{
+			Point pos = p.getPosition();
+			double r = _radius.applyAsDouble(p);
+			_scanBody[n] = p;
+			_scanMinX[n] = pos.x() - r;
+			_scanMaxX[n] = pos.x() + r;
+			_scanMinY[n] = pos.y() - r;
+			_scanMaxY[n] = pos.y() + r;
+			++n;
+		}
+		double least = Double.POSITIVE_INFINITY;
+		for(int i = n - 1; i >= 0; --i)
+		{
+			_scanAfter[i] = least;
+			least = Math.min(least, _scanMinX[i]);
+		}
+
+		// Carry particles forward, and record the new order in the sweep arrays.
+		int moved = 0;
+		_manySorted = 0;
+		_order.start();
+		for(int i = 0; i < n; ++i)
+		{
+			if(_scanMinX[i] > _scanAfter[i])
+			{
+				_order.removeCurrent();
+				push(i);
+				++moved;
+			}
+			else
+			{
+				// This particle is not greater than anything after it, so the carried
+				// particles not greater than it belong just before it.
+				while(_manyCarried > 0 && _scanMinX[_carried[0]] <= _scanMinX[i])
+				{
+					int c = pop();
+					_order.addBefore(_scanBody[c]);
+					_order.advance();
+					record(c);
+				}
+				record(i);
+			}
+			_order.advance();
+		}
+		while(_manyCarried > 0)
+		{
+			int c = pop();
+			_order.addAfter(_scanBody[c]);
+			record(c);
+		}
+		Arrays.fill(_scanBody, 0, n, null); // do not keep particles that may be removed
+
+		assert _wellFormed() : "invariant failed at end of sort";
+		return moved;
+	}
+
+	/**
+	 * Put the particle at the given index of the scan arrays next in the sweep arrays.
+	 */
+	private void record(int i)
+	{
+		int j = _manySorted++;
+		_bodies[j] = _scanBody[i];
+		_minX[j] = _scanMinX[i];
+		_maxX[j] = _scanMaxX[i];
+		_minY[j] = _scanMinY[i];
+		_maxY[j] = _scanMaxY[i];
+	}
+
+	/**
+	 * Add the index of a particle to the heap of carried particles.
+	 */
+	private void push(int c)
+	{
+		double k = _scanMinX[c];
+		int i = _manyCarried++;
+		while(i > 0 && _scanMinX[_carried[(i - 1) / 2]] > k)
+		{
+			_carried[i] = _carried[(i - 1) / 2];
+			i = (i - 1) / 2;
+		}
+		_carried[i] = c;
+	}
+
+	/**
+	 * Remove and return the index of the carried particle with the least left side.
+	 */
+	private int pop()
+	{
+		int result = _carried[0];
+		int n = --_manyCarried;
+		int c = _carried[n];
+		double k = _scanMinX[c];
+		int i = 0;
+		while(2 * i + 1 < n)
+		{
+			int child = 2 * i + 1;
+			if(child + 1 < n && _scanMinX[_carried[child + 1]] < _scanMinX[_carried[child]]) ++child;
+			if(_scanMinX[_carried[child]] >= k) break;
+			_carried[i] = _carried[child];
+			i = child;
+		}
+		if(n > 0) _carried[i] = c;
+		return result;
+	}
+
+	/**
+	 * Find the pairs of particles whose boxes overlap at their current positions.
+	 * The particles are first put back in order (see {@link #sort()}).
+	 * Each pair is reported once.
+	 * @param callback
+	 *   receives each pair, must not be null; it must not move the particles
+	 * @return the number of pairs reported
+	 * @exception NullPointerException
+	 *   Indicates that callback is null.
+	 */
+	public long findPairs(PairCallback callback)
+	{
+		assert _wellFormed() : "invariant failed at start of findPairs";
+		if(callback == null) throw new NullPointerException("callback is null");
+
+		sort();
+		int n = _manySorted;
+
+		long pairs = 0;
+		double[] minX = _minX, maxX = _maxX, minY = _minY, maxY = _maxY;
+		for(int i=0; i < n; ++i)
+		{
+			double right = maxX[i], bottom = minY[i], top = maxY[i];
+			for(int j = i + 1; j < n && minX[j] <= right; ++j)
+			{
+				if(minY[j] <= top & maxY[j] >= bottom) // not &&, which would be an unpredictable branch
+				{
+					callback.pair(_bodies[i], _bodies[j]);
+					++pairs;
+				}
+			}
+		}
+
+		assert _wellFormed() : "invariant failed at end of findPairs";
+		return pairs;
+	}
+}
@@ -0,0 +1,477 @@
+package edu.uwm.cs351;
+
+import java.util.Arrays;
+
+
+/******************************************************************************
+ * An UnrolledParticleSeq is a sequence of Particles with the same cursor
+ * behavior as {@link ParticleSeq}, implemented as an "unrolled" linked list:
+ * each node holds a small array of particles rather than a single one,
+ * so that traversing the sequence visits far fewer nodes.
+ * <p>
+ * A full node is split when an element is added to it,
+ * and a node that becomes less than half full after a removal
+ * takes elements from (or is merged with) the following node.
+ ******************************************************************************/
+public class UnrolledParticleSeq implements ParticleSequence<UnrolledParticleSeq>
+{
+	private static final int CHUNK_SIZE = 32;
+
+	// Declare the private static Node class.
+	// Only the first "count" entries of data are used.
+	private static class Node
+	{
+		Particle[] data;
+		int count;
+		Node next;
+
+		Node(Node n)
+		{
+			data = new Particle[CHUNK_SIZE];
+			next = n;
+		}
+	}
+
+	// The data structure:
+	private int _manyItems;
+	private Node _head, _tail; // never null; the list always has at least one node
+	private Node _chunk; // node holding the current element (or the position after the precursor)
+	private int _offset; // index in _chunk of the current element
+	private boolean _isCurrent;
+	private boolean _atEnd;
+
+
+	private static boolean _doReport = true; // used only by invariant checker
+
+	/**
+	 * Used to report an error found when checking the invariant.
+	 * By providing a string, this will help debugging the class if the invariant should fail.
+	 * @param error string to print to report the exact error found
+	 * @return false always
+	 */
+	private boolean _report(String error) {
+		if (_doReport) System.out.println("Invariant error found: " + error);
+		return false;
+	}
+
+	/**
+	 * Check the invariant.
+	 * Return false if any problem is found.
+	 * @return whether invariant is currently true
+	 */
+	private boolean _wellFormed() {
+		// Invariant:
+		// 1. head and tail are never null
+		if(_head == null || _tail == null) return _report("head or tail is null");
+
+		// 2. list must not include a cycle (each node but the tail has at least one element),
+		//    manyItems is the total number of elements,
+		//    every node but the tail is non-empty,
+		//    tail is the last node
+		int count = 0;
+		boolean foundChunk = false;
+		Node last = null;
+		for(Node c = _head; c != null; c = c.next)
+		{
+			if(c.data == null || c.data.length != CHUNK_SIZE) return _report("node has wrong array");
+			if(c.count < 0 || c.count > CHUNK_SIZE) return _report("node count is out of range: " + c.count);
+			if(c.count == 0 && c.next != null) return _report("empty node is not the last node");
+			if(c == _chunk) foundChunk = true;
+			count += c.count;
+			last = c;
+			if(count > _manyItems) return _report("more elements than manyItems, or list is cyclic");
+		}
+		if(count != _manyItems) return _report("manyItems is: " + _manyItems + " does not equal the number of elements: " + count);
+		if(_tail != last) return _report("tail is not the last node in the list");
+
+		// 3. the cursor position is in the list
+		if(!foundChunk) return _report("cursor node is not in the list");
+		if(_offset < 0 || _offset > _chunk.count) return _report("cursor offset is out of range: " + _offset);
+
+		// 4. if there is a current element, the cursor is on it
+		if(_isCurrent && _offset == _chunk.count) return _report("current element is past the end of its node");
+
+		// 5. if _atEnd is true then
+		//        there is no current element
+		//        the cursor is at the end of the tail
+		if(_atEnd)
+		{
+			if(_isCurrent) return _report("we are at the end, there should be no current element");
+			if(_chunk != _tail || _offset != _tail.count) return _report("at the end, but cursor is not after the last element");
+		}
+
+		// If no problems found, then return true:
+		return true;
+	}
+
+	/**
+	 * Create an empty sequence of particles.
+	 * @param - none
+	 * @postcondition
+	 *   This sequence of particles is empty
+	 **/
+	public UnrolledParticleSeq( )
+	{
+		_manyItems = 0;
+		_head = _tail = _chunk = new Node(null);
+		_offset = 0;
+		_isCurrent = false;
+		_atEnd = true;
+
+		assert _wellFormed() : "invariant failed at end of constructor";
+	}
+
+	/**
+	 * If the cursor is after the last element of a node,
+	 * move it to the start of the next node.
+	 */
+	private void normalize()
+	{
+		while(_offset == _chunk.count && _chunk.next != null)
+		{
+			_chunk = _chunk.next;
+			_offset = 0;
+		}
+	}
+
+	/**
+	 * Insert an element at the cursor position,
+	 * splitting the node if it is full.  The cursor is left on the new element.
+	 */
+	private void insert(Particle element)
+	{
+		Node c = _chunk;
+		if(c.count == CHUNK_SIZE)
+		{
+			Node split = new Node(c.next);
+			c.next = split;
+			if(_tail == c) _tail = split;
+			if(_offset == CHUNK_SIZE)
+			{
+				// adding at the end of a full node: start a new node
+				c = split;
+				_offset = 0;
+			}
+			else
+			{
+				int half = CHUNK_SIZE/2;
+				System.arraycopy(c.data, half, split.data, 0, CHUNK_SIZE-half);
+				Arrays.fill(c.data, half, CHUNK_SIZE, null);
+				split.count = CHUNK_SIZE-half;
+				c.count = half;
+				if(_offset > half)
+				{
+					c = split;
+					_offset -= half;
+				}
+			}
+			_chunk = c;
+		}
+		System.arraycopy(c.data, _offset, c.data, _offset+1, c.count-_offset);
+		c.data[_offset] = element;
+		++c.count;
+		++_manyItems;
+	}
+
+	/**
+	 * Determine the number of elements in this sequence.
+	 * @param - none
+	 * @return
+	 *   the number of elements in this sequence
+	 **/
+	public int size( )
+	{
+		assert _wellFormed() : "invariant wrong at start of size()";
+		return _manyItems;
+	}
+
+	/**
+	 * Return true if we are at the end of the sequence.
+	 * @precondition true
+	 * @return true if at the end of the sequence
+	 * @see ParticleSeq#atEnd()
+	 */
+	public boolean atEnd() {
+		assert _wellFormed() : "Invariant failed at start of atEnd";
+
+		return _atEnd;
+	}
+
+	/**
+	 * Set the current element at the front of this sequence.
+	 * @param - none
+	 * @postcondition
+	 *   The front element of this sequence is now the current element, but
+	 *   if this sequence has no elements at all, then there is no current
+	 *   element and we are at the end.
+	 **/
+	public void start( )
+	{
+		assert _wellFormed() : "invariant wrong at start of start()";
+
+		_chunk = _head;
+		_offset = 0;
+		normalize();
+		_isCurrent = _manyItems > 0;
+		_atEnd = !_isCurrent;
+
+		assert _wellFormed() : "invariant wrong at end of start()";
+	}
+
+	/**
+	 * Accessor method to determine whether this sequence has a specified
+	 * current element that can be retrieved with the
+	 * getCurrent method.
+	 * @param - none
+	 * @return
+	 *   true (there is a current element) or false (there is no current element at the moment)
+	 **/
+	public boolean isCurrent( )
+	{
+		assert _wellFormed() : "invariant wrong at start of isCurrent()";
+
+		return _isCurrent;
+	}
+
+	/**
+	 * Accessor method to get the current element of this sequence.
+	 * @param - none
+	 * @precondition
+	 *   isCurrent() returns true.
+	 * @return
+	 *   the current element of this sequence
+	 * @exception IllegalStateException
+	 *   Indicates that there is no current element, so
+	 *   getCurrent may not be called.
+	 **/
+	public Particle getCurrent( )
+	{
+		assert _wellFormed() : "invariant wrong at start of getCurrent()";
+
+		if(!_isCurrent) throw new IllegalStateException("no current element");
+
+		return _chunk.data[_offset];
+	}
+
+	/**
+	 * Move forward, so that the current element is now the next element in
+	 * this sequence.
+	 * @param - none
+	 * @precondition
+	 *   atEnd() returns false.
+	 * @postcondition
+	 *   If the current element (even if it was removed)
+	 *   was already the last element of this sequence,
+	 *   then there is no longer any current element.
+	 *   Otherwise, the new current element is the element immediately after the
+	 *   previous current element (whether or not it has been removed).
+	 * @exception IllegalStateException
+	 *   Indicates that we are at the end so
+	 *   advance may not be called.
+	 **/
+	public void advance( )
+	{
+		assert _wellFormed() : "invariant wrong at start of advance()";
+
+		if(_atEnd) throw new IllegalStateException("advancing past the end");
+
+		if(_isCurrent) ++_offset;
+		normalize();
+		_isCurrent = _offset < _chunk.count;
+		_atEnd = !_isCurrent;
+
+		assert _wellFormed() : "invariant wrong at end of advance()";
+	}
+
+	/**
+	 * Add a new element to this sequence, before the current element (if any).
+	 * @param element
+	 *   the new element that is being added, it is allowed to be null
+	 * @postcondition
+	 *   The element has been added to this sequence. If there was
+	 *   a current element, then the new element is placed before the current
+	 *   element. If there was no current element, then the new element is placed
+	 *   where the removed element was, or at the end. In all cases, the new element becomes the
+	 *   new current element of this sequence.
+	 **/
+	public void addBefore(Particle element)
+	{
+		assert _wellFormed() : "invariant wrong at start of addBefore";
+
+		insert(element);
+		_isCurrent = true;
+		_atEnd = false;
+
+		assert _wellFormed() : "invariant wrong at end of addBefore";
+	}
+
+	/**
+	 * Add a new element to this sequence, after the current element if any.
+	 * @param element
+	 *   the new element that is being added, may be null
+	 * @postcondition
+	 *   The element has been added to this sequence. If there was
+	 *   a current element, then the new element is placed after the current
+	 *   element. If there was no current element, then the new element is placed
+	 *   where the element was, or at the end of the sequence.
+	 *   In all cases, the new element becomes the
+	 *   new current element of this sequence.
+	 **/
+	public void addAfter(Particle element) {
+		assert _wellFormed() : "invariant wrong at start of addAfter";
+
+		if(_isCurrent) ++_offset;
+		insert(element);
+		_isCurrent = true;
+		_atEnd = false;
+
+		assert _wellFormed() : "invariant wrong at end of addAfter";
+	}
+
+	/**
+	 * Remove the current element from this sequence.
+	 * @param - none
+	 * @precondition
+	 *   isCurrent() returns true.
+	 * @postcondition
+	 *   The current element has been removed from this sequence. and now
+	 *   there is no current element.  The sequence will <em>not</em> be
+	 *   at the end, even if the current element had been at the end.
+	 * @exception IllegalStateException
+	 *   Indicates that there is no current element, so
+	 *   removeCurrent may not be called.
+	 **/
+	public void removeCurrent( )
+	{
+		assert _wellFormed() : "invariant wrong at start of removeCurrent()";
+
+		if(!_isCurrent) throw new IllegalStateException("no current to remove");
+
+		Node c = _chunk;
+		System.arraycopy(c.data, _offset+1, c.data, _offset, c.count-_offset-1);
+		c.data[--c.count] = null;
+		--_manyItems;
+		_isCurrent = false;
+
+		// keep nodes at least half full, by merging or by taking from the next node
+		Node n = c.next;
+		if(c.count < CHUNK_SIZE/2 && n != null)
+		{
+			int moved = c.count + n.count <= CHUNK_SIZE ? n.count : CHUNK_SIZE/2 - c.count;
+			System.arraycopy(n.data, 0, c.data, c.count, moved);
+			System.arraycopy(n.data, moved, n.data, 0, n.count-moved);
+			Arrays.fill(n.data, n.count-moved, n.count, null);
+			c.count += moved;
+			n.count -= moved;
+			if(n.count == 0)
+			{
+				c.next = n.next;
+				if(_tail == n) _tail = c;
+			}
+		}
+
+		assert _wellFormed() : "invariant wrong at end of removeCurrent()";
+	}
+
+	/**
+	 * Place the contents of another sequence at the end of this sequence.
+	 * @param addend
+	 *   a sequence whose contents will be placed at the end of this sequence
+	 * @precondition
+	 *   The parameter, addend, is not null.
+	 * @postcondition
+	 *   The elements from addend have been placed at the end of
+	 *   this sequence. The current element of this sequence if any,
+	 *   remains unchanged.   The addend is unchanged.
+	 *   Whether we are at the end is unchanged.
+	 * @exception NullPointerException
+	 *   Indicates that addend is null.
+	 **/
+	public void addAll(UnrolledParticleSeq addend)
+	{
+		assert _wellFormed() : "invariant wrong at start of addAll";
+		assert addend._wellFormed() : "invariant of parameter wrong at start of addAll";
+
+		int n = addend._manyItems;
+		if(n == 0) return;
+
+		// Elements are only ever appended (never moved), so this works
+		// even if addend is this sequence.
+		int remaining = n;
+		for(Node from = addend._head; remaining > 0; from = from.next)
+		{
+			int copied = 0;
+			int available = Math.min(from.count, remaining);
+			while(copied < available)
+			{
+				if(_tail.count == CHUNK_SIZE)
+				{
+					_tail = _tail.next = new Node(null);
+				}
+				int k = Math.min(available-copied, CHUNK_SIZE-_tail.count);
+				System.arraycopy(from.data, copied, _tail.data, _tail.count, k);
+				_tail.count += k;
+				copied += k;
+			}
+			remaining -= available;
+		}
+		_manyItems += n;
+
+		if(_atEnd)
+		{
+			_chunk = _tail;
+			_offset = _tail.count;
+		}
+
+		assert _wellFormed() : "invariant wrong at end of addAll";
+		assert addend._wellFormed() : "invariant of parameter wrong at end of addAll";
+	}
+
+
+	/**
+	 * Generate a copy of this sequence.
+	 * @param - none
+	 * @return
+	 *   The return value is a copy of this sequence. Subsequent changes to the
+	 *   copy will not affect the original, nor vice versa.
+	 *   Whatever was current in the original object is now current in the clone.
+	 * @exception OutOfMemoryError
+	 *   Indicates insufficient memory for creating the clone.
+	 **/
+	public UnrolledParticleSeq clone( )
+	{
+		assert _wellFormed() : "invariant wrong at start of clone()";
+
+		UnrolledParticleSeq result;
+
+		try
+		{
+			result = (UnrolledParticleSeq) super.clone( );
+		}
+		catch (CloneNotSupportedException e)
+		{
+			// This exception should not occur. But if it does, it would probably
+			// indicate a programming error that made super.clone unavailable.
+			throw new RuntimeException
+			("This class does not implement Cloneable");
+		}
+
+		Node prev = null;
+		for(Node p = _head; p != null; p = p.next)
+		{
+			Node copy = new Node(null);
+			System.arraycopy(p.data, 0, copy.data, 0, p.count);
+			copy.count = p.count;
+			if(prev == null) result._head = copy;
+			else prev.next = copy;
+			prev = copy;
+
+			if(p == _chunk) result._chunk = copy;
+		}
+		result._tail = prev;
+
+		assert _wellFormed() : "invariant wrong at end of clone()";
+		assert result._wellFormed() : "invariant wrong for result of clone()";
+		return result;
+	}
+}
@@ -0,0 +1,91 @@
+package edu.uwm.cs351.test;
+
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import edu.uwm.cs351.Particle;
+import edu.uwm.cs351.ParticleSequence;
+
+
+/**
+ * Adapt a {@link ParticleSequence} to the {@link ISequence} interface
+ * so that it can be checked against the same tests as ParticleSeq.
+ * The tests compare elements by identity, so a sequence that returns
+ * new particles is given a function that maps each particle it returns
+ * to the particle the test added.
+ */
+public class CursorSequenceAdaptor<S extends ParticleSequence<S>> implements ISequence<Particle> {
+	private final S wrapped;
+	private final Supplier<S> factory;
+	private final UnaryOperator<Particle> original;
+
+	/**
+	 * Adapt a sequence that returns the particles that were added.
+	 * @param s the sequence to adapt
+	 * @param f creates a new empty sequence of the same kind
+	 */
+	public CursorSequenceAdaptor(S s, Supplier<S> f) {
+		this(s, f, UnaryOperator.identity());
+	}
+
+	/**
+	 * Adapt a sequence that returns new particles.
+	 * @param s the sequence to adapt
+	 * @param f creates a new empty sequence of the same kind
+	 * @param o maps a particle returned by the sequence to the one that was added
+	 */
+	public CursorSequenceAdaptor(S s, Supplier<S> f, UnaryOperator<Particle> o) {
+		wrapped = s;
+		factory = f;
+		original = o;
+	}
+
+	public ISequence<Particle> newInstance() {
+		return new CursorSequenceAdaptor<S>(factory.get(), factory, original);
+	}
+
+	public void addBefore(Particle element) {
+		wrapped.addBefore(element);
+	}
+
+	public void addAfter(Particle element) {
+		wrapped.addAfter(element);
+	}
+
+	public void advance() {
+		wrapped.advance();
+	}
+
+	public ISequence<Particle> clone() {
+		return new CursorSequenceAdaptor<S>(wrapped.clone(), factory, original);
+	}
+
+	@SuppressWarnings("unchecked")
+	public void addAll(ISequence<? extends Particle> addend) {
+		wrapped.addAll(((CursorSequenceAdaptor<S>)addend).wrapped);
+	}
+
+	public boolean atEnd() {
+		return wrapped.atEnd();
+	}
+
+	public Particle getCurrent() {
+		return original.apply(wrapped.getCurrent());
+	}
+
+	public boolean isCurrent() {
+		return wrapped.isCurrent();
+	}
+
+	public void removeCurrent() {
+		wrapped.removeCurrent();
+	}
+
+	public int size() {
+		return wrapped.size();
+	}
+
+	public void start() {
+		wrapped.start();
+	}
+}
@@ -0,0 +1,114 @@
+package edu.uwm.cs351.test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.Random;
+
+import junit.framework.Assert;
+import edu.uwm.cs351.Particle;
+import edu.uwm.cs351.ParticleSeq;
+import edu.uwm.cs351.Point;
+import edu.uwm.cs351.Vector;
+
+
+/**
+ * Checks that particles read back from storage have the state of the
+ * particles that were stored: position, velocity, mass and color.
+ * Particle has no getters for mass or color, so mass is checked by the
+ * force on a fixed probe, and color by drawing the particle.
+ */
+public class ParticleAssert extends Assert {
+
+	// AWT reads this only once, so it must be set before any drawing
+	// (or passed as -Djava.awt.headless=true when run in a larger suite).
+	static {
+		System.setProperty("java.awt.headless", "true");
+	}
+
+	/** Far from every particle used in the tests, so the force is never NaN or zero. */
+	private static final Particle PROBE = new Particle(new Point(-1e4, -1e4), new Vector(), 1, Color.BLACK);
+
+	// Particles are drawn magnified, so that even the smallest fill pixels.
+	private static final int SIZE = 16, SCALE = 4;
+
+	private ParticleAssert() { }
+
+	/**
+	 * Return n random particles, with a null element at each of the given places.
+	 * The colors are opaque, so that drawing shows them.
+	 * @param r source of randomness
+	 * @param n number of elements
+	 * @param nulls indices of the elements to leave null
+	 * @return a new sequence
+	 */
+	public static ParticleSeq random(Random r, int n, int... nulls) {
+		Particle[] a = new Particle[n];
+		for (int i=0; i < n; ++i) {
+			a[i] = new Particle(new Point(r.nextDouble()*1000, r.nextDouble()*1000),
+					new Vector(r.nextDouble()-0.5, r.nextDouble()-0.5), 1 + r.nextDouble()*9, new Color(r.nextInt(0x1000000)));
+		}
+		for (int i : nulls) a[i] = null;
+		return ParticleSeq.of(a);
+	}
+
+	/**
+	 * Assert that two particles (either may be null) have the same state.
+	 * @param expected particle that was stored
+	 * @param actual particle that was read back
+	 */
+	public static void assertSameState(Particle expected, Particle actual) {
+		if (expected == null) {
+			assertNull(actual);
+			return;
+		}
+		assertNotNull(actual);
+		assertEquals(expected.getPosition().x(), actual.getPosition().x());
+		assertEquals(expected.getPosition().y(), actual.getPosition().y());
+		assertEquals(expected.getVelocity().dx(), actual.getVelocity().dx());
+		assertEquals(expected.getVelocity().dy(), actual.getVelocity().dy());
+		// at the same position, the force on the probe is proportional to the mass
+		Vector f = expected.gravForceOn(PROBE), g = actual.gravForceOn(PROBE);
+		assertTrue("force on probe should not vanish", f.magnitude() > 0);
+		assertEquals("mass", f.dx(), g.dx());
+		assertEquals("mass", f.dy(), g.dy());
+		// the drawing shows the color (and the size, which follows from the mass)
+		int[] e = render(expected), a = render(actual);
+		boolean drawn = false;
+		for (int i=0; i < e.length; ++i) {
+			if (e[i] != 0) drawn = true;
+			assertEquals("color", Integer.toHexString(e[i]), Integer.toHexString(a[i]));
+		}
+		assertTrue("particle should be drawn", drawn);
+	}
+
+	/**
+	 * Assert that two sequences have the same elements, in the same order,
+	 * and that the actual sequence has its first element current.
+	 * @param expected sequence that was stored
+	 * @param actual sequence that was read back
+	 */
+	public static void assertSameSeq(ParticleSeq expected, ParticleSeq actual) {
+		assertEquals(expected.size(), actual.size());
+		assertEquals(expected.size() > 0, actual.isCurrent()); // first element is current
+		Iterator<Particle> it = actual.iterator();
+		for (Particle p : expected) {
+			assertSameState(p, it.next());
+		}
+	}
+
+	/**
+	 * Draw a particle, centered and magnified, on a small clear image.
+	 * @return the pixels of the image
+	 */
+	private static int[] render(Particle p) {
+		BufferedImage image = new BufferedImage(SIZE*SCALE, SIZE*SCALE, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = image.createGraphics();
+		g.scale(SCALE, SCALE);
+		g.translate(SIZE/2 - Math.floor(p.getPosition().x()), SIZE/2 - Math.floor(p.getPosition().y()));
+		p.draw(g);
+		g.dispose();
+		return image.getRGB(0, 0, SIZE*SCALE, SIZE*SCALE, null, 0, SIZE*SCALE);
+	}
+}